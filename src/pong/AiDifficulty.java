@@ -0,0 +1,31 @@
+package pong;
+
+public enum AiDifficulty {
+    // reactionTicks: how stale the ball position the bot reacts to is
+    // errorPx: max aim offset, re-rolled every rally
+    // maxSpeed: max paddle movement per tick
+    EASY(14, 70, 3),
+    MEDIUM(8, 48, 4),
+    HARD(2, 6, 5);
+
+    final int reactionTicks;
+    final int errorPx;
+    final int maxSpeed;
+
+    AiDifficulty(int reactionTicks, int errorPx, int maxSpeed) {
+        this.reactionTicks = reactionTicks;
+        this.errorPx = errorPx;
+        this.maxSpeed = maxSpeed;
+    }
+
+    public static AiDifficulty fromName(String name) {
+        if (name != null) {
+            for (AiDifficulty difficulty : values()) {
+                if (difficulty.name().equalsIgnoreCase(name.trim())) {
+                    return difficulty;
+                }
+            }
+        }
+        return MEDIUM;
+    }
+}
@@ -0,0 +1,123 @@
+package pong;
+
+// Bot paddle: predicts where the ball will cross the paddle line and moves towards it.
+// Every decision is O(1) and allocation-free so thousands of bot matches fit on one core.
+public class AiPaddleController implements InputSource {
+    private final boolean leftSide;
+    private final AiDifficulty difficulty;
+
+    // Reused every tick - the game loop consumes the input before the next call
+    private final PlayerInput input = new PlayerInput();
+
+    // Ring buffer of past ball observations to model reaction delay
+    private final int[] seenX;
+    private final int[] seenY;
+    private final int[] seenVelocityX;
+    private final int[] seenVelocityY;
+    private int head = 0;
+    private int observed = 0;
+
+    // Aim error for the current rally
+    private int aimOffset = 0;
+    private int lastVelocitySign = 0;
+
+    // xorshift state - cheaper than Math.random() and reproducible per bot
+    private long rng;
+
+    public AiPaddleController(boolean leftSide, AiDifficulty difficulty) {
+        this(leftSide, difficulty, System.nanoTime());
+    }
+
+    public AiPaddleController(boolean leftSide, AiDifficulty difficulty, long seed) {
+        this.leftSide = leftSide;
+        this.difficulty = difficulty;
+        int size = difficulty.reactionTicks + 1;
+        seenX = new int[size];
+        seenY = new int[size];
+        seenVelocityX = new int[size];
+        seenVelocityY = new int[size];
+        rng = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    public AiDifficulty getDifficulty() {
+        return difficulty;
+    }
+
+    @Override
+    public PlayerInput nextInput(GameState state) {
+        // Record what the bot "sees" this tick
+        seenX[head] = state.ballX;
+        seenY[head] = state.ballY;
+        seenVelocityX[head] = state.ballVelocityX;
+        seenVelocityY[head] = state.ballVelocityY;
+        int size = seenX.length;
+        head = (head + 1) % size;
+        if (observed < size) {
+            observed++;
+        }
+
+        // Oldest entry in the ring is reactionTicks behind the current tick
+        int idx = observed < size ? 0 : head;
+        int ballX = seenX[idx];
+        int ballY = seenY[idx];
+        int velocityX = seenVelocityX[idx];
+        int velocityY = seenVelocityY[idx];
+
+        // New rally direction - pick a new aim error
+        int sign = Integer.signum(velocityX);
+        if (sign != lastVelocitySign) {
+            lastVelocitySign = sign;
+            int error = difficulty.errorPx;
+            aimOffset = error == 0 ? 0 : (int) (nextRandom() % (2L * error + 1)) - error;
+        }
+
+        int paddleY = leftSide ? state.paddleLeftY : state.paddleRightY;
+        int targetCenter;
+        boolean approaching = leftSide ? velocityX < 0 : velocityX > 0;
+        if (approaching) {
+            targetCenter = predictInterceptY(ballX, ballY, velocityX, velocityY) + GameState.BALL_SIZE / 2 + aimOffset;
+        } else {
+            // Ball moving away - drift back to the middle
+            targetCenter = GameState.GAME_HEIGHT / 2;
+        }
+
+        int delta = targetCenter - (paddleY + GameState.PADDLE_HEIGHT / 2);
+        int speed = difficulty.maxSpeed;
+        if (Math.abs(delta) <= 2) {
+            delta = 0; // Dead zone avoids jitter around the target
+        } else if (delta > speed) {
+            delta = speed;
+        } else if (delta < -speed) {
+            delta = -speed;
+        }
+
+        input.moveY = delta;
+        return input;
+    }
+
+    // Ball Y when it reaches the paddle line, unfolding wall bounces arithmetically
+    private int predictInterceptY(int ballX, int ballY, int velocityX, int velocityY) {
+        int lineX = leftSide
+                ? GameState.PADDLE_LEFT_X + GameState.PADDLE_WIDTH
+                : GameState.PADDLE_RIGHT_X - GameState.BALL_SIZE;
+        int distance = Math.abs(lineX - ballX);
+        int speedX = Math.abs(velocityX);
+        if (speedX == 0) {
+            return ballY;
+        }
+        int ticks = distance / speedX;
+        int range = GameState.GAME_HEIGHT - GameState.BALL_SIZE;
+        int period = 2 * range;
+        int raw = Math.floorMod(ballY + velocityY * ticks, period);
+        return raw > range ? period - raw : raw;
+    }
+
+    private long nextRandom() {
+        long x = rng;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        rng = x;
+        return x & Long.MAX_VALUE;
+    }
+}
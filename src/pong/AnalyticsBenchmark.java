@@ -0,0 +1,91 @@
+package pong;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cost of match analytics on the simulation threads.
+// Bot-vs-bot matches are stepped as fast as possible on every core, the way Room steps them,
+// once untracked and once publishing into a MatchAnalytics pipeline. Reports tick throughput,
+// the extra time per tick, the extra bytes allocated per tick by the simulation threads
+// (expected 0) and what the consumer made of the events.
+// Usage: java pong.AnalyticsBenchmark [matches] [seconds]
+public class AnalyticsBenchmark {
+    public static void main(String[] args) throws Exception {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d matches on %d threads, %d s per run%n", matches, threads, seconds);
+
+        run(null, matches, threads, 2); // Warmup
+        double[] off = run(null, matches, threads, seconds);
+        MatchAnalytics analytics = new MatchAnalytics(1 << 16);
+        double[] on = run(analytics, matches, threads, seconds);
+
+        System.out.printf("%-10s %14s %12s %16s%n", "analytics", "ticks/s", "ns/tick", "alloc bytes/tick");
+        System.out.printf("%-10s %14.0f %12.1f %16.2f%n", "off", off[0], off[1], off[2]);
+        System.out.printf("%-10s %14.0f %12.1f %16.2f%n", "on", on[0], on[1], on[2]);
+        System.out.printf("overhead: %.1f ns/tick, %.2f bytes/tick; %.0f events/s, dropped %d, backlog %d%n",
+                on[1] - off[1], on[2] - off[2], on[3], analytics.ring().getDropped(), analytics.ring().getBacklog());
+        Thread.sleep(100);
+        System.out.println(analytics.formatReport());
+    }
+
+    // Returns ticks/s, ns per tick per thread, allocated bytes per tick, events/s
+    private static double[] run(MatchAnalytics analytics, int matches, int threads, int seconds) throws Exception {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        AtomicLong ticks = new AtomicLong();
+        AtomicLong allocated = new AtomicLong();
+        AtomicLong busyNanos = new AtomicLong();
+        long eventsBefore = analytics != null ? analytics.recent(Integer.MAX_VALUE).events : 0;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            Thread thread = new Thread(() -> {
+                GameState[] states = new GameState[(matches - first + threads - 1) / threads];
+                AiPaddleController[] lefts = new AiPaddleController[states.length];
+                AiPaddleController[] rights = new AiPaddleController[states.length];
+                for (int i = 0; i < states.length; i++) {
+                    states[i] = new GameState();
+                    states[i].seedRandom(first + (long) i * threads);
+                    lefts[i] = new AiPaddleController(true, AiDifficulty.HARD, i);
+                    rights[i] = new AiPaddleController(false, AiDifficulty.MEDIUM, i + 1);
+                    if (analytics != null) {
+                        analytics.track(states[i]);
+                    }
+                }
+                long id = Thread.currentThread().threadId();
+                long startBytes = mx.getThreadAllocatedBytes(id);
+                long start = System.nanoTime();
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int i = 0; i < states.length; i++) {
+                        GameState state = states[i];
+                        state.tick++;
+                        state.updatePaddleLeft(lefts[i].nextInput(state).moveY);
+                        state.updatePaddleRight(rights[i].nextInput(state).moveY);
+                        state.moveBall();
+                        state.checkBoundaries();
+                    }
+                    count += states.length;
+                }
+                busyNanos.addAndGet(System.nanoTime() - start);
+                allocated.addAndGet(mx.getThreadAllocatedBytes(id) - startBytes);
+                ticks.addAndGet(count);
+                if (analytics != null) {
+                    for (GameState state : states) {
+                        state.endAnalytics();
+                    }
+                }
+                done.countDown();
+            }, "analytics-bench-" + t);
+            thread.start();
+        }
+        done.await();
+        Thread.sleep(200); // Let the consumer catch up before reading its counts
+        long events = analytics != null ? analytics.recent(Integer.MAX_VALUE).events - eventsBefore : 0;
+        return new double[]{ticks.get() / (double) seconds, busyNanos.get() / (double) ticks.get(),
+                allocated.get() / (double) ticks.get(), events / (double) seconds};
+    }
+}
@@ -0,0 +1,93 @@
+package pong;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Multi-producer, single-consumer ring of fixed-size primitive events.
+// A producer claims a sequence with one CAS, fills the slot's parallel arrays and publishes it with
+// a release store of the sequence; the consumer reads slots in order until it meets one that is
+// not yet published. Nothing allocates and no producer ever waits: with the consumer a full ring
+// behind, new events are dropped and counted.
+public final class AnalyticsRing {
+    // Called on the consumer thread only
+    interface Handler {
+        void onEvent(int type, long matchId, long tick, int a, int b);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final int[] types;
+    private final long[] matchIds;
+    private final long[] ticks;
+    private final int[] valuesA;
+    private final int[] valuesB;
+    // Sequence held by each slot once its event is complete
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed = 0; // Next sequence the consumer reads; slots below it are free
+    private final LongAdder dropped = new LongAdder();
+
+    // capacity must be a power of two
+    public AnalyticsRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        types = new int[capacity];
+        matchIds = new long[capacity];
+        ticks = new long[capacity];
+        valuesA = new int[capacity];
+        valuesB = new int[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    public boolean publish(int type, long matchId, long tick, int a, int b) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= capacity) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & mask;
+        types[slot] = type;
+        matchIds[slot] = matchId;
+        ticks[slot] = tick;
+        valuesA[slot] = a;
+        valuesB[slot] = b;
+        published.setRelease(slot, sequence);
+        return true;
+    }
+
+    // Hands up to max published events to the handler, oldest first; returns how many
+    int drain(Handler handler, int max) {
+        long sequence = consumed;
+        int count = 0;
+        while (count < max) {
+            int slot = (int) sequence & mask;
+            if (published.getAcquire(slot) != sequence) {
+                break; // Not yet claimed, or claimed and still being written
+            }
+            handler.onEvent(types[slot], matchIds[slot], ticks[slot], valuesA[slot], valuesB[slot]);
+            sequence++;
+            count++;
+        }
+        consumed = sequence;
+        return count;
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getBacklog() {
+        return claimed.get() - consumed;
+    }
+}
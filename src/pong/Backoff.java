@@ -0,0 +1,31 @@
+package pong;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Exponential backoff with jitter for connection retries.
+// Delays double from INITIAL_MS up to MAX_MS; +-20% jitter keeps a crowd of clients from
+// retrying in lockstep after a server restart.
+public class Backoff {
+    private static final long INITIAL_MS = 250;
+    private static final long MAX_MS = 8000;
+
+    private long nextMs = INITIAL_MS;
+    private int attempts = 0;
+
+    public long nextDelayMs() {
+        attempts++;
+        long delay = nextMs;
+        nextMs = Math.min(MAX_MS, nextMs * 2);
+        double jitter = 0.8 + 0.4 * ThreadLocalRandom.current().nextDouble();
+        return (long) (delay * jitter);
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void reset() {
+        nextMs = INITIAL_MS;
+        attempts = 0;
+    }
+}
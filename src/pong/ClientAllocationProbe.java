@@ -0,0 +1,116 @@
+package pong;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Allocation check for the client receive path.
+// A loopback server streams snapshots (and heartbeats) to a real GameClient; the bytes
+// allocated by the client's receiver thread are read from the JVM's per-thread counters.
+// The expected steady-state figure is 0 bytes per snapshot.
+// Usage: java -Djava.awt.headless=true pong.ClientAllocationProbe [snapshots]
+public class ClientAllocationProbe {
+    private static final int SNAPSHOTS_PER_SECOND = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int snapshots = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        System.out.printf("legacy GameState readObject: %.0f bytes per snapshot%n", legacyBytesPerSnapshot(threads));
+
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Thread server = new Thread(() -> serve(serverSocket, snapshots), "probe-server");
+            server.setDaemon(true);
+            server.start();
+
+            GameClient client = new GameClient("localhost", serverSocket.getLocalPort(), null);
+            client.startGameLoop(new GameState(), new GamePanel());
+            while (client.getReceiverThread() == null) {
+                Thread.sleep(10);
+            }
+            long receiverId = client.getReceiverThread().threadId();
+
+            // Let the JIT settle, then measure a window of the stream
+            Thread.sleep(3000);
+            long startBytes = threads.getThreadAllocatedBytes(receiverId);
+            long startNanos = System.nanoTime();
+            Thread.sleep(3000);
+            long allocated = threads.getThreadAllocatedBytes(receiverId) - startBytes;
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+            System.out.printf("receiver thread: %d bytes allocated in %.1f s (%d snapshots/s streamed)%n",
+                    allocated, seconds, SNAPSHOTS_PER_SECOND);
+            System.out.printf("per snapshot: %.3f bytes%n", allocated / (SNAPSHOTS_PER_SECOND * seconds));
+            client.close();
+        }
+    }
+
+    // Minimal host: handshake, then snapshots at a fixed rate plus a ping every 500 ms
+    private static void serve(ServerSocket serverSocket, int snapshots) {
+        try (Socket socket = serverSocket.accept()) {
+            PlayerConnection connection = new PlayerConnection(socket);
+            connection.readObject(5000); // Hello
+            connection.send(new SessionInfo(1, false));
+            Thread reader = new Thread(() -> connection.readLoop(message -> {
+                if (message instanceof Heartbeat heartbeat && !heartbeat.reply) {
+                    try {
+                        connection.send(heartbeat.toReply(System.nanoTime()));
+                    } catch (IOException ignored) {
+                    }
+                }
+            }), "probe-server-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            GameState state = new GameState();
+            long intervalNanos = 1_000_000_000L / SNAPSHOTS_PER_SECOND;
+            long next = System.nanoTime();
+            for (int i = 0; i < snapshots && connection.isOpen(); i++) {
+                state.tick = i;
+                state.ballX = i % GameState.GAME_WIDTH;
+                state.ballY = i % GameState.GAME_HEIGHT;
+                try {
+                    connection.send(state);
+                    if (i % (SNAPSHOTS_PER_SECOND / 2) == 0) {
+                        connection.send(Heartbeat.ping(System.nanoTime()));
+                    }
+                } catch (IOException e) {
+                    break; // Client closed after measuring
+                }
+                next += intervalNanos;
+                while (System.nanoTime() < next) {
+                    Thread.onSpinWait();
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Probe server error: " + e.getMessage());
+        }
+    }
+
+    // What the old path cost: one GameState through ObjectInputStream per snapshot
+    private static double legacyBytesPerSnapshot(com.sun.management.ThreadMXBean threads) throws Exception {
+        int count = 20_000;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            GameState state = new GameState();
+            state.syncStateForSerialization();
+            for (int i = 0; i < count; i++) {
+                out.reset();
+                out.writeObject(state);
+            }
+        }
+        long id = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(id);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (int i = 0; i < count; i++) {
+                in.readObject();
+            }
+        }
+        return (threads.getThreadAllocatedBytes(id) - before) / (double) count;
+    }
+}
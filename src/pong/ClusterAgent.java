@@ -0,0 +1,151 @@
+package pong;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+// Node side of cluster mode: keeps a control connection to the coordinator, reports load and
+// hosts the rooms the coordinator assigns. Reconnects with backoff if the coordinator goes away.
+public class ClusterAgent {
+    static final long REPORT_INTERVAL_MS = 250;
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    private final String coordinatorHost;
+    private final int coordinatorPort;
+    private final NodeHello hello;
+    private final Supplier<NodeLoad> loadSource;
+    // Opens the room and returns its id, 0 if the node cannot host it
+    private final ToIntFunction<RoomAssignment> roomHost;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile PlayerConnection connection;
+    private final Map<Long, CompletableFuture<PlacementReply>> placements = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+
+    public ClusterAgent(String coordinator, NodeHello hello, Supplier<NodeLoad> loadSource,
+                        ToIntFunction<RoomAssignment> roomHost) {
+        int colon = coordinator.lastIndexOf(':');
+        this.coordinatorHost = colon > 0 ? coordinator.substring(0, colon) : coordinator;
+        this.coordinatorPort = colon > 0 ? Integer.parseInt(coordinator.substring(colon + 1)) : ClusterCoordinator.DEFAULT_PORT;
+        this.hello = hello;
+        this.loadSource = loadSource;
+        this.roomHost = roomHost;
+    }
+
+    public void start(ScheduledExecutorService reporter, Executor ioExecutor) {
+        running.set(true);
+        ioExecutor.execute(this::controlLoop);
+        reporter.scheduleAtFixedRate(this::report, REPORT_INTERVAL_MS, REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void controlLoop() {
+        Backoff backoff = new Backoff();
+        while (running.get()) {
+            try {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(coordinatorHost, coordinatorPort), CONNECT_TIMEOUT_MS);
+                PlayerConnection current = new PlayerConnection(socket);
+                current.send(hello);
+                current.send(loadSource.get());
+                connection = current;
+                backoff.reset();
+                System.out.println("Joined cluster at " + coordinatorHost + ":" + coordinatorPort
+                        + " as " + hello.host + ":" + hello.port);
+                current.readLoop(message -> onMessage(current, message));
+                connection = null;
+                // Nobody will answer outstanding placement requests now
+                for (Map.Entry<Long, CompletableFuture<PlacementReply>> entry : placements.entrySet()) {
+                    entry.getValue().complete(new PlacementReply(entry.getKey(), null, 0));
+                }
+                if (running.get()) {
+                    System.err.println("Lost the cluster coordinator, rejoining...");
+                }
+            } catch (IOException e) {
+                connection = null;
+                if (running.get()) {
+                    System.err.println("Cannot reach cluster coordinator: " + e.getMessage());
+                }
+            }
+            try {
+                Thread.sleep(backoff.nextDelayMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void onMessage(PlayerConnection current, Object message) {
+        if (message instanceof RoomAssignment assignment) {
+            int roomId = roomHost.applyAsInt(assignment);
+            try {
+                current.send(new RoomReady(assignment.matchId, roomId));
+            } catch (IOException e) {
+                current.close();
+            }
+        } else if (message instanceof PlacementReply reply) {
+            CompletableFuture<PlacementReply> waiting = placements.remove(reply.requestId);
+            if (waiting != null) {
+                waiting.complete(reply);
+            }
+        }
+    }
+
+    // Asks the coordinator where a match leaving this node should go; null if nowhere
+    public PlacementReply requestPlacement(long timeoutMs) {
+        PlayerConnection current = connection;
+        if (current == null) {
+            return null;
+        }
+        long requestId = nextRequestId.getAndIncrement();
+        CompletableFuture<PlacementReply> reply = new CompletableFuture<>();
+        placements.put(requestId, reply);
+        try {
+            current.send(new PlacementRequest(requestId));
+            PlacementReply placement = reply.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return placement.host != null ? placement : null;
+        } catch (IOException | TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            placements.remove(requestId);
+        }
+    }
+
+    // Also called directly when the node stops accepting, so the coordinator knows before the next report
+    void report() {
+        PlayerConnection current = connection;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.send(loadSource.get());
+        } catch (IOException e) {
+            current.close(); // The control loop notices and rejoins
+        } catch (Exception e) {
+            System.err.println("Load report error: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        running.set(false);
+        PlayerConnection current = connection;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package pong;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cluster front door. Game-server nodes (LobbyServer with -Dpong.coordinator=host:port) report
+// their load here; players queue here, and every match is placed on the least loaded node.
+// Players get MatchFound plus a Redirect to that node and resume there with the issued token.
+// Usage: java pong.ClusterCoordinator [port]
+public class ClusterCoordinator {
+    static final int DEFAULT_PORT = 3200;
+
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private static final long SWEEP_INTERVAL_MS = 100;
+    private static final long NODE_TIMEOUT_NANOS = 8 * ClusterAgent.REPORT_INTERVAL_MS * 1_000_000L;
+
+    private final int port;
+    private ServerSocket serverSocket;
+
+    private final ServerIoMode ioMode = ServerIoMode.fromProperty();
+    private final ExecutorService connectionExecutor = ioMode.newConnectionExecutor();
+    private final ScheduledExecutorService matcher = Executors.newSingleThreadScheduledExecutor();
+
+    private final MatchQueue<QueuedPlayer> queue = new MatchQueue<>();
+    private final ClusterPlacement placement = new ClusterPlacement();
+    // Matches waiting for the chosen node's RoomReady
+    private final Map<Long, PendingMatch> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextMatchId = new AtomicLong(1);
+    private final SecureRandom tokenRandom = new SecureRandom();
+    private final Histogram placementNanos = new Histogram();
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // A player waiting for a match; the connection ends when the client follows its Redirect
+    private static final class QueuedPlayer {
+        final PlayerConnection connection;
+        final String name;
+        final int rating;
+        MatchQueue.Ticket<QueuedPlayer> ticket;
+
+        QueuedPlayer(PlayerConnection connection, String name, int rating) {
+            this.connection = connection;
+            this.name = name;
+            this.rating = rating;
+        }
+    }
+
+    private static final class PendingMatch {
+        final QueuedPlayer left;
+        final QueuedPlayer right;
+        final long leftToken;
+        final long rightToken;
+        final ClusterPlacement.Node node;
+
+        PendingMatch(QueuedPlayer left, QueuedPlayer right, long leftToken, long rightToken, ClusterPlacement.Node node) {
+            this.left = left;
+            this.right = right;
+            this.leftToken = leftToken;
+            this.rightToken = rightToken;
+            this.node = node;
+        }
+    }
+
+    public ClusterCoordinator(int port) {
+        this.port = port;
+        Metrics.gauge("cluster.nodes", placement::size);
+        Metrics.gauge("cluster.nodes.available", placement::available);
+        Metrics.gauge("cluster.rooms", placement::totalRooms);
+        Metrics.gauge("cluster.queue.size", queue::size);
+        Metrics.gauge("cluster.placement.p99.us", () -> placementNanos.percentile(99) / 1000.0);
+        Metrics.gauge("cluster.placement.max.us", () -> placementNanos.max() / 1000.0);
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running.set(true);
+        System.out.println("Cluster coordinator started. Port: " + port + " (" + ioMode + " connection I/O)");
+
+        connectionExecutor.execute(this::acceptLoop);
+        matcher.scheduleAtFixedRate(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Metrics.startReporter(matcher);
+    }
+
+    private void acceptLoop() {
+        while (running.get()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Connection error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try {
+            PlayerConnection connection = new PlayerConnection(socket);
+            Object first = connection.readObject(HANDSHAKE_TIMEOUT_MS);
+            if (first instanceof NodeHello hello) {
+                serveNode(connection, hello, socket.getInetAddress().getHostAddress());
+            } else if (first instanceof QueueRequest request) {
+                servePlayer(connection, request);
+            } else {
+                // Resumes go to the node that hosts the match, never through here
+                if (first instanceof Hello) {
+                    connection.send(new SessionInfo(0, false));
+                }
+                connection.close();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Handshake error: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void serveNode(PlayerConnection connection, NodeHello hello, String remoteHost) {
+        // A node advertising a wildcard address is reachable where it connected from
+        String host = hello.host == null || hello.host.isBlank() || hello.host.equals("0.0.0.0") ? remoteHost : hello.host;
+        ClusterPlacement.Node node = placement.register(host, hello.port, hello.capacity, connection);
+        System.out.println("Node " + node.id + " joined: " + node.endpoint() + " (capacity " + node.capacity + ")");
+
+        connection.readLoop(message -> {
+            if (message instanceof NodeLoad load) {
+                placement.report(node, load.activeRooms, load.tickLoad, load.accepting);
+            } else if (message instanceof RoomReady ready) {
+                onRoomReady(node, ready);
+            } else if (message instanceof PlacementRequest request) {
+                placeMigration(node, connection, request);
+            }
+        });
+
+        placement.remove(node);
+        failPending(node);
+        System.out.println("Node " + node.id + " left: " + node.endpoint());
+    }
+
+    private void servePlayer(PlayerConnection connection, QueueRequest request) throws IOException, ClassNotFoundException {
+        // One heartbeat round trip puts the player in a ping bucket
+        long sentAt = System.nanoTime();
+        connection.send(Heartbeat.ping(sentAt));
+        Object reply;
+        do {
+            reply = connection.readObject(HANDSHAKE_TIMEOUT_MS);
+        } while (!(reply instanceof Heartbeat heartbeat && heartbeat.reply));
+        double rttMs = (System.nanoTime() - sentAt) / 1_000_000.0;
+
+        String name = request.playerName == null || request.playerName.isBlank() ? "Player" : request.playerName;
+        QueuedPlayer player = new QueuedPlayer(connection, name, request.rating);
+        player.ticket = new MatchQueue.Ticket<>(player, request.rating, MatchQueue.pingBucketFor(rttMs), System.nanoTime());
+        System.out.printf("%s queued (rating %d, rtt %.1f ms)%n", name, request.rating, rttMs);
+
+        MatchQueue.Ticket<QueuedPlayer> opponent = queue.enqueue(player.ticket);
+        if (opponent != null) {
+            placeMatch(opponent.getOwner(), player);
+        }
+
+        connection.guardInputs();
+        connection.readLoop(message -> {
+            if (message instanceof Heartbeat ping && !ping.reply) {
+                try {
+                    connection.send(ping.toReply(System.nanoTime()));
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+        });
+        if (queue.cancel(player.ticket)) {
+            System.out.println(name + " left the queue");
+        }
+    }
+
+    // Retries long waiters and drops nodes that stopped reporting
+    private void sweep() {
+        try {
+            List<QueuedPlayer> pairs = new ArrayList<>();
+            queue.sweep(System.nanoTime(), (a, b) -> {
+                pairs.add(a.getOwner());
+                pairs.add(b.getOwner());
+            });
+            for (int i = 0; i < pairs.size(); i += 2) {
+                placeMatch(pairs.get(i), pairs.get(i + 1));
+            }
+
+            for (ClusterPlacement.Node node : placement.expire(System.nanoTime(), NODE_TIMEOUT_NANOS)) {
+                System.err.println("Node " + node.id + " stopped reporting: " + node.endpoint());
+                if (node.connection != null) {
+                    node.connection.close();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Matchmaking error: " + e.getMessage());
+        }
+    }
+
+    private void placeMatch(QueuedPlayer left, QueuedPlayer right) {
+        long start = System.nanoTime();
+        ClusterPlacement.Node node = placement.place();
+        placementNanos.record(System.nanoTime() - start);
+        if (node == null) {
+            // No node can take the match - the clients retry with backoff
+            System.err.println("No node available for " + left.name + " vs " + right.name);
+            Metrics.counter("cluster.matches.refused").increment();
+            refuse(left);
+            refuse(right);
+            return;
+        }
+
+        long matchId = nextMatchId.getAndIncrement();
+        PendingMatch match = new PendingMatch(left, right, newToken(), newToken(), node);
+        pending.put(matchId, match);
+        try {
+            node.connection.send(new RoomAssignment(matchId, left.name, left.rating, match.leftToken,
+                    right.name, right.rating, match.rightToken));
+        } catch (IOException e) {
+            node.connection.close(); // serveNode cleans up and fails the pending match
+        }
+    }
+
+    private void onRoomReady(ClusterPlacement.Node node, RoomReady ready) {
+        PendingMatch match = pending.remove(ready.matchId);
+        placement.confirm(node, ready.roomId != 0);
+        if (match == null) {
+            return;
+        }
+        if (ready.roomId == 0) {
+            // The node filled up in the meantime - put both back in line for another node
+            System.err.println("Node " + node.id + " declined match " + ready.matchId);
+            requeue(match.left);
+            requeue(match.right);
+            return;
+        }
+        redirect(match.left, ready.roomId, true, match.right, match.leftToken, node);
+        redirect(match.right, ready.roomId, false, match.left, match.rightToken, node);
+        Metrics.counter("cluster.matches").increment();
+        System.out.println("Match " + ready.matchId + " on node " + node.id + " room " + ready.roomId + ": "
+                + match.left.name + " vs " + match.right.name);
+    }
+
+    // A draining node hands a running match to another node directly; the draining node has
+    // already reported itself as not accepting, so it is never its own target
+    private void placeMigration(ClusterPlacement.Node source, PlayerConnection connection, PlacementRequest request) {
+        long start = System.nanoTime();
+        ClusterPlacement.Node target = placement.place();
+        placementNanos.record(System.nanoTime() - start);
+        if (target == source) {
+            placement.confirm(target, false);
+            target = null;
+        }
+        if (target != null) {
+            placement.confirm(target, true); // The target reports the room from its next load report on
+            Metrics.counter("cluster.migrations").increment();
+        }
+        try {
+            connection.send(target != null
+                    ? new PlacementReply(request.requestId, target.host, target.port)
+                    : new PlacementReply(request.requestId, null, 0));
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    // The node went away before confirming; its matches are placed again
+    private void failPending(ClusterPlacement.Node node) {
+        for (Map.Entry<Long, PendingMatch> entry : pending.entrySet()) {
+            PendingMatch match = entry.getValue();
+            if (match.node == node && pending.remove(entry.getKey(), match)) {
+                requeue(match.left);
+                requeue(match.right);
+            }
+        }
+    }
+
+    private void redirect(QueuedPlayer player, int roomId, boolean leftSide, QueuedPlayer opponent, long token,
+                          ClusterPlacement.Node node) {
+        try {
+            player.connection.send(new MatchFound(roomId, leftSide, opponent.name, opponent.rating));
+            // The client closes this connection once it has the redirect
+            player.connection.send(new Redirect(node.host, node.port, token));
+        } catch (IOException e) {
+            // The room's grace period covers a player that vanished here
+            player.connection.close();
+        }
+    }
+
+    private void requeue(QueuedPlayer player) {
+        if (!player.connection.isOpen()) {
+            return;
+        }
+        player.ticket = new MatchQueue.Ticket<>(player, player.rating, player.ticket.pingBucket, player.ticket.enqueuedAtNanos);
+        MatchQueue.Ticket<QueuedPlayer> opponent = queue.enqueue(player.ticket);
+        if (opponent != null) {
+            placeMatch(opponent.getOwner(), player);
+        }
+    }
+
+    private void refuse(QueuedPlayer player) {
+        try {
+            player.connection.send(new SessionInfo(0, false));
+        } catch (IOException ignored) {
+        }
+        player.connection.close();
+    }
+
+    private long newToken() {
+        long token;
+        do {
+            token = tokenRandom.nextLong();
+        } while (token == 0);
+        return token;
+    }
+
+    public void close() {
+        running.set(false);
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+        matcher.shutdownNow();
+        connectionExecutor.shutdownNow();
+        System.out.println("Cluster coordinator closed.");
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ClusterCoordinator coordinator = new ClusterCoordinator(port);
+        coordinator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(coordinator::close));
+    }
+}
@@ -0,0 +1,152 @@
+package pong;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Coordinator's view of the game-server nodes, kept ordered by load.
+// Nodes that can take a match sit in a tree sorted by score, so picking the least loaded node
+// and re-ranking it after a report or placement is O(log n) however many nodes there are.
+public class ClusterPlacement {
+    // Ties go to the node with fewer rooms, then the older node
+    private static final Comparator<Node> BY_LOAD = Comparator.<Node>comparingDouble(node -> node.score)
+            .thenComparingInt(Node::rooms)
+            .thenComparingInt(node -> node.id);
+
+    static final class Node {
+        final int id;
+        final String host;
+        final int port;
+        final int capacity;
+        final PlayerConnection connection; // Control connection, null in benchmarks
+        int activeRooms;
+        int pendingRooms; // Placed but not yet confirmed by RoomReady
+        double tickLoad;
+        boolean accepting = true;
+        long lastReportNanos;
+        double score;
+        boolean ranked;
+
+        Node(int id, String host, int port, int capacity, PlayerConnection connection) {
+            this.id = id;
+            this.host = host;
+            this.port = port;
+            this.capacity = Math.max(1, capacity);
+            this.connection = connection;
+        }
+
+        int rooms() {
+            return activeRooms + pendingRooms;
+        }
+
+        String endpoint() {
+            return host + ":" + port;
+        }
+    }
+
+    private final Map<Integer, Node> nodes = new HashMap<>();
+    private final TreeSet<Node> ranked = new TreeSet<>(BY_LOAD);
+    private int nextId = 1;
+
+    public synchronized Node register(String host, int port, int capacity, PlayerConnection connection) {
+        Node node = new Node(nextId++, host, port, capacity, connection);
+        node.lastReportNanos = System.nanoTime();
+        nodes.put(node.id, node);
+        rank(node);
+        return node;
+    }
+
+    public synchronized void report(Node node, int activeRooms, double tickLoad, boolean accepting) {
+        if (nodes.get(node.id) != node) {
+            return; // Already removed
+        }
+        unrank(node);
+        node.activeRooms = activeRooms;
+        node.tickLoad = tickLoad;
+        node.accepting = accepting;
+        node.lastReportNanos = System.nanoTime();
+        rank(node);
+    }
+
+    // Least loaded node with room to spare, or null; the placement counts against it right away
+    // so a burst of matches spreads out before the next load report arrives
+    public synchronized Node place() {
+        Node node = ranked.pollFirst();
+        if (node == null) {
+            return null;
+        }
+        node.ranked = false;
+        node.pendingRooms++;
+        rank(node);
+        return node;
+    }
+
+    // The node answered a placement: the room either runs now or was never opened
+    public synchronized void confirm(Node node, boolean hosted) {
+        if (nodes.get(node.id) != node) {
+            return;
+        }
+        unrank(node);
+        node.pendingRooms = Math.max(0, node.pendingRooms - 1);
+        if (hosted) {
+            node.activeRooms++; // Until the next report says otherwise
+        }
+        rank(node);
+    }
+
+    public synchronized void remove(Node node) {
+        if (nodes.remove(node.id, node)) {
+            unrank(node);
+        }
+    }
+
+    // Nodes that have not reported for timeoutNanos; they are dropped from placement
+    public synchronized List<Node> expire(long now, long timeoutNanos) {
+        List<Node> expired = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (now - node.lastReportNanos > timeoutNanos) {
+                expired.add(node);
+            }
+        }
+        for (Node node : expired) {
+            remove(node);
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized int available() {
+        return ranked.size();
+    }
+
+    public synchronized int totalRooms() {
+        int rooms = 0;
+        for (Node node : nodes.values()) {
+            rooms += node.rooms();
+        }
+        return rooms;
+    }
+
+    // Score: the tighter of room capacity and tick budget
+    private void rank(Node node) {
+        node.score = Math.max(node.rooms() / (double) node.capacity, node.tickLoad);
+        if (node.accepting && node.rooms() < node.capacity) {
+            ranked.add(node);
+            node.ranked = true;
+        }
+    }
+
+    // Must run before any field the comparator reads changes
+    private void unrank(Node node) {
+        if (node.ranked) {
+            ranked.remove(node);
+            node.ranked = false;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package pong;
+
+import java.util.Random;
+
+// Placement latency of ClusterPlacement with thousands of nodes and rooms.
+// Interleaves load reports (the steady background traffic) with placements and confirmations,
+// the way the coordinator sees them, and reports the per-decision latency distribution.
+// Usage: java pong.ClusterPlacementBenchmark [nodes] [placements]
+public class ClusterPlacementBenchmark {
+    private static final int REPORTS_PER_PLACEMENT = 4;
+
+    public static void main(String[] args) {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int placements = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        for (int round = 0; round < 3; round++) {
+            run(nodeCount, placements, round == 2);
+        }
+    }
+
+    private static void run(int nodeCount, int placements, boolean report) {
+        Random random = new Random(42);
+        ClusterPlacement placement = new ClusterPlacement();
+        ClusterPlacement.Node[] nodes = new ClusterPlacement.Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = placement.register("10.0." + (i / 256) + "." + (i % 256), 3100, 256, null);
+            placement.report(nodes[i], random.nextInt(200), random.nextDouble() * 0.9, true);
+        }
+
+        Histogram placeNanos = new Histogram();
+        Histogram reportNanos = new Histogram();
+        int refused = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < placements; i++) {
+            // Nodes report rooms finishing and load drifting
+            for (int r = 0; r < REPORTS_PER_PLACEMENT; r++) {
+                ClusterPlacement.Node node = nodes[random.nextInt(nodeCount)];
+                int rooms = Math.max(0, Math.min(node.capacity, node.activeRooms + random.nextInt(3) - 1));
+                long t0 = System.nanoTime();
+                placement.report(node, rooms, random.nextDouble() * 0.9, random.nextInt(100) != 0);
+                reportNanos.record(System.nanoTime() - t0);
+            }
+
+            long t0 = System.nanoTime();
+            ClusterPlacement.Node chosen = placement.place();
+            placeNanos.record(System.nanoTime() - t0);
+            if (chosen == null) {
+                refused++;
+            } else {
+                placement.confirm(chosen, true);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (report) {
+            System.out.printf("nodes: %d, rooms: %d, placements: %d (%d refused)%n",
+                    nodeCount, placement.totalRooms(), placements, refused);
+            System.out.printf("placement: p50 %.2f us, p99 %.2f us, p99.9 %.2f us, max %.2f us%n",
+                    placeNanos.percentile(50) / 1000.0, placeNanos.percentile(99) / 1000.0,
+                    placeNanos.percentile(99.9) / 1000.0, placeNanos.max() / 1000.0);
+            System.out.printf("load report: p50 %.2f us, p99 %.2f us, max %.2f us%n",
+                    reportNanos.percentile(50) / 1000.0, reportNanos.percentile(99) / 1000.0, reportNanos.max() / 1000.0);
+            System.out.printf("throughput: %.0f placements/s with %d reports each%n",
+                    placements / (elapsed / 1e9), REPORTS_PER_PLACEMENT);
+        }
+    }
+}
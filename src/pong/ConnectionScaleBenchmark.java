@@ -0,0 +1,233 @@
+package pong;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Compares connection threading models at scale: memory footprint and tick-start jitter.
+// Usage: java pong.ConnectionScaleBenchmark <virtual|platform|nio> <connections> [seconds]
+// Each mode gets a fresh JVM so footprints do not mix. Needs ~2 file descriptors per connection.
+public class ConnectionScaleBenchmark {
+    private static final long TICK_NANOS = 16_000_000L;
+
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "virtual";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        // One snapshot frame, shared by every connection
+        GameState state = new GameState();
+        state.resetGame();
+        state.syncStateForSerialization();
+        ByteBuffer body = SnapshotCodec.encodeSnapshot(state);
+        ByteBuffer header = SnapshotCodec.encodeHeader(SnapshotCodec.TYPE_SNAPSHOT, 1, body.remaining());
+        byte[] frame = new byte[header.remaining() + body.remaining()];
+        header.get(frame, 0, header.remaining());
+        body.get(frame, SnapshotCodec.HEADER_SIZE, body.remaining());
+
+        System.gc();
+        long baselineHeap = usedHeap();
+        long baselineRss = residentSetKb();
+        int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        Selector clientSelector = Selector.open();
+        Runnable broadcaster;
+        if (mode.equals("nio")) {
+            broadcaster = setUpNio(connections, clientSelector, frame);
+        } else {
+            broadcaster = setUpBlocking(mode.equals("virtual"), connections, clientSelector, frame);
+        }
+
+        // Client side: one selector thread drains every socket
+        Thread drainer = new Thread(() -> drain(clientSelector), "client-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+
+        // Simulation-style tick on a platform scheduler
+        long[] lateness = new long[(int) (seconds * 1_000_000_000L / TICK_NANOS) + 1];
+        long warmupEnd = System.nanoTime() + 2_000_000_000L;
+        int[] tickCount = {0};
+        int[] sampleCount = {0};
+        long[] firstTick = {0};
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            int tick = tickCount[0]++;
+            if (tick == 0) {
+                firstTick[0] = now;
+            }
+            long late = now - (firstTick[0] + tick * TICK_NANOS);
+            if (now >= warmupEnd && sampleCount[0] < lateness.length) {
+                lateness[sampleCount[0]++] = late;
+            }
+            broadcaster.run();
+        }, TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS);
+
+        Thread.sleep(2000L + seconds * 1000L);
+        scheduler.shutdownNow();
+
+        int samples = sampleCount[0];
+        long[] sorted = Arrays.copyOf(lateness, samples);
+        Arrays.sort(sorted);
+        System.gc();
+        long heap = usedHeap() - baselineHeap;
+        long rss = residentSetKb() - baselineRss;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount() - baselineThreads;
+
+        System.out.printf("mode=%s connections=%d ticks=%d%n", mode, connections, samples);
+        System.out.printf("heap after GC: %.1f MB (%.1f KB/connection)%n",
+                heap / 1048576.0, heap / 1024.0 / connections);
+        // Platform thread stacks live outside the heap, so RSS is the fairer footprint
+        if (baselineRss >= 0) {
+            System.out.printf("resident set growth: %.1f MB (%.1f KB/connection)%n",
+                    rss / 1024.0, (double) rss / connections);
+        }
+        System.out.printf("platform threads: %d%n", threads);
+        if (samples > 0) {
+            System.out.printf("tick lateness: p50=%.3f ms p99=%.3f ms max=%.3f ms%n",
+                    sorted[samples / 2] / 1e6, sorted[(int) (samples * 0.99)] / 1e6, sorted[samples - 1] / 1e6);
+        }
+        running = false;
+        System.exit(0);
+    }
+
+    // Blocking sockets with a reader and a writer thread per connection
+    private static Runnable setUpBlocking(boolean virtual, int connections, Selector clientSelector,
+                                          byte[] frame) throws IOException {
+        ExecutorService executor = virtual
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        List<BlockingQueue<byte[]>> outboxes = new ArrayList<>(connections);
+        try (ServerSocket serverSocket = new ServerSocket(0, connections)) {
+            int port = serverSocket.getLocalPort();
+            for (int i = 0; i < connections; i++) {
+                connectClient(clientSelector, port);
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                BlockingQueue<byte[]> outbox = new ArrayBlockingQueue<>(1);
+                outboxes.add(outbox);
+                executor.execute(() -> readUntilClosed(socket));
+                executor.execute(() -> writeFromOutbox(socket, outbox));
+            }
+        }
+        return () -> {
+            for (BlockingQueue<byte[]> outbox : outboxes) {
+                outbox.offer(frame); // Drop when the writer is still busy
+            }
+        };
+    }
+
+    // Non-blocking channels written directly by the tick thread
+    private static Runnable setUpNio(int connections, Selector clientSelector, byte[] frame) throws IOException {
+        List<SocketChannel> channels = new ArrayList<>(connections);
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress("localhost", 0), connections);
+            int port = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+            for (int i = 0; i < connections; i++) {
+                connectClient(clientSelector, port);
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channels.add(channel);
+            }
+        }
+        ByteBuffer shared = ByteBuffer.wrap(frame).asReadOnlyBuffer();
+        return () -> {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.write(shared.duplicate());
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+
+    private static void connectClient(Selector clientSelector, int port) throws IOException {
+        SocketChannel client = SocketChannel.open(new InetSocketAddress("localhost", port));
+        client.configureBlocking(false);
+        client.register(clientSelector, SelectionKey.OP_READ);
+    }
+
+    private static void readUntilClosed(Socket socket) {
+        byte[] buffer = new byte[64];
+        try (InputStream in = socket.getInputStream()) {
+            while (running && in.read(buffer) >= 0) {
+                // Clients send nothing in this benchmark - the thread just stays parked
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void writeFromOutbox(Socket socket, BlockingQueue<byte[]> outbox) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            while (running) {
+                byte[] frame = outbox.take();
+                out.write(frame);
+                out.flush();
+            }
+        } catch (IOException | InterruptedException ignored) {
+        }
+    }
+
+    private static void drain(Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (running) {
+                selector.select(100);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    buffer.clear();
+                    if (((SocketChannel) key.channel()).read(buffer) < 0) {
+                        key.cancel();
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    // VmRSS from /proc, -1 where unavailable
+    private static long residentSetKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+        }
+        return -1;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
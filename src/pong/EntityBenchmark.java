@@ -0,0 +1,113 @@
+package pong;
+
+import java.util.SplittableRandom;
+
+// EntityWorld checks and per-tick cost.
+// First steps classic() next to a GameState on the same random inputs and compares them after
+// every tick; GameState runs on a classic() world of its own, so this checks how it copies its
+// fields in and out. Then times a tick at 1, 100 and 10,000 balls with the grid broadphase and
+// with every pair checked. The field grows with the ball count so that crowding stays that of
+// 100 balls on the classic 800x600 field, with an obstacle per 48,000 px^2. Its edges are walls:
+// serves from the middle after goals would bunch the balls up there over a long run.
+// Usage: java pong.EntityBenchmark [secondsPerRun]
+public class EntityBenchmark {
+    private static final int CHECK_TICKS = 500_000;
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+        checkClassic();
+        fourPlayerSample();
+
+        System.out.printf("%8s %12s %14s %14s %10s%n", "balls", "field", "grid us/tick", "pairs us/tick", "speedup");
+        for (int balls : new int[]{1, 100, 10_000}) {
+            double grid = timeTick(balls, true, seconds);
+            double pairs = timeTick(balls, false, seconds);
+            EntityWorld sample = crowdedWorld(balls);
+            System.out.printf("%8d %12s %14.2f %14.2f %9.1fx%n", balls, sample.width + "x" + sample.height,
+                    grid / 1000, pairs / 1000, pairs / grid);
+        }
+    }
+
+    private static void checkClassic() {
+        GameState state = new GameState();
+        state.resetGame();
+        state.seedRandom(7);
+        EntityWorld world = EntityWorld.classic();
+        world.seedRandom(7);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int t = 0; t < CHECK_TICKS; t++) {
+            int left = (random.nextInt(3) - 1) * 5;
+            int right = (random.nextInt(3) - 1) * 5;
+            state.tick++;
+            state.updatePaddleLeft(left);
+            state.updatePaddleRight(right);
+            state.moveBall();
+            state.checkBoundaries();
+            world.movePaddle(EntityWorld.LEFT, left);
+            world.movePaddle(EntityWorld.RIGHT, right);
+            world.step();
+            if (state.getBallX() != world.ballX[0] || state.getBallY() != world.ballY[0]
+                    || state.prevBallX != world.prevBallX[0] || state.prevBallY != world.prevBallY[0]
+                    || state.ballVelocityX != world.velocityX[0] || state.ballVelocityY != world.velocityY[0]
+                    || state.getPaddleLeftY() != world.getPaddlePos(EntityWorld.LEFT)
+                    || state.getPaddleRightY() != world.getPaddlePos(EntityWorld.RIGHT)
+                    || state.scoreLeft != world.getConceded(EntityWorld.RIGHT)
+                    || state.scoreRight != world.getConceded(EntityWorld.LEFT)) {
+                System.out.println("classic mode diverged from GameState at tick " + state.tick);
+                return;
+            }
+        }
+        System.out.printf("classic mode matches GameState over %d ticks (score %d:%d)%n", CHECK_TICKS,
+                state.scoreLeft, state.scoreRight);
+    }
+
+    private static void fourPlayerSample() {
+        EntityWorld world = EntityWorld.fourPlayer(8, 3);
+        for (int t = 0; t < 60 * 60; t++) {
+            for (int edge = EntityWorld.LEFT; edge <= EntityWorld.BOTTOM; edge++) {
+                world.movePaddle(edge, ((t / 40 + edge) & 1) == 0 ? 5 : -5);
+            }
+            world.step();
+        }
+        System.out.printf("four players, 8 balls, one minute: conceded left %d right %d top %d bottom %d%n",
+                world.getConceded(EntityWorld.LEFT), world.getConceded(EntityWorld.RIGHT),
+                world.getConceded(EntityWorld.TOP), world.getConceded(EntityWorld.BOTTOM));
+    }
+
+    // Nanoseconds per tick, after a warmup of a quarter of the run
+    private static double timeTick(int balls, boolean useGrid, double seconds) {
+        EntityWorld world = crowdedWorld(balls);
+        world.useGrid = useGrid;
+        long warmupEnd = System.nanoTime() + (long) (seconds * 0.25e9);
+        while (System.nanoTime() < warmupEnd) {
+            world.step();
+        }
+        long ticks = 0;
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long now;
+        do {
+            world.step();
+            ticks++;
+            now = System.nanoTime();
+        } while (now < end);
+        return (now - start) / (double) ticks;
+    }
+
+    private static EntityWorld crowdedWorld(int balls) {
+        double scale = Math.sqrt(Math.max(1, balls / 100.0));
+        int width = (int) (GameState.GAME_WIDTH * scale);
+        int height = (int) (GameState.GAME_HEIGHT * scale);
+        EntityWorld world = new EntityWorld(width, height, balls);
+        SplittableRandom random = new SplittableRandom(5);
+        int obstacles = width * height / 48_000;
+        for (int i = 0; i < obstacles; i++) {
+            world.addObstacle(random.nextInt(width - 40), random.nextInt(height - 40), 40, 40);
+        }
+        for (int i = 0; i < balls; i++) {
+            world.addBall(random.nextInt(width - EntityWorld.BALL_SIZE), random.nextInt(height - EntityWorld.BALL_SIZE),
+                    random.nextBoolean() ? 5 : -5, random.nextInt(11) - 5);
+        }
+        return world;
+    }
+}
@@ -0,0 +1,519 @@
+package pong;
+
+import java.util.Arrays;
+
+// Data-driven playfield: any number of balls, a paddle on up to four edges, fixed obstacles.
+// An edge with a paddle is a goal - a ball crossing it is a point conceded by that paddle's
+// player - and an edge without one is a wall. Entities live in parallel primitive arrays.
+// Ball-ball and ball-obstacle checks go through a uniform grid, so their cost follows how
+// crowded a ball's neighbourhood is rather than how many entities exist. classic() is the
+// two-player game; GameState runs its ball and paddle bounds through one, so this is the only
+// copy of the physics.
+public class EntityWorld {
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
+    static final int TOP = 2;
+    static final int BOTTOM = 3;
+
+    static final int BALL_SIZE = GameState.BALL_SIZE;
+    static final int PADDLE_LENGTH = GameState.PADDLE_HEIGHT;
+    static final int PADDLE_THICKNESS = GameState.PADDLE_WIDTH;
+    static final int PADDLE_INSET = GameState.PADDLE_LEFT_X;
+    static final int SERVE_SPEED = 5;
+    // At least BALL_SIZE, so overlapping balls are always in neighbouring cells
+    static final int CELL_SIZE = 32;
+
+    // Told about hits and goals as they happen, e.g. for GameState's analytics
+    interface Events {
+        void paddleHit(int edge);
+
+        // Before the serve: the ball's velocity as it crossed the goal line
+        void goal(int edge, int velocityX, int velocityY);
+    }
+
+    final int width;
+    final int height;
+
+    // Balls
+    int ballCount = 0;
+    int[] ballX;
+    int[] ballY;
+    int[] prevBallX;
+    int[] prevBallY;
+    int[] velocityX;
+    int[] velocityY;
+
+    // Paddles by edge; the position runs along the edge (y for LEFT/RIGHT, x for TOP/BOTTOM)
+    final boolean[] hasPaddle = new boolean[4];
+    final int[] paddlePos = new int[4];
+    final int[] conceded = new int[4];
+
+    // Obstacles, axis-aligned rectangles
+    int obstacleCount = 0;
+    int[] obstacleX = new int[4];
+    int[] obstacleY = new int[4];
+    int[] obstacleWidth = new int[4];
+    int[] obstacleHeight = new int[4];
+
+    long tick = 0;
+    long rngState = System.nanoTime();
+    Events events;
+
+    // Broadphase; the benchmark turns it off to compare against checking every pair
+    boolean useGrid = true;
+    private final int columns;
+    private final int rows;
+    // Balls sorted by cell, rebuilt every tick: cell c holds cellBalls[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellStart;
+    private int[] cellBalls;
+    private int[] ballCell;
+    // Obstacles per cell, rebuilt when one is added; an obstacle is listed in every cell it covers
+    private int[] obstacleCellStart;
+    private int[] obstacleCellItems = new int[0];
+    private int[] obstacleStamp = new int[4];
+    private int stamp = 0;
+
+    public EntityWorld(int width, int height, int ballCapacity) {
+        this.width = width;
+        this.height = height;
+        columns = (width + CELL_SIZE - 1) / CELL_SIZE;
+        rows = (height + CELL_SIZE - 1) / CELL_SIZE;
+        cellStart = new int[columns * rows + 1];
+        obstacleCellStart = new int[columns * rows + 1];
+        ballX = new int[ballCapacity];
+        ballY = new int[ballCapacity];
+        prevBallX = new int[ballCapacity];
+        prevBallY = new int[ballCapacity];
+        velocityX = new int[ballCapacity];
+        velocityY = new int[ballCapacity];
+        cellBalls = new int[ballCapacity];
+        ballCell = new int[ballCapacity];
+    }
+
+    // GameState's layout after resetGame(): one ball, left and right paddles
+    public static EntityWorld classic() {
+        EntityWorld world = new EntityWorld(GameState.GAME_WIDTH, GameState.GAME_HEIGHT, 1);
+        world.addPaddle(LEFT);
+        world.addPaddle(RIGHT);
+        world.addBall(GameState.GAME_WIDTH / 2, GameState.GAME_HEIGHT / 2, SERVE_SPEED, SERVE_SPEED);
+        return world;
+    }
+
+    // Every edge is somebody's goal
+    public static EntityWorld fourPlayer(int balls, long seed) {
+        EntityWorld world = new EntityWorld(GameState.GAME_HEIGHT, GameState.GAME_HEIGHT, balls);
+        world.seedRandom(seed);
+        for (int edge = LEFT; edge <= BOTTOM; edge++) {
+            world.addPaddle(edge);
+        }
+        for (int i = 0; i < balls; i++) {
+            world.serve(world.addBall(0, 0, 0, 0), LEFT);
+        }
+        return world;
+    }
+
+    public int addBall(int x, int y, int vx, int vy) {
+        if (ballCount == ballX.length) {
+            int capacity = Math.max(4, ballCount * 2);
+            ballX = Arrays.copyOf(ballX, capacity);
+            ballY = Arrays.copyOf(ballY, capacity);
+            prevBallX = Arrays.copyOf(prevBallX, capacity);
+            prevBallY = Arrays.copyOf(prevBallY, capacity);
+            velocityX = Arrays.copyOf(velocityX, capacity);
+            velocityY = Arrays.copyOf(velocityY, capacity);
+            cellBalls = new int[capacity];
+            ballCell = new int[capacity];
+        }
+        int i = ballCount++;
+        ballX[i] = x;
+        ballY[i] = y;
+        velocityX[i] = vx;
+        velocityY[i] = vy;
+        return i;
+    }
+
+    // Centered on its edge
+    public void addPaddle(int edge) {
+        hasPaddle[edge] = true;
+        paddlePos[edge] = (edge == LEFT || edge == RIGHT ? height : width) / 2 - PADDLE_LENGTH / 2;
+    }
+
+    public void addObstacle(int x, int y, int w, int h) {
+        if (obstacleCount == obstacleX.length) {
+            int capacity = obstacleCount * 2;
+            obstacleX = Arrays.copyOf(obstacleX, capacity);
+            obstacleY = Arrays.copyOf(obstacleY, capacity);
+            obstacleWidth = Arrays.copyOf(obstacleWidth, capacity);
+            obstacleHeight = Arrays.copyOf(obstacleHeight, capacity);
+            obstacleStamp = Arrays.copyOf(obstacleStamp, capacity);
+        }
+        int i = obstacleCount++;
+        obstacleX[i] = x;
+        obstacleY[i] = y;
+        obstacleWidth[i] = w;
+        obstacleHeight[i] = h;
+        indexObstacles();
+    }
+
+    public void seedRandom(long seed) {
+        rngState = seed;
+    }
+
+    // Input for the next step; bounds are applied after the balls moved, as in GameState
+    public void movePaddle(int edge, int delta) {
+        paddlePos[edge] += delta;
+    }
+
+    public void step() {
+        tick++;
+        moveBalls();
+        clampPaddles();
+    }
+
+    // The two halves of step(), for GameState's moveBall() and checkBoundaries()
+    void moveBalls() {
+        for (int i = 0; i < ballCount; i++) {
+            moveBall(i);
+        }
+        if (ballCount > 1) {
+            if (useGrid) {
+                collideBallsGrid();
+            } else {
+                collideBallsAll();
+            }
+        }
+    }
+
+    void clampPaddles() {
+        for (int edge = LEFT; edge <= BOTTOM; edge++) {
+            int max = (edge == LEFT || edge == RIGHT ? height : width) - PADDLE_LENGTH;
+            paddlePos[edge] = Math.max(0, Math.min(max, paddlePos[edge]));
+        }
+    }
+
+    // Walls, paddles, obstacles, then goals
+    private void moveBall(int i) {
+        int x = ballX[i];
+        int y = ballY[i];
+        int vx = velocityX[i];
+        int vy = velocityY[i];
+        prevBallX[i] = x;
+        prevBallY[i] = y;
+        x += vx;
+        y += vy;
+
+        if (!hasPaddle[TOP] && y <= 0) {
+            y = 0;
+            vy = -vy;
+        }
+        if (!hasPaddle[BOTTOM] && y >= height - BALL_SIZE) {
+            y = height - BALL_SIZE;
+            vy = -vy;
+        }
+        if (!hasPaddle[LEFT] && x <= 0) {
+            x = 0;
+            vx = -vx;
+        }
+        if (!hasPaddle[RIGHT] && x >= width - BALL_SIZE) {
+            x = width - BALL_SIZE;
+            vx = -vx;
+        }
+
+        if (hasPaddle[LEFT] && hitsPaddle(x, y, PADDLE_INSET, paddlePos[LEFT], PADDLE_THICKNESS, PADDLE_LENGTH)) {
+            vx = Math.abs(vx);
+            x = PADDLE_INSET + PADDLE_THICKNESS;
+            if (events != null) {
+                events.paddleHit(LEFT);
+            }
+        }
+        int rightX = width - PADDLE_INSET - PADDLE_THICKNESS;
+        if (hasPaddle[RIGHT] && hitsPaddle(x, y, rightX, paddlePos[RIGHT], PADDLE_THICKNESS, PADDLE_LENGTH)) {
+            vx = -Math.abs(vx);
+            x = rightX - BALL_SIZE;
+            if (events != null) {
+                events.paddleHit(RIGHT);
+            }
+        }
+        if (hasPaddle[TOP] && hitsPaddle(x, y, paddlePos[TOP], PADDLE_INSET, PADDLE_LENGTH, PADDLE_THICKNESS)) {
+            vy = Math.abs(vy);
+            y = PADDLE_INSET + PADDLE_THICKNESS;
+            if (events != null) {
+                events.paddleHit(TOP);
+            }
+        }
+        int bottomY = height - PADDLE_INSET - PADDLE_THICKNESS;
+        if (hasPaddle[BOTTOM] && hitsPaddle(x, y, paddlePos[BOTTOM], bottomY, PADDLE_LENGTH, PADDLE_THICKNESS)) {
+            vy = -Math.abs(vy);
+            y = bottomY - BALL_SIZE;
+            if (events != null) {
+                events.paddleHit(BOTTOM);
+            }
+        }
+
+        if (obstacleCount > 0) {
+            ballX[i] = x;
+            ballY[i] = y;
+            velocityX[i] = vx;
+            velocityY[i] = vy;
+            collideObstacles(i);
+            x = ballX[i];
+            y = ballY[i];
+            vx = velocityX[i];
+            vy = velocityY[i];
+        }
+
+        int goal = -1;
+        if (hasPaddle[LEFT] && x < 0) {
+            goal = LEFT;
+        } else if (hasPaddle[RIGHT] && x > width) {
+            goal = RIGHT;
+        } else if (hasPaddle[TOP] && y < 0) {
+            goal = TOP;
+        } else if (hasPaddle[BOTTOM] && y > height) {
+            goal = BOTTOM;
+        }
+        if (goal >= 0) {
+            if (events != null) {
+                events.goal(goal, vx, vy);
+            }
+            conceded[goal]++;
+            velocityX[i] = vx;
+            velocityY[i] = vy;
+            serve(i, goal);
+            return;
+        }
+        ballX[i] = x;
+        ballY[i] = y;
+        velocityX[i] = vx;
+        velocityY[i] = vy;
+    }
+
+    // From the middle, back the way the ball left through goal. Two-player serves are at 45
+    // degrees. With goals on both axes the ball picks a random axis and a steeper angle: a 45
+    // degree serve from the middle of a square field runs into a corner, where the side goal is
+    // checked first, so top and bottom would never see play.
+    private void serve(int i, int goal) {
+        ballX[i] = width / 2;
+        ballY[i] = height / 2;
+        boolean bothAxes = (hasPaddle[LEFT] || hasPaddle[RIGHT]) && (hasPaddle[TOP] || hasPaddle[BOTTOM]);
+        if (!bothAxes) {
+            if (goal == LEFT || goal == RIGHT) {
+                velocityX[i] = velocityX[i] > 0 ? -SERVE_SPEED : SERVE_SPEED;
+                velocityY[i] = nextRandomBit() ? SERVE_SPEED : -SERVE_SPEED;
+            } else {
+                velocityY[i] = velocityY[i] > 0 ? -SERVE_SPEED : SERVE_SPEED;
+                velocityX[i] = nextRandomBit() ? SERVE_SPEED : -SERVE_SPEED;
+            }
+            return;
+        }
+        long bits = nextRandom();
+        int along = (bits & 1) != 0 ? SERVE_SPEED : -SERVE_SPEED;
+        int across = 1 + (int) ((bits >>> 2) & 3);
+        if ((bits & 2) != 0) {
+            across = -across;
+        }
+        if ((bits & 16) != 0) {
+            velocityX[i] = along;
+            velocityY[i] = across;
+        } else {
+            velocityX[i] = across;
+            velocityY[i] = along;
+        }
+    }
+
+    private static boolean hitsPaddle(int x, int y, int px, int py, int pw, int ph) {
+        return x <= px + pw && x + BALL_SIZE >= px && y + BALL_SIZE >= py && y <= py + ph;
+    }
+
+    private void collideObstacles(int i) {
+        if (!useGrid) {
+            for (int o = 0; o < obstacleCount; o++) {
+                bounceOffObstacle(i, o);
+            }
+            return;
+        }
+        stamp++;
+        for (int r = row(ballY[i]); r <= row(ballY[i] + BALL_SIZE); r++) {
+            for (int c = column(ballX[i]); c <= column(ballX[i] + BALL_SIZE); c++) {
+                int cell = r * columns + c;
+                for (int k = obstacleCellStart[cell]; k < obstacleCellStart[cell + 1]; k++) {
+                    int o = obstacleCellItems[k];
+                    if (obstacleStamp[o] != stamp) { // Not yet checked through another cell
+                        obstacleStamp[o] = stamp;
+                        bounceOffObstacle(i, o);
+                    }
+                }
+            }
+        }
+    }
+
+    // Pushes an overlapping ball out along the shallowest side and turns it away from the obstacle
+    private void bounceOffObstacle(int i, int o) {
+        int ox = obstacleX[o];
+        int oy = obstacleY[o];
+        int fromLeft = ballX[i] + BALL_SIZE - ox;
+        int fromRight = ox + obstacleWidth[o] - ballX[i];
+        int fromTop = ballY[i] + BALL_SIZE - oy;
+        int fromBottom = oy + obstacleHeight[o] - ballY[i];
+        if (fromLeft <= 0 || fromRight <= 0 || fromTop <= 0 || fromBottom <= 0) {
+            return;
+        }
+        int min = Math.min(Math.min(fromLeft, fromRight), Math.min(fromTop, fromBottom));
+        if (min == fromLeft) {
+            ballX[i] = ox - BALL_SIZE;
+            velocityX[i] = -Math.abs(velocityX[i]);
+        } else if (min == fromRight) {
+            ballX[i] = ox + obstacleWidth[o];
+            velocityX[i] = Math.abs(velocityX[i]);
+        } else if (min == fromTop) {
+            ballY[i] = oy - BALL_SIZE;
+            velocityY[i] = -Math.abs(velocityY[i]);
+        } else {
+            ballY[i] = oy + obstacleHeight[o];
+            velocityY[i] = Math.abs(velocityY[i]);
+        }
+    }
+
+    // Counting sort of the balls by the cell of their top-left corner, then each ball looks at
+    // its own and the eight neighbouring cells for balls with a higher index
+    private void collideBallsGrid() {
+        int cells = columns * rows;
+        Arrays.fill(cellStart, 0);
+        for (int i = 0; i < ballCount; i++) {
+            int cell = row(ballY[i]) * columns + column(ballX[i]);
+            ballCell[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        for (int i = 0; i < ballCount; i++) {
+            int cell = ballCell[i];
+            // cellStart[cell] is used as the fill cursor and restored below
+            cellBalls[cellStart[cell]++] = i;
+        }
+        for (int c = cells; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+
+        for (int i = 0; i < ballCount; i++) {
+            int column = ballCell[i] % columns;
+            int row = ballCell[i] / columns;
+            for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++) {
+                for (int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++) {
+                    int cell = r * columns + c;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int j = cellBalls[k];
+                        if (j > i) {
+                            collidePair(i, j);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void collideBallsAll() {
+        for (int i = 0; i < ballCount; i++) {
+            for (int j = i + 1; j < ballCount; j++) {
+                collidePair(i, j);
+            }
+        }
+    }
+
+    // Equal masses: touching balls are pushed apart along the shallower overlap and, if they were
+    // closing in along it, exchange that velocity component. Left overlapping, balls moving the
+    // same way would travel as one clump and collect more.
+    private void collidePair(int i, int j) {
+        int dx = ballX[j] - ballX[i];
+        int dy = ballY[j] - ballY[i];
+        int overlapX = BALL_SIZE - Math.abs(dx);
+        int overlapY = BALL_SIZE - Math.abs(dy);
+        if (overlapX <= 0 || overlapY <= 0) {
+            return;
+        }
+        if (overlapX <= overlapY) {
+            int push = dx >= 0 ? overlapX : -overlapX;
+            ballX[i] -= push / 2;
+            ballX[j] += push - push / 2;
+            if ((velocityX[j] - velocityX[i]) * dx < 0) {
+                int vx = velocityX[i];
+                velocityX[i] = velocityX[j];
+                velocityX[j] = vx;
+            }
+        } else {
+            int push = dy >= 0 ? overlapY : -overlapY;
+            ballY[i] -= push / 2;
+            ballY[j] += push - push / 2;
+            if ((velocityY[j] - velocityY[i]) * dy < 0) {
+                int vy = velocityY[i];
+                velocityY[i] = velocityY[j];
+                velocityY[j] = vy;
+            }
+        }
+    }
+
+    private void indexObstacles() {
+        int cells = columns * rows;
+        Arrays.fill(obstacleCellStart, 0);
+        int total = 0;
+        for (int o = 0; o < obstacleCount; o++) {
+            for (int r = row(obstacleY[o]); r <= row(obstacleY[o] + obstacleHeight[o]); r++) {
+                for (int c = column(obstacleX[o]); c <= column(obstacleX[o] + obstacleWidth[o]); c++) {
+                    obstacleCellStart[r * columns + c + 1]++;
+                    total++;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            obstacleCellStart[c + 1] += obstacleCellStart[c];
+        }
+        obstacleCellItems = new int[total];
+        int[] cursor = Arrays.copyOf(obstacleCellStart, cells);
+        for (int o = 0; o < obstacleCount; o++) {
+            for (int r = row(obstacleY[o]); r <= row(obstacleY[o] + obstacleHeight[o]); r++) {
+                for (int c = column(obstacleX[o]); c <= column(obstacleX[o] + obstacleWidth[o]); c++) {
+                    obstacleCellItems[cursor[r * columns + c]++] = o;
+                }
+            }
+        }
+    }
+
+    // Balls briefly outside the field (about to score) count towards the border cells
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, x / CELL_SIZE));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, y / CELL_SIZE));
+    }
+
+    // SplitMix64, so a seeded match replays identically
+    private long nextRandom() {
+        long z = (rngState += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private boolean nextRandomBit() {
+        return (nextRandom() & 1) != 0;
+    }
+
+    public int getBallCount() {
+        return ballCount;
+    }
+
+    public int getConceded(int edge) {
+        return conceded[edge];
+    }
+
+    public int getPaddlePos(int edge) {
+        return paddlePos[edge];
+    }
+
+    public long getTick() {
+        return tick;
+    }
+}
@@ -1,15 +1,43 @@
 package pong;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class GameClient {
-    private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    // Where the next connection goes; a cluster coordinator can redirect it to a game-server node
+    private volatile String host;
+    private volatile int port;
+    private final String homeHost;
+    private final int homePort;
+    // Set when joining through the lobby instead of dialing a host directly
+    private final QueueRequest queueRequest;
+
+    private volatile Socket socket;
+    private volatile ObjectOutputStream out;
+    private volatile ObjectInputStream in;
+
+    // Session issued by the server - sent back on reconnect to resume the match
+    private volatile long sessionToken = 0;
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("pong.connectTimeoutMs", 3000);
+    private volatile boolean hasConnected = false;
+    private static final int NODE_RETRIES = 4;
+
+    // Bot-vs-bot demo shown until the first connection succeeds
+    private final GameState attractState = new GameState();
+    private final AiPaddleController attractLeft = new AiPaddleController(true, AiDifficulty.HARD);
+    private final AiPaddleController attractRight = new AiPaddleController(false, AiDifficulty.MEDIUM);
+
+    // Latency and clock sync with the server
+    private static final long HEARTBEAT_INTERVAL_MS = 500;
+    private final LinkStats linkStats = new LinkStats();
+    private final InputLatencyTracker inputLatency = new InputLatencyTracker(linkStats);
+    private long lastMoveChangeNanos = 0; // Game loop thread only
+    // Snapshot smoothness and latency, when a harness measures this client
+    private volatile NetcodeScore netcodeScore;
 
     private GameState gameState;
     private GamePanel gamePanel;
@@ -24,33 +52,153 @@ public class GameClient {
     private final ReentrantLock gameStateLock = new ReentrantLock();
     private final ReentrantLock networkLock = new ReentrantLock();
 
-    // Concurrent queue for game state updates
-    private final BlockingQueue<GameState> stateQueue = new LinkedBlockingQueue<>();
+    // Snapshots go from the receiver to the EDT through preallocated buffers - no per-frame garbage
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+    private final Heartbeat heartbeatIn = new Heartbeat();
+    private final Heartbeat heartbeatReply = new Heartbeat();
+    // Last snapshot decoded from the current stream, which deltas apply to (receiver thread only)
+    private final Snapshot deltaBase = new Snapshot();
+    // Acked back on every input so the server can pace its snapshots to this link
+    private volatile long lastSnapshotTick = 0;
+    private final Runnable renderTask = this::applyLatestSnapshot;
+    private volatile Thread receiverThread;
+    private long inputSequence = 0; // Game loop thread only
 
     public GameClient() {
+        this(System.getProperty("pong.host", "localhost"), Integer.getInteger("pong.port", 3000), null);
+    }
+
+    public GameClient(String host, int port, QueueRequest queueRequest) {
+        this.host = host;
+        this.port = port;
+        this.homeHost = host;
+        this.homePort = port;
+        this.queueRequest = queueRequest;
+
         // Create thread pool for parallel operations
         executorService = Executors.newFixedThreadPool(3);
         gameLoopExecutor = Executors.newScheduledThreadPool(2);
 
+        // The connection is opened by the receiver once the game loop runs - never on the caller
+        attractState.resetGame();
+    }
+
+    // Opens the socket and performs the handshake: Hello (direct or resume) or QueueRequest (lobby)
+    private void connect() throws IOException {
+        Socket newSocket = new Socket();
         try {
-            // Open connection asynchronously
-            CompletableFuture.runAsync(() -> {
-                try {
-                    socket = new Socket("localhost", 3000);
+            newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            newSocket.setTcpNoDelay(true);
+            // The server answers the handshake right away; only the lobby may then hold us while matching
+            newSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+            ObjectOutputStream newOut = new ObjectOutputStream(newSocket.getOutputStream());
+            newOut.flush();
+            // Buffered: ObjectInputStream peeks single bytes, which allocate on a raw socket stream
+            ObjectInputStream newIn = new ObjectInputStream(new BufferedInputStream(newSocket.getInputStream()));
 
-                    out = new ObjectOutputStream(socket.getOutputStream());
-                    out.flush();
-                    in = new ObjectInputStream(socket.getInputStream());
+            boolean queueing = sessionToken == 0 && queueRequest != null;
+            PlayerProtocol.write(newOut, queueing ? queueRequest : new Hello(sessionToken));
+            if (queueing) {
+                System.out.println("Waiting in matchmaking queue...");
+            }
 
-                    System.out.println("Connected to server: localhost:3000");
-                } catch (IOException e) {
-                    System.err.println("Connection error: " + e.getMessage());
-                    e.printStackTrace();
+            // The lobby pings to pick a ping bucket and announces the match before SessionInfo
+            Object reply = PlayerProtocol.read(newIn, null, null);
+            newSocket.setSoTimeout(0);
+            while (reply instanceof Heartbeat || reply instanceof MatchFound) {
+                if (reply instanceof Heartbeat heartbeat && !heartbeat.reply) {
+                    PlayerProtocol.write(newOut, heartbeat.toReply(System.nanoTime()));
+                } else if (reply instanceof MatchFound match) {
+                    System.out.println("Match found: room " + match.roomId + " vs " + match.opponentName
+                            + " (" + match.opponentRating + "), playing " + (match.leftSide ? "left" : "right"));
                 }
-            }, executorService).join(); // Wait for connection to complete
-        } catch (Exception e) {
-            System.err.println("Client initialization error: " + e.getMessage());
-            e.printStackTrace();
+                reply = PlayerProtocol.read(newIn, null, null);
+            }
+            if (reply instanceof Redirect redirect) {
+                // The coordinator placed the match on a node - resume there with the issued token
+                newSocket.close();
+                System.out.println("Redirected to " + redirect.host + ":" + redirect.port);
+                host = redirect.host;
+                port = redirect.port;
+                sessionToken = redirect.sessionToken;
+                connect();
+                return;
+            }
+            if (!(reply instanceof SessionInfo info) || info.sessionToken == 0) {
+                // Stale or refused session - start over next time, back at the lobby if redirected
+                sessionToken = 0;
+                host = homeHost;
+                port = homePort;
+                throw new IOException("Server refused the session");
+            }
+
+            sessionToken = info.sessionToken;
+            lastSnapshotTick = 0; // Acks refer to this stream only
+            hasConnected = true;
+            socket = newSocket;
+            in = newIn;
+            out = newOut;
+            System.out.println((info.resumed ? "Resumed session on" : "Connected to") + " server: " + host + ":" + port);
+        } catch (IOException | ClassNotFoundException e) {
+            newSocket.close();
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+    }
+
+    // Drops the current socket so both loops notice and the receiver reconnects
+    private void disconnect() {
+        networkLock.lock();
+        try {
+            out = null;
+            in = null;
+            if (socket != null) {
+                socket.close();
+                socket = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        } finally {
+            networkLock.unlock();
+        }
+    }
+
+    // Retries with exponential backoff until connected or closed; the window stays live meanwhile
+    private void connectWithBackoff() {
+        Backoff backoff = new Backoff();
+        while (running.get()) {
+            boolean queueing = sessionToken == 0 && queueRequest != null;
+            setStatus((queueing ? "Waiting for an opponent on " : "Connecting to ") + host + ":" + port + "...");
+            try {
+                connect();
+                setStatus(null);
+                return;
+            } catch (IOException e) {
+                System.err.println("Connection attempt failed: " + e.getMessage());
+            }
+            long delayMs = backoff.nextDelayMs();
+            if (backoff.getAttempts() >= NODE_RETRIES && !(host.equals(homeHost) && port == homePort)) {
+                // The node hosting our match is gone - queue again through the coordinator
+                System.err.println("Game-server node " + host + ":" + port + " is gone, returning to " + homeHost + ":" + homePort);
+                sessionToken = 0;
+                host = homeHost;
+                port = homePort;
+                backoff.reset();
+            }
+            setStatus(String.format("Cannot reach %s:%d - retry %d in %.1f s",
+                    host, port, backoff.getAttempts(), delayMs / 1000.0));
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void setStatus(String message) {
+        GamePanel panel = gamePanel;
+        if (panel != null) {
+            panel.setStatusMessage(message);
         }
     }
 
@@ -69,30 +217,79 @@ public class GameClient {
             gamePanel.requestRestart();
         });
 
-        // Network receiver thread - Receives GameStates in separate thread
+        // Network receiver thread - decodes snapshots and heartbeats into reused objects
         CompletableFuture.runAsync(() -> {
             System.out.println("Network receiver started");
+            receiverThread = Thread.currentThread();
             while (running.get()) {
+                ObjectInputStream currentIn = in;
+                if (currentIn == null) {
+                    connectWithBackoff();
+                    continue;
+                }
                 try {
-                    GameState newGameState = (GameState) in.readObject();
-                    if (newGameState != null) {
-                        stateQueue.offer(newGameState, 100, TimeUnit.MILLISECONDS);
+                    Snapshot slot = snapshots.writeSlot();
+                    Object message = PlayerProtocol.read(currentIn, slot, heartbeatIn, deltaBase);
+                    if (message == slot) {
+                        lastSnapshotTick = slot.tick;
+                        long now = System.nanoTime();
+                        inputLatency.onReceived(slot.appliedInput, slot.tick, now);
+                        NetcodeScore score = netcodeScore;
+                        if (score != null) {
+                            score.onReceived(slot.tick, now);
+                        }
+                        snapshots.publish();
+                    } else if (message instanceof Heartbeat heartbeat) {
+                        handleHeartbeat(heartbeat);
+                    } else if (message instanceof Redirect redirect) {
+                        // The match moved to another node - resume there right away
+                        System.out.println("Match moving to " + redirect.host + ":" + redirect.port);
+                        host = redirect.host;
+                        port = redirect.port;
+                        sessionToken = redirect.sessionToken;
+                        disconnect();
+                    }
+                } catch (EOFException | java.net.SocketException e) {
+                    if (running.get()) {
+                        System.err.println("Connection lost, reconnecting...");
                     }
+                    disconnect();
                 } catch (Exception e) {
                     if (running.get()) {
                         System.err.println("Network receive error: " + e.getMessage());
                     }
+                    disconnect();
                 }
             }
         }, executorService);
 
+        // Heartbeats measure RTT, jitter and clock offset
+        linkStats.registerMetrics("client.link");
+        gamePanel.setLinkStats(linkStats);
+        // Input-to-photon breakdown, on the F3 overlay and as client.input.<stage>.* metrics
+        inputLatency.registerMetrics("client.input");
+        gamePanel.setInputLatencyTracker(inputLatency);
+        gameLoopExecutor.scheduleAtFixedRate(() -> send(Heartbeat.ping(System.nanoTime())),
+                HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Metrics.startReporter(gameLoopExecutor);
+
         // Game loop with fixed FPS using ScheduledExecutorService
         gameLoopFuture = gameLoopExecutor.scheduleAtFixedRate(() -> {
             try {
                 // Get actual user input from GamePanel
                 PlayerInput playerInput = new PlayerInput();
+                playerInput.sequence = ++inputSequence;
+                playerInput.ackTick = lastSnapshotTick;
+                boolean moveChanged = false;
                 if (gamePanel != null) {
                     playerInput.moveY = gamePanel.getCurrentMoveY();
+                    // The first input after a key change starts its latency trace
+                    long changedAt = gamePanel.getMoveChangedNanos();
+                    if (changedAt != lastMoveChangeNanos) {
+                        lastMoveChangeNanos = changedAt;
+                        moveChanged = true;
+                        inputLatency.onSampled(playerInput.sequence, changedAt, System.nanoTime());
+                    }
                     // Check if client requested pause
                     playerInput.pauseRequest = gamePanel.isPauseRequested();
                     // Check if client requested restart
@@ -102,36 +299,14 @@ public class GameClient {
                 }
 
                 // Send input to server - using separate lock
-                networkLock.lock();
-                try {
-                    out.writeObject(playerInput);
-                    out.flush();
-                } finally {
-                    networkLock.unlock();
+                send(playerInput);
+                if (moveChanged) {
+                    inputLatency.onSent(playerInput.sequence, System.nanoTime());
                 }
 
-                // Process received game state from queue
-                GameState newGameState = stateQueue.poll();
-                if (newGameState != null) {
-                    gameStateLock.lock();
-                    try {
-                        gameState = newGameState;
-
-                        // Sync pause state from server to client UI
-                        if (gamePanel != null) {
-                            gamePanel.setPaused(gameState.isPaused);
-                        }
-                    } finally {
-                        gameStateLock.unlock();
-                    }
-                }
-
-                // Update panel with new game state - run on EDT
+                // Apply the newest received snapshot and repaint - run on EDT
                 if (gamePanel != null) {
-                    javax.swing.SwingUtilities.invokeLater(() -> {
-                        gamePanel.gameState = gameState;
-                        gamePanel.repaint();
-                    });
+                    javax.swing.SwingUtilities.invokeLater(renderTask);
                 }
 
             } catch (Exception e) {
@@ -143,6 +318,94 @@ public class GameClient {
         System.out.println("Game loop started on client with ScheduledExecutorService");
     }
 
+    // Runs on the EDT, the only thread that touches the rendered GameState
+    private void applyLatestSnapshot() {
+        if (!hasConnected) {
+            stepAttractMode();
+            return;
+        }
+        Snapshot snapshot = snapshots.poll();
+        if (snapshot != null) {
+            gameStateLock.lock();
+            try {
+                snapshot.applyTo(gameState);
+                inputLatency.onApplied(snapshot.appliedInput, System.nanoTime());
+
+                // Sync pause state from server to client UI
+                gamePanel.setPaused(gameState.isPaused);
+            } finally {
+                gameStateLock.unlock();
+            }
+        }
+        NetcodeScore score = netcodeScore;
+        if (score != null) {
+            score.onFrame(gameState, snapshot != null, System.nanoTime());
+        }
+        gamePanel.gameState = gameState;
+        gamePanel.repaint();
+    }
+
+    // A local bot-vs-bot rally so the window is alive before any server answers
+    private void stepAttractMode() {
+        PlayerInput left = attractLeft.nextInput(attractState);
+        if (left != null) {
+            attractState.updatePaddleLeft(left.moveY);
+        }
+        PlayerInput right = attractRight.nextInput(attractState);
+        if (right != null) {
+            attractState.updatePaddleRight(right.moveY);
+        }
+        attractState.moveBall();
+        attractState.checkBoundaries();
+        attractState.syncStateForSerialization();
+        gamePanel.gameState = attractState;
+        gamePanel.repaint();
+    }
+
+    private void send(Object message) {
+        networkLock.lock();
+        try {
+            if (out != null) {
+                PlayerProtocol.write(out, message);
+            }
+        } catch (IOException e) {
+            // Receiver notices the closed socket and reconnects
+            System.err.println("Network send error: " + e.getMessage());
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException ignored) {
+            }
+        } finally {
+            networkLock.unlock();
+        }
+    }
+
+    private void handleHeartbeat(Heartbeat heartbeat) {
+        long now = System.nanoTime();
+        if (heartbeat.reply) {
+            linkStats.onSample(heartbeat.originNanos, heartbeat.receiveNanos, heartbeat.transmitNanos, now);
+            linkStats.onRemoteTick(heartbeat.serverTick, heartbeat.serverTickNanos);
+        } else {
+            send(heartbeat.toReply(now, heartbeatReply));
+        }
+    }
+
+    public LinkStats getLinkStats() {
+        return linkStats;
+    }
+
+    // For NetcodeHarness
+    void setNetcodeScore(NetcodeScore score) {
+        this.netcodeScore = score;
+    }
+
+    // For allocation measurements of the receive path
+    Thread getReceiverThread() {
+        return receiverThread;
+    }
+
     public void stopGameLoop() {
         running.set(false);
         if (gameLoopFuture != null) {
@@ -152,6 +415,15 @@ public class GameClient {
 
     public void close() {
         stopGameLoop();
+        if (inputLatency.getCount() > 0) {
+            System.out.println("Input-to-photon latency over " + inputLatency.getCount() + " key changes (p50, p99):");
+            for (String line : inputLatency.formatLines()) {
+                System.out.println("  " + line);
+            }
+        }
+
+        // Close the socket first so the blocked receiver returns
+        disconnect();
 
         // Shutdown executor services gracefully
         if (gameLoopExecutor != null) {
@@ -176,13 +448,6 @@ public class GameClient {
             }
         }
 
-        try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
-            System.out.println("Connection closed.");
-        } catch (IOException e) {
-            System.err.println("Closing error: " + e.getMessage());
-        }
+        System.out.println("Connection closed.");
     }
 }
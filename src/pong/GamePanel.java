@@ -3,6 +3,7 @@ package pong;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -12,7 +13,9 @@ public class GamePanel extends JPanel {
 
     // Thread-safe değişkenler
     private final AtomicInteger currentMoveY = new AtomicInteger(0);
-    private static final int PADDLE_SPEED = 5;
+    private static final int PADDLE_SPEED = GameState.MAX_PADDLE_SPEED;
+    // When the movement last changed, as seen by the key listener (the OS event queue is not counted)
+    private volatile long moveChangedNanos = 0;
 
     // Pause menu components
     private final AtomicBoolean showPauseMenu = new AtomicBoolean(false);
@@ -34,6 +37,19 @@ public class GamePanel extends JPanel {
     // Lock for thread-safe rendering
     private final ReentrantReadWriteLock renderLock = new ReentrantReadWriteLock();
 
+    // Network debug overlay, toggled with F3
+    private final AtomicBoolean showDebugOverlay = new AtomicBoolean(false);
+    private volatile LinkStats linkStats;
+    private volatile InputLatencyTracker inputLatency;
+    private static final Font DEBUG_FONT = new Font("Monospaced", Font.PLAIN, 12);
+
+    // Leaderboard lines for the scores panel, only available where a match store exists
+    private volatile java.util.function.Supplier<List<String>> leaderboardSource;
+
+    // Connection status banner (e.g. "Connecting..."), null while connected
+    private volatile String statusMessage;
+    private static final Font STATUS_FONT = new Font("Arial", Font.BOLD, 20);
+
     public GamePanel() {
         setFocusable(true);
         addKeyListener(new KeyAdapter() {
@@ -41,11 +57,14 @@ public class GamePanel extends JPanel {
             public void keyPressed(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
                     togglePauseMenu();
+                } else if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    showDebugOverlay.set(!showDebugOverlay.get());
+                    repaint();
                 } else if (!showPauseMenu.get()) {
                     if (e.getKeyCode() == KeyEvent.VK_UP || e.getKeyCode() == KeyEvent.VK_W) {
-                        currentMoveY.set(-PADDLE_SPEED);
+                        setMoveY(-PADDLE_SPEED);
                     } else if (e.getKeyCode() == KeyEvent.VK_DOWN || e.getKeyCode() == KeyEvent.VK_S) {
-                        currentMoveY.set(PADDLE_SPEED);
+                        setMoveY(PADDLE_SPEED);
                     }
                 }
             }
@@ -54,7 +73,7 @@ public class GamePanel extends JPanel {
             public void keyReleased(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_UP || e.getKeyCode() == KeyEvent.VK_W ||
                     e.getKeyCode() == KeyEvent.VK_DOWN || e.getKeyCode() == KeyEvent.VK_S) {
-                    currentMoveY.set(0);
+                    setMoveY(0);
                 }
             }
         });
@@ -75,6 +94,34 @@ public class GamePanel extends JPanel {
         this.onPauseToggle = onPauseToggle;
     }
 
+    public void setStatusMessage(String message) {
+        this.statusMessage = message;
+        repaint();
+    }
+
+    public void setLinkStats(LinkStats linkStats) {
+        this.linkStats = linkStats;
+    }
+
+    public void setInputLatencyTracker(InputLatencyTracker inputLatency) {
+        this.inputLatency = inputLatency;
+    }
+
+    // Key auto-repeat sets the same value again; only real changes are timestamped
+    private void setMoveY(int moveY) {
+        if (currentMoveY.getAndSet(moveY) != moveY) {
+            moveChangedNanos = System.nanoTime();
+        }
+    }
+
+    public long getMoveChangedNanos() {
+        return moveChangedNanos;
+    }
+
+    public void setLeaderboardSource(java.util.function.Supplier<List<String>> leaderboardSource) {
+        this.leaderboardSource = leaderboardSource;
+    }
+
     private synchronized void togglePauseMenu() {
         showPauseMenu.set(!showPauseMenu.get());
         showScoresPanel.set(false);
@@ -198,6 +245,14 @@ public class GamePanel extends JPanel {
             // Draw pause button (stop sign style)
             drawPauseButton(g2d);
 
+            if (statusMessage != null) {
+                drawStatusBanner(g2d, statusMessage);
+            }
+
+            if (showDebugOverlay.get()) {
+                drawDebugOverlay(g2d);
+            }
+
             // Draw pause menu overlay if paused
             if (showPauseMenu.get()) {
                 drawPauseMenu(g2d);
@@ -205,6 +260,10 @@ public class GamePanel extends JPanel {
         } finally {
             renderLock.readLock().unlock();
         }
+        InputLatencyTracker tracker = inputLatency;
+        if (tracker != null) {
+            tracker.onPainted(System.nanoTime());
+        }
     }
 
     private void drawPauseButton(Graphics2D g2d) {
@@ -220,6 +279,58 @@ public class GamePanel extends JPanel {
         g2d.fillRect(28, 15, 6, 20);
     }
 
+    private void drawStatusBanner(Graphics2D g2d, String message) {
+        g2d.setFont(STATUS_FONT);
+        FontMetrics fm = g2d.getFontMetrics();
+        int width = fm.stringWidth(message) + 40;
+        int x = (getWidth() - width) / 2;
+        int y = getHeight() - 90;
+        g2d.setColor(new Color(0, 0, 0, 180));
+        g2d.fillRoundRect(x, y, width, 40, 15, 15);
+        g2d.setColor(Color.YELLOW);
+        g2d.drawString(message, x + 20, y + 27);
+    }
+
+    private void drawDebugOverlay(Graphics2D g2d) {
+        LinkStats stats = linkStats;
+        String[] lines;
+        if (stats == null || stats.getSamples() == 0) {
+            lines = new String[]{"tick " + gameState.tick, "no link samples"};
+        } else {
+            // Age of the state on screen, using the server tick -> local clock mapping
+            long tickLocalNanos = stats.remoteTickToLocalNanos(gameState.tick);
+            String age = tickLocalNanos < 0 ? "?" : String.format("%.1f", (System.nanoTime() - tickLocalNanos) / 1_000_000.0);
+            lines = new String[]{
+                    "tick   " + gameState.tick,
+                    String.format("rtt    %.1f ms", stats.getSmoothedRttMs()),
+                    String.format("jitter %.1f ms", stats.getJitterMs()),
+                    String.format("offset %.1f ms", stats.getClockOffsetMs()),
+                    "age    " + age + " ms"
+            };
+        }
+        InputLatencyTracker tracker = inputLatency;
+        if (tracker != null && tracker.getCount() > 0) {
+            // Input-to-photon breakdown, p50 and p99
+            String[] stages = tracker.formatLines();
+            String[] combined = new String[lines.length + 1 + stages.length];
+            System.arraycopy(lines, 0, combined, 0, lines.length);
+            combined[lines.length] = "input    p50   p99";
+            System.arraycopy(stages, 0, combined, lines.length + 1, stages.length);
+            lines = combined;
+        }
+
+        g2d.setFont(DEBUG_FONT);
+        int x = getWidth() - 190;
+        int y = getHeight() - 20 - 14 * lines.length;
+        g2d.setColor(new Color(0, 0, 0, 160));
+        g2d.fillRect(x - 6, y - 14, 190, 14 * lines.length + 8);
+        g2d.setColor(Color.GREEN);
+        for (String line : lines) {
+            g2d.drawString(line, x, y);
+            y += 14;
+        }
+    }
+
     private void drawPauseMenu(Graphics2D g2d) {
         // Semi-transparent overlay
         g2d.setColor(new Color(0, 0, 0, 180));
@@ -298,6 +409,21 @@ public class GamePanel extends JPanel {
         fm = g2d.getFontMetrics();
         g2d.drawString(rightScore, centerX - fm.stringWidth(rightScore) / 2, centerY + 105);
 
+        // Leaderboard from the match history
+        java.util.function.Supplier<List<String>> source = leaderboardSource;
+        if (source != null) {
+            List<String> lines = source.get();
+            g2d.setColor(Color.WHITE);
+            g2d.setFont(new Font("Arial", Font.BOLD, 18));
+            g2d.drawString("LEADERBOARD", 30, centerY - 60);
+            g2d.setFont(new Font("Arial", Font.PLAIN, 14));
+            int lineY = centerY - 35;
+            for (int i = 0; i < lines.size(); i++) {
+                g2d.drawString((i + 1) + ". " + lines.get(i), 30, lineY);
+                lineY += 22;
+            }
+        }
+
         // Back button
         backButtonRect = new Rectangle(centerX - 60, centerY + 130, 120, 40);
         drawButton(g2d, backButtonRect, "BACK", new Color(100, 100, 100));
@@ -3,23 +3,26 @@ package pong;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class GameServer {
     private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private volatile PlayerConnection clientConnection;
 
     private GameState gameState;
     private GamePanel gamePanel;
 
     // ExecutorService for parallel programming
     private ExecutorService executorService;
+    private ExecutorService connectionExecutor;
+    private final ServerIoMode ioMode = ServerIoMode.fromProperty();
     private ScheduledExecutorService gameLoopExecutor;
-    private ScheduledFuture<?> gameLoopFuture;
+    private RoomScheduler.Handle gameLoopFuture;
 
     // Thread-safe variables
     private final AtomicBoolean running = new AtomicBoolean(false);
@@ -27,43 +30,262 @@ public class GameServer {
 
     // ReentrantLock for synchronization
     private final ReentrantLock gameStateLock = new ReentrantLock();
-    private final ReentrantLock networkLock = new ReentrantLock();
-
-    // Concurrent queue for player inputs
-    private final BlockingQueue<PlayerInput> inputQueue = new LinkedBlockingQueue<>();
+    private final ReentrantLock sessionLock = new ReentrantLock();
+
+    // Sheds spectator and player snapshots, then input backlog, when the tick budget runs out
+    private final LoadGovernor loadGovernor = new LoadGovernor("server", RoomScheduler.shared()::getLoad);
+
+    // Input sources for both paddles - the right slot starts with a bot until a client joins
+    private InputSource leftInput;
+    private volatile InputSource rightInput;
+    private final InputSource botInput;
+    private final NetworkInputSource networkInput = new NetworkInputSource(loadGovernor);
+
+    // Client session - survives socket drops for GRACE_PERIOD_MS
+    private static final long GRACE_PERIOD_MS = Long.getLong("pong.graceMs", 15000);
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private final SecureRandom tokenRandom = new SecureRandom();
+    private long sessionToken = 0; // 0 = no client session, guarded by sessionLock
+    private ScheduledFuture<?> graceTimeout;
+    private boolean autoPaused = false;
+
+    // Latency and clock sync with the client
+    private static final long HEARTBEAT_INTERVAL_MS = 500;
+    private volatile LinkStats clientLinkStats = new LinkStats();
+    private volatile long tickStartNanos;
+    // Newest client input sequence a tick applied, echoed in its snapshots (tick thread only)
+    private long appliedInput;
+
+    // Read-only viewers of this match
+    private SpectatorHub spectatorHub;
+
+    // Finished matches are kept in the local match history
+    private final MatchStore matchStore = MatchStore.openDefault();
+    private final String hostName = System.getProperty("pong.name", "Host");
 
     public GameServer() {
         // Create thread pool for parallel operations
         executorService = Executors.newFixedThreadPool(4);
+        connectionExecutor = ioMode.newConnectionExecutor();
         gameLoopExecutor = Executors.newScheduledThreadPool(2);
 
+        AiDifficulty difficulty = AiDifficulty.fromName(System.getProperty("pong.ai", "medium"));
+        botInput = new AiPaddleController(false, difficulty);
+        rightInput = botInput;
+
         try {
-            serverSocket = new ServerSocket(3000);
-            System.out.println("Server started. Port: 3000");
-            System.out.println("Waiting for client connection...");
+            int port = Integer.getInteger("pong.port", 3000);
+            serverSocket = new ServerSocket(port);
+            System.out.println("Server started. Port: " + port + " (" + ioMode + " connection I/O)");
+            System.out.println("Playing against " + difficulty + " bot until a client connects...");
+            spectatorHub = new SpectatorHub(Integer.getInteger("pong.spectatorPort", 3001));
+        } catch (IOException e) {
+            System.err.println("Server startup error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-            // Open connection in separate thread
-            CompletableFuture.runAsync(() -> {
-                try {
-                    clientSocket = serverSocket.accept();
-                    System.out.println("Client connected: " + clientSocket.getInetAddress());
+    // Accepts connections for as long as the server runs - new clients and reconnects alike
+    private void acceptLoop() {
+        while (running.get()) {
+            try {
+                Socket socket = serverSocket.accept();
+                System.out.println("Client connected: " + socket.getInetAddress());
+                connectionExecutor.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Connection error: " + e.getMessage());
+                }
+            }
+        }
+    }
 
-                    out = new ObjectOutputStream(clientSocket.getOutputStream());
-                    out.flush();
-                    in = new ObjectInputStream(clientSocket.getInputStream());
+    // Handshake, then read inputs until the socket drops
+    private void handleConnection(Socket socket) {
+        PlayerConnection connection;
+        try {
+            connection = new PlayerConnection(socket);
+            Object first = connection.readObject(HANDSHAKE_TIMEOUT_MS);
+            if (!(first instanceof Hello hello)) {
+                System.err.println("Unexpected handshake message from " + connection.getRemoteAddress());
+                connection.close();
+                return;
+            }
+            if (!attachClient(connection, hello.sessionToken)) {
+                connection.close();
+                return;
+            }
+            if (ioMode == ServerIoMode.VIRTUAL) {
+                connection.startWriter(connectionExecutor, this::handleDisconnect);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Handshake error: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
 
-                    System.out.println("Streams created successfully.");
-                } catch (IOException e) {
-                    System.err.println("Connection error: " + e.getMessage());
-                    e.printStackTrace();
+        System.out.println("Input processor started");
+        connection.guardInputs();
+        connection.readLoop(message -> {
+            if (message instanceof Heartbeat heartbeat) {
+                handleHeartbeat(connection, heartbeat);
+            } else if (message instanceof PlayerInput playerInput) {
+                connection.onAck(playerInput.ackTick);
+                try {
+                    if (!networkInput.offer(playerInput)) {
+                        System.err.println("WARNING: Player input dropped - queue full or timeout");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    connection.close();
                 }
-            }, executorService).join(); // Wait for connection to complete
+            }
+        });
+        handleDisconnect(connection);
+    }
 
+    private void handleHeartbeat(PlayerConnection connection, Heartbeat heartbeat) {
+        long now = System.nanoTime();
+        if (heartbeat.reply) {
+            clientLinkStats.onSample(heartbeat.originNanos, heartbeat.receiveNanos, heartbeat.transmitNanos, now);
+            return;
+        }
+        Heartbeat pong = heartbeat.toReply(now);
+        pong.serverTickNanos = tickStartNanos;
+        pong.serverTick = gameState != null ? gameState.tick : 0;
+        try {
+            connection.send(pong);
         } catch (IOException e) {
-            System.err.println("Server startup error: " + e.getMessage());
-            e.printStackTrace();
+            connection.close();
         }
+    }
 
+    private void sendHeartbeat() {
+        PlayerConnection connection = clientConnection;
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.send(Heartbeat.ping(System.nanoTime()));
+        } catch (IOException e) {
+            connection.close(); // Reader notices and starts the grace period
+        }
+    }
+
+    // Gives the right paddle to a new session or resumes the disconnected one
+    private boolean attachClient(PlayerConnection connection, long requestedToken) throws IOException {
+        sessionLock.lock();
+        try {
+            boolean resumed;
+            if (sessionToken != 0 && requestedToken == sessionToken) {
+                resumed = true;
+                PlayerConnection previous = clientConnection;
+                if (previous != null) {
+                    previous.close(); // Half-open socket the server had not noticed yet
+                }
+                if (graceTimeout != null) {
+                    graceTimeout.cancel(false);
+                    graceTimeout = null;
+                }
+            } else if (sessionToken == 0) {
+                resumed = false;
+                clientLinkStats = new LinkStats();
+                clientLinkStats.registerMetrics("server.link");
+                if (gamePanel != null) {
+                    gamePanel.setLinkStats(clientLinkStats);
+                }
+                long token;
+                do {
+                    token = tokenRandom.nextLong();
+                } while (token == 0);
+                sessionToken = token;
+            } else {
+                // Slot is held by a live or reconnecting session
+                connection.send(new SessionInfo(0, false));
+                System.out.println("Rejected " + connection.getRemoteAddress() + ": slot reserved");
+                return false;
+            }
+
+            connection.send(new SessionInfo(sessionToken, resumed));
+
+            // Full keyframe so the client starts from the exact current state
+            gameStateLock.lock();
+            try {
+                if (gameState != null) {
+                    gameState.syncStateForSerialization();
+                    connection.send(gameState);
+                }
+            } finally {
+                gameStateLock.unlock();
+            }
+
+            clientConnection = connection;
+            rightInput = networkInput;
+            if (autoPaused) {
+                autoPaused = false;
+                setPausedState(false);
+            }
+            System.out.println(resumed ? "Session resumed." : "New session started. Bot replaced by client.");
+            return true;
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    // Pauses the match and keeps the slot reserved for the grace period
+    private void handleDisconnect(PlayerConnection connection) {
+        sessionLock.lock();
+        try {
+            connection.close();
+            if (clientConnection != connection || !running.get()) {
+                return; // Already replaced by a reconnect
+            }
+            clientConnection = null;
+            if (!paused.get()) {
+                autoPaused = true;
+                setPausedState(true);
+            }
+            System.out.println("Client disconnected. Waiting " + GRACE_PERIOD_MS + " ms for reconnect...");
+            graceTimeout = gameLoopExecutor.schedule(this::expireSession, GRACE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    private void expireSession() {
+        sessionLock.lock();
+        try {
+            if (clientConnection != null) {
+                return;
+            }
+            sessionToken = 0;
+            graceTimeout = null;
+            rightInput = botInput;
+            if (autoPaused) {
+                autoPaused = false;
+                setPausedState(false);
+            }
+            System.out.println("Session expired. Bot took over the right paddle.");
+        } finally {
+            sessionLock.unlock();
+        }
+    }
+
+    private void setPausedState(boolean pause) {
+        gameStateLock.lock();
+        try {
+            if (paused.get() != pause) {
+                togglePause();
+            }
+        } finally {
+            gameStateLock.unlock();
+        }
+        if (gamePanel != null) {
+            gamePanel.setPaused(pause);
+        }
     }
 
     public void togglePause() {
@@ -83,6 +305,7 @@ public class GameServer {
         gameStateLock.lock();
         try {
             if (gameState != null) {
+                recordMatch();
                 gameState.resetGame();
                 paused.set(false);
             }
@@ -95,49 +318,70 @@ public class GameServer {
         }
     }
 
+    // Hands the current scores to the match store; the write happens on the store's thread
+    private void recordMatch() {
+        if (matchStore == null || gameState == null) {
+            return;
+        }
+        gameState.syncStateForSerialization();
+        if (gameState.scoreLeft + gameState.scoreRight == 0) {
+            return;
+        }
+        String opponent = rightInput == botInput ? "Bot" : "Client";
+        matchStore.record(new MatchRecord(0, System.currentTimeMillis(), hostName, opponent,
+                gameState.scoreLeft, gameState.scoreRight, gameState.tick));
+    }
+
+    private List<String> leaderboardLines() {
+        List<String> lines = new ArrayList<>();
+        for (MatchStore.Standing standing : matchStore.topN(5)) {
+            lines.add(standing.toString());
+        }
+        return lines;
+    }
+
     public void startGameLoop(GameState initialState, GamePanel panel) {
         this.gameState = initialState;
         this.gamePanel = panel;
+        this.leftInput = new PanelInputSource(panel);
         running.set(true);
 
         // Set up callbacks for pause and restart
         gamePanel.setOnPauseToggle(this::togglePause);
 
         gamePanel.setOnRestart(this::restartGame);
+        if (matchStore != null) {
+            gamePanel.setLeaderboardSource(this::leaderboardLines);
+        }
 
-        // Client input processor thread - Processes inputs from BlockingQueue
-        CompletableFuture.runAsync(() -> {
-            System.out.println("Input processor started");
-            while (running.get()) {
-                try {
-                    PlayerInput playerInput = (PlayerInput) in.readObject();
-                    if (!inputQueue.offer(playerInput, 100, TimeUnit.MILLISECONDS)) {
-                        System.err.println("WARNING: Player input dropped - queue full or timeout");
-                    }
-                } catch (Exception e) {
-                    if (running.get()) {
-                        System.err.println("Input reading error: " + e.getMessage());
-                    }
-                }
+        // Client connection and input processor threads - the match is already running against the bot
+        connectionExecutor.execute(this::acceptLoop);
 
-            }
-        }, executorService);
+        gameLoopExecutor.scheduleAtFixedRate(this::sendHeartbeat,
+                HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Metrics.startReporter(gameLoopExecutor);
+        loadGovernor.start(gameLoopExecutor);
 
-        // Game loop with fixed FPS using ScheduledExecutorService
-        gameLoopFuture = gameLoopExecutor.scheduleAtFixedRate(() -> {
+        // Game loop with fixed FPS on the shared low-jitter room scheduler
+        gameLoopFuture = RoomScheduler.shared().scheduleAtFixedRate(() -> {
             try {
                 gameStateLock.lock();
                 try {
-                    // Get host player input from GamePanel (left paddle)
-                    if (gamePanel != null && !paused.get()) {
-                        int hostMoveY = gamePanel.getCurrentMoveY();
-                        gameState.updatePaddleLeft(hostMoveY);
+                    tickStartNanos = System.nanoTime();
+                    gameState.tick++;
+
+                    // Get host player input (left paddle)
+                    PlayerInput hostInput = leftInput.nextInput(gameState);
+                    if (hostInput != null && !paused.get()) {
+                        gameState.updatePaddleLeft(hostInput.moveY);
                     }
 
-                    // Process client input from queue (right paddle)
-                    PlayerInput playerInput = inputQueue.poll();
+                    // Process client or bot input (right paddle)
+                    PlayerInput playerInput = rightInput.nextInput(gameState);
                     if (playerInput != null) {
-                        System.out.println("Player input processed: moveY=" + playerInput.moveY);
+                        if (playerInput.sequence != 0) {
+                            appliedInput = playerInput.sequence;
+                        }
 
                         // Handle client pause request
                         if (playerInput.pauseRequest) {
@@ -180,14 +424,27 @@ public class GameServer {
                     gameStateLock.unlock();
                 }
 
-                // Network send - using separate lock
-                networkLock.lock();
-                try {
-                    out.reset();
-                    out.writeObject(gameState);
-                    out.flush();
-                } finally {
-                    networkLock.unlock();
+                // Network send - a failed write starts the reconnect grace period
+                PlayerConnection connection = clientConnection;
+                if (connection != null && !loadGovernor.sendPlayerSnapshot(gameState.tick)) {
+                    connection = null;
+                }
+                if (connection != null && ioMode == ServerIoMode.VIRTUAL) {
+                    Snapshot snapshot = new Snapshot();
+                    snapshot.copyFrom(gameState);
+                    snapshot.appliedInput = appliedInput;
+                    connection.offerSnapshot(snapshot);
+                } else if (connection != null) {
+                    try {
+                        connection.sendSnapshot(gameState, appliedInput);
+                    } catch (IOException e) {
+                        handleDisconnect(connection);
+                    }
+                }
+
+                // Spectators are served from their own thread after the player's stream
+                if (spectatorHub != null && loadGovernor.sendSpectatorFrame(gameState.tick)) {
+                    spectatorHub.publish(gameState);
                 }
 
                 // UI update - run on EDT
@@ -204,19 +461,30 @@ public class GameServer {
             }
         }, 0, 16, TimeUnit.MILLISECONDS); // ~60 FPS
 
-        System.out.println("Game loop started with ScheduledExecutorService");
+        System.out.println("Game loop started with RoomScheduler");
     }
 
     public void stopGameLoop() {
         running.set(false);
         if (gameLoopFuture != null) {
-            gameLoopFuture.cancel(true);
+            gameLoopFuture.cancel();
         }
     }
 
     public void close() {
         stopGameLoop();
 
+        // Close sockets first so blocked accept/read calls return
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+        PlayerConnection connection = clientConnection;
+        if (connection != null) {
+            connection.close();
+        }
+
         // Shutdown executor services gracefully
         if (gameLoopExecutor != null) {
             gameLoopExecutor.shutdown();
@@ -229,6 +497,10 @@ public class GameServer {
             }
         }
 
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdownNow();
+        }
+
         if (executorService != null) {
             executorService.shutdown();
             try {
@@ -240,14 +512,20 @@ public class GameServer {
             }
         }
 
-        try {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (clientSocket != null) clientSocket.close();
-            if (serverSocket != null) serverSocket.close();
-            System.out.println("Server closed.");
-        } catch (IOException e) {
-            System.err.println("Closing error: " + e.getMessage());
+        if (spectatorHub != null) {
+            spectatorHub.close();
         }
+
+        if (matchStore != null) {
+            gameStateLock.lock();
+            try {
+                recordMatch();
+            } finally {
+                gameStateLock.unlock();
+            }
+            matchStore.close();
+        }
+
+        System.out.println("Server closed.");
     }
 }
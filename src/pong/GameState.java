@@ -1,6 +1,7 @@
 package pong;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -36,14 +37,37 @@ public class GameState implements Serializable {
     // Pause state
     boolean isPaused = false;
 
+    // Server tick number of this state, advanced once per game loop iteration
+    long tick = 0;
+
+    // Serve direction RNG (SplitMix64). Part of the state so a checkpointed match replays identically.
+    long rngState = System.nanoTime();
+
+    // The ball and paddle physics run on this thread's EntityWorld, see world()
+    private static final ThreadLocal<EntityWorld> WORLD = ThreadLocal.withInitial(EntityWorld::classic);
+    private transient WorldEvents worldEvents;
+
+    // Gameplay events go to this ring when the match is tracked (MatchAnalytics); never copied or checkpointed
+    private transient AnalyticsRing analytics;
+    private transient long analyticsMatchId;
+    private transient long leftMovedTick;
+    private transient long rightMovedTick;
+    // Shorter pauses between paddle moves are just key handling, not idling
+    private static final int IDLE_MIN_TICKS = 30;
+
+    // ballX/Y, prevBallX/Y, velocity, paddles, scores, paused, tick, RNG
+    static final int CHECKPOINT_SIZE = 10 * 4 + 1 + 8 + 8;
+
     // Game constants
-    private static final int BALL_SIZE = 15;
-    private static final int PADDLE_WIDTH = 10;
-    private static final int PADDLE_HEIGHT = 80;
-    private static final int GAME_WIDTH = 800;
-    private static final int GAME_HEIGHT = 600;
-    private static final int PADDLE_LEFT_X = 20;
-    private static final int PADDLE_RIGHT_X = 770;
+    static final int BALL_SIZE = 15;
+    static final int PADDLE_WIDTH = 10;
+    static final int PADDLE_HEIGHT = 80;
+    static final int GAME_WIDTH = 800;
+    static final int GAME_HEIGHT = 600;
+    static final int PADDLE_LEFT_X = 20;
+    static final int PADDLE_RIGHT_X = 770;
+    // Fastest legal paddle move per tick - the keyboard's step and the hardest bot's limit
+    static final int MAX_PADDLE_SPEED = 5;
 
     public GameState() {
         // Initialize lock if null (for deserialization)
@@ -155,6 +179,10 @@ public class GameState implements Serializable {
             int newY = atomicPaddleLeftY.get() + deltaY;
             atomicPaddleLeftY.set(newY);
             this.paddleLeftY = newY;
+            if (deltaY != 0 && analytics != null) {
+                emitIdle(0, leftMovedTick);
+                leftMovedTick = tick;
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -166,6 +194,10 @@ public class GameState implements Serializable {
             int newY = atomicPaddleRightY.get() + deltaY;
             atomicPaddleRightY.set(newY);
             this.paddleRightY = newY;
+            if (deltaY != 0 && analytics != null) {
+                emitIdle(1, rightMovedTick);
+                rightMovedTick = tick;
+            }
         } finally {
             lock.writeLock().unlock();
         }
@@ -174,113 +206,144 @@ public class GameState implements Serializable {
     public synchronized void moveBall(){
         lock.writeLock().lock();
         try {
-            // Store previous position
-            prevBallX = atomicBallX.get();
-            prevBallY = atomicBallY.get();
-
-            int currentBallX = atomicBallX.get();
-            int currentBallY = atomicBallY.get();
-
-            // Update ball position
-            currentBallX += ballVelocityX;
-            currentBallY += ballVelocityY;
-
-            // Check collision with top and bottom walls
-            if (currentBallY <= 0) {
-                currentBallY = 0;
-                ballVelocityY = -ballVelocityY; // Bounce
-            }
-            if (currentBallY >= GAME_HEIGHT - BALL_SIZE) {
-                currentBallY = GAME_HEIGHT - BALL_SIZE;
-                ballVelocityY = -ballVelocityY; // Bounce
-            }
-
-            int currentPaddleLeftY = atomicPaddleLeftY.get();
-            int currentPaddleRightY = atomicPaddleRightY.get();
+            EntityWorld world = world();
+            world.ballX[0] = atomicBallX.get();
+            world.ballY[0] = atomicBallY.get();
+            world.velocityX[0] = ballVelocityX;
+            world.velocityY[0] = ballVelocityY;
+            world.paddlePos[EntityWorld.LEFT] = atomicPaddleLeftY.get();
+            world.paddlePos[EntityWorld.RIGHT] = atomicPaddleRightY.get();
+            world.rngState = rngState;
+            world.moveBalls(); // Scores are counted in WorldEvents.goal
+
+            prevBallX = world.prevBallX[0];
+            prevBallY = world.prevBallY[0];
+            atomicBallX.set(world.ballX[0]);
+            atomicBallY.set(world.ballY[0]);
+            this.ballX = world.ballX[0];
+            this.ballY = world.ballY[0];
+            ballVelocityX = world.velocityX[0];
+            ballVelocityY = world.velocityY[0];
+            rngState = world.rngState;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
-            // Check collision with left paddle
-            if (currentBallX <= PADDLE_LEFT_X + PADDLE_WIDTH &&
-                currentBallX + BALL_SIZE >= PADDLE_LEFT_X &&
-                currentBallY + BALL_SIZE >= currentPaddleLeftY &&
-                currentBallY <= currentPaddleLeftY + PADDLE_HEIGHT) {
-                ballVelocityX = Math.abs(ballVelocityX); // Bounce right
-                currentBallX = PADDLE_LEFT_X + PADDLE_WIDTH; // Prevent sticking
-            }
+    // The physics are EntityWorld's classic field. One world per thread serves every state on it,
+    // which keeps a state as small as it was: its fields stay the source of truth and are copied
+    // in and out around each call.
+    private EntityWorld world() {
+        if (worldEvents == null) {
+            worldEvents = new WorldEvents();
+        }
+        EntityWorld world = WORLD.get();
+        world.events = worldEvents;
+        return world;
+    }
 
-            // Check collision with right paddle
-            if (currentBallX + BALL_SIZE >= PADDLE_RIGHT_X &&
-                currentBallX <= PADDLE_RIGHT_X + PADDLE_WIDTH &&
-                currentBallY + BALL_SIZE >= currentPaddleRightY &&
-                currentBallY <= currentPaddleRightY + PADDLE_HEIGHT) {
-                ballVelocityX = -Math.abs(ballVelocityX); // Bounce left
-                currentBallX = PADDLE_RIGHT_X - BALL_SIZE; // Prevent sticking
-            }
+    private final class WorldEvents implements EntityWorld.Events {
+        @Override
+        public void paddleHit(int edge) {
+            emit(MatchAnalytics.PADDLE_HIT, edge == EntityWorld.LEFT ? 0 : 1, 0);
+        }
 
-            // Check if ball went out of bounds (scoring)
-            if (currentBallX < 0) {
+        @Override
+        public void goal(int edge, int velocityX, int velocityY) {
+            int speedBits = (Math.min(Math.abs(velocityX), 0xFFFF) << 16) | Math.min(Math.abs(velocityY), 0xFFFF);
+            if (edge == EntityWorld.LEFT) {
+                emit(MatchAnalytics.SCORE, 1, speedBits);
                 atomicScoreRight.incrementAndGet();
                 scoreRight = atomicScoreRight.get();
-                resetBallInternal();
-                return;
-            } else if (currentBallX > GAME_WIDTH) {
+            } else {
+                emit(MatchAnalytics.SCORE, 0, speedBits);
                 atomicScoreLeft.incrementAndGet();
                 scoreLeft = atomicScoreLeft.get();
-                resetBallInternal();
-                return;
             }
+        }
+    }
 
-            // Update atomic values
-            atomicBallX.set(currentBallX);
-            atomicBallY.set(currentBallY);
-            this.ballX = currentBallX;
-            this.ballY = currentBallY;
-        } finally {
-            lock.writeLock().unlock();
+    // Starts publishing gameplay events for this match, from the current tick
+    public synchronized void trackAnalytics(AnalyticsRing ring, long matchId) {
+        analytics = ring;
+        analyticsMatchId = matchId;
+        leftMovedTick = tick;
+        rightMovedTick = tick;
+        emit(MatchAnalytics.MATCH_START, 0, 0);
+    }
+
+    public synchronized void endAnalytics() {
+        emit(MatchAnalytics.MATCH_END, 0, 0);
+        analytics = null;
+    }
+
+    // A tracked match's analytics while its state is parked outside any GameState (MatchArena)
+    static final class AnalyticsTracking {
+        final AnalyticsRing ring;
+        final long matchId;
+        final long leftMovedTick;
+        final long rightMovedTick;
+
+        AnalyticsTracking(AnalyticsRing ring, long matchId, long leftMovedTick, long rightMovedTick) {
+            this.ring = ring;
+            this.matchId = matchId;
+            this.leftMovedTick = leftMovedTick;
+            this.rightMovedTick = rightMovedTick;
+        }
+    }
+
+    // Stops publishing without ending the match; null if it was not tracked
+    synchronized AnalyticsTracking detachAnalytics() {
+        if (analytics == null) {
+            return null;
+        }
+        AnalyticsTracking tracking = new AnalyticsTracking(analytics, analyticsMatchId, leftMovedTick, rightMovedTick);
+        analytics = null;
+        return tracking;
+    }
+
+    // Continues a detached match's analytics on this state, without another MATCH_START
+    synchronized void attachAnalytics(AnalyticsTracking tracking) {
+        if (tracking == null) {
+            return;
         }
+        analytics = tracking.ring;
+        analyticsMatchId = tracking.matchId;
+        leftMovedTick = tracking.leftMovedTick;
+        rightMovedTick = tracking.rightMovedTick;
     }
 
-    private void resetBallInternal() {
-        // Must be called within write lock
-        int newBallX = GAME_WIDTH / 2;
-        int newBallY = GAME_HEIGHT / 2;
-        atomicBallX.set(newBallX);
-        atomicBallY.set(newBallY);
-        this.ballX = newBallX;
-        this.ballY = newBallY;
-
-        // Randomize direction slightly
-        ballVelocityX = (ballVelocityX > 0 ? -5 : 5);
-        ballVelocityY = (Math.random() > 0.5 ? 5 : -5);
+    // One CAS and a few array stores; no-op for untracked states (clients, copies, benchmarks)
+    private void emit(int type, int a, int b) {
+        AnalyticsRing ring = analytics;
+        if (ring != null) {
+            ring.publish(type, analyticsMatchId, tick, a, b);
+        }
+    }
+
+    private void emitIdle(int side, long lastMovedTick) {
+        long idle = tick - lastMovedTick - 1;
+        if (idle >= IDLE_MIN_TICKS) {
+            emit(MatchAnalytics.PADDLE_IDLE, side, (int) Math.min(idle, Integer.MAX_VALUE));
+        }
+    }
+
+    public synchronized void seedRandom(long seed) {
+        rngState = seed;
     }
 
     public synchronized void checkBoundaries(){
         lock.writeLock().lock();
         try {
-            // Keep left paddle within screen bounds
-            int leftY = atomicPaddleLeftY.get();
-            if (leftY < 0) {
-                leftY = 0;
-                atomicPaddleLeftY.set(leftY);
-                this.paddleLeftY = leftY;
-            }
-            if (leftY > GAME_HEIGHT - PADDLE_HEIGHT) {
-                leftY = GAME_HEIGHT - PADDLE_HEIGHT;
-                atomicPaddleLeftY.set(leftY);
-                this.paddleLeftY = leftY;
-            }
-
-            // Keep right paddle within screen bounds
-            int rightY = atomicPaddleRightY.get();
-            if (rightY < 0) {
-                rightY = 0;
-                atomicPaddleRightY.set(rightY);
-                this.paddleRightY = rightY;
-            }
-            if (rightY > GAME_HEIGHT - PADDLE_HEIGHT) {
-                rightY = GAME_HEIGHT - PADDLE_HEIGHT;
-                atomicPaddleRightY.set(rightY);
-                this.paddleRightY = rightY;
-            }
+            // Keep the paddles within screen bounds
+            EntityWorld world = world();
+            world.paddlePos[EntityWorld.LEFT] = atomicPaddleLeftY.get();
+            world.paddlePos[EntityWorld.RIGHT] = atomicPaddleRightY.get();
+            world.clampPaddles();
+            atomicPaddleLeftY.set(world.paddlePos[EntityWorld.LEFT]);
+            atomicPaddleRightY.set(world.paddlePos[EntityWorld.RIGHT]);
+            this.paddleLeftY = world.paddlePos[EntityWorld.LEFT];
+            this.paddleRightY = world.paddlePos[EntityWorld.RIGHT];
         } finally {
             lock.writeLock().unlock();
         }
@@ -339,6 +402,85 @@ public class GameState implements Serializable {
         }
     }
 
+    // Detached copy that another thread can serialize while the simulation keeps running
+    public synchronized GameState copy() {
+        GameState copy = new GameState();
+        lock.readLock().lock();
+        try {
+            copy.setFrom(this);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return copy;
+    }
+
+    private void setFrom(GameState source) {
+        atomicBallX.set(source.atomicBallX.get());
+        atomicBallY.set(source.atomicBallY.get());
+        atomicPaddleLeftY.set(source.atomicPaddleLeftY.get());
+        atomicPaddleRightY.set(source.atomicPaddleRightY.get());
+        atomicScoreLeft.set(source.atomicScoreLeft.get());
+        atomicScoreRight.set(source.atomicScoreRight.get());
+        atomicIsPaused.set(source.atomicIsPaused.get());
+        prevBallX = source.prevBallX;
+        prevBallY = source.prevBallY;
+        ballX = source.atomicBallX.get();
+        ballY = source.atomicBallY.get();
+        paddleLeftY = source.atomicPaddleLeftY.get();
+        paddleRightY = source.atomicPaddleRightY.get();
+        scoreLeft = source.atomicScoreLeft.get();
+        scoreRight = source.atomicScoreRight.get();
+        isPaused = source.atomicIsPaused.get();
+        ballVelocityX = source.ballVelocityX;
+        ballVelocityY = source.ballVelocityY;
+        tick = source.tick;
+        rngState = source.rngState;
+    }
+
+    // Full simulation state, enough to continue the match bit for bit in another process
+    public synchronized void writeCheckpoint(ByteBuffer out) {
+        lock.readLock().lock();
+        try {
+            out.putInt(atomicBallX.get());
+            out.putInt(atomicBallY.get());
+            out.putInt(prevBallX);
+            out.putInt(prevBallY);
+            out.putInt(ballVelocityX);
+            out.putInt(ballVelocityY);
+            out.putInt(atomicPaddleLeftY.get());
+            out.putInt(atomicPaddleRightY.get());
+            out.putInt(atomicScoreLeft.get());
+            out.putInt(atomicScoreRight.get());
+            out.put((byte) (atomicIsPaused.get() ? 1 : 0));
+            out.putLong(tick);
+            out.putLong(rngState);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public synchronized void readCheckpoint(ByteBuffer in) {
+        lock.writeLock().lock();
+        try {
+            atomicBallX.set(in.getInt());
+            atomicBallY.set(in.getInt());
+            prevBallX = in.getInt();
+            prevBallY = in.getInt();
+            ballVelocityX = in.getInt();
+            ballVelocityY = in.getInt();
+            atomicPaddleLeftY.set(in.getInt());
+            atomicPaddleRightY.set(in.getInt());
+            atomicScoreLeft.set(in.getInt());
+            atomicScoreRight.set(in.getInt());
+            atomicIsPaused.set(in.get() != 0);
+            tick = in.getLong();
+            rngState = in.getLong();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        syncStateForSerialization();
+    }
+
     // Restore atomic values after deserialization
     private Object readResolve() {
         lock = new ReentrantReadWriteLock();
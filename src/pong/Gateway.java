@@ -0,0 +1,216 @@
+package pong;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Edge gateway: terminates player connections and carries their traffic to a game server over a
+// few long-lived MuxLinks (-Dpong.backend=host:linkPort, -Dpong.gateway.links). Players speak the
+// normal protocol to the gateway; the server sees one stream per player. The server only listens
+// for links when started with -Dpong.linkPort.
+// Usage: java pong.Gateway [port]
+public class Gateway {
+    static final int DEFAULT_PORT = 3300;
+
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    private final int port;
+    private final String backendHost;
+    private final int backendPort;
+    private ServerSocket serverSocket;
+
+    private final ServerIoMode ioMode = ServerIoMode.fromProperty();
+    private final ExecutorService connectionExecutor = ioMode.newConnectionExecutor();
+    private final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+    private final MuxLink[] links;
+    private final Map<Integer, PlayerConnection> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStreamId = new AtomicInteger(1);
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public Gateway(int port, String backend, int linkCount) {
+        this.port = port;
+        int colon = backend.lastIndexOf(':');
+        this.backendHost = backend.substring(0, colon);
+        this.backendPort = Integer.parseInt(backend.substring(colon + 1));
+        this.links = new MuxLink[Math.max(1, linkCount)];
+        Metrics.gauge("gateway.streams", streams::size);
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running.set(true);
+        System.out.println("Gateway started. Port: " + port + ", backend: " + backendHost + ":" + backendPort
+                + " over " + links.length + " links");
+
+        for (int i = 0; i < links.length; i++) {
+            int index = i;
+            connectionExecutor.execute(() -> maintainLink(index));
+        }
+        connectionExecutor.execute(this::acceptLoop);
+        Metrics.startReporter(reporter);
+    }
+
+    // Keeps link[index] connected; its players are dropped if it breaks and resume through the grace period
+    private void maintainLink(int index) {
+        Backoff backoff = new Backoff();
+        while (running.get()) {
+            try {
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(backendHost, backendPort), CONNECT_TIMEOUT_MS);
+                MuxLink link = new MuxLink(socket, "gateway.link");
+                connectionExecutor.execute(link::flushLoop);
+                links[index] = link;
+                backoff.reset();
+                System.out.println("Link " + index + " connected to " + backendHost + ":" + backendPort);
+                link.readLoop(new MuxLink.Handler() {
+                    @Override
+                    public void onOpen(int streamId) {
+                        // Only the gateway opens streams
+                    }
+
+                    @Override
+                    public void onMessage(int streamId, Object message) {
+                        relayToPlayer(streamId, message);
+                    }
+
+                    @Override
+                    public void onClose(int streamId) {
+                        PlayerConnection player = streams.remove(streamId);
+                        if (player != null) {
+                            player.close();
+                        }
+                    }
+                });
+                links[index] = null;
+                dropStreams(index);
+                if (running.get()) {
+                    System.err.println("Link " + index + " lost, reconnecting...");
+                }
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Link " + index + " cannot reach backend: " + e.getMessage());
+                }
+            }
+            try {
+                Thread.sleep(backoff.nextDelayMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Runs on the link reader: snapshots go through the player's latest-only writer so one slow
+    // player never stalls the link; the rare other messages are written directly
+    private void relayToPlayer(int streamId, Object message) {
+        PlayerConnection player = streams.get(streamId);
+        if (player == null) {
+            return;
+        }
+        if (message instanceof Snapshot snapshot) {
+            player.offerSnapshot(snapshot);
+            return;
+        }
+        try {
+            player.send(message);
+        } catch (IOException e) {
+            player.close();
+        }
+    }
+
+    private void dropStreams(int linkIndex) {
+        for (Integer streamId : streams.keySet()) {
+            if (streamId % links.length == linkIndex) {
+                PlayerConnection player = streams.remove(streamId);
+                if (player != null) {
+                    player.close();
+                }
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (running.get()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> handlePlayer(socket));
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Connection error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handlePlayer(Socket socket) {
+        int streamId = nextStreamId.getAndIncrement();
+        MuxLink link = links[streamId % links.length];
+        PlayerConnection player;
+        try {
+            if (link == null || !link.isOpen()) {
+                throw new IOException("No link to the backend");
+            }
+            player = new PlayerConnection(socket);
+            streams.put(streamId, player);
+            player.startWriter(connectionExecutor, dropped -> { });
+            link.open(streamId);
+        } catch (IOException e) {
+            System.err.println("Player rejected: " + e.getMessage());
+            streams.remove(streamId);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+
+        player.guardInputs();
+        player.readLoop(message -> {
+            if (message instanceof PlayerInput input) {
+                player.onAck(input.ackTick); // The player's pacing happens here, at the edge
+            }
+            try {
+                link.send(streamId, message);
+            } catch (IOException e) {
+                player.close();
+            }
+        });
+        if (streams.remove(streamId) != null) {
+            try {
+                link.close(streamId);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public void close() {
+        running.set(false);
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+        for (MuxLink link : links) {
+            if (link != null) {
+                link.close();
+            }
+        }
+        reporter.shutdownNow();
+        connectionExecutor.shutdownNow();
+        System.out.println("Gateway closed.");
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        String backend = System.getProperty("pong.backend", "localhost:" + (LobbyServer.DEFAULT_PORT + 1000));
+        Gateway gateway = new Gateway(port, backend, Integer.getInteger("pong.gateway.links", 2));
+        gateway.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::close));
+    }
+}
@@ -0,0 +1,206 @@
+package pong;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Syscalls and throughput of the game server with players connected directly versus through the
+// gateway. The server (and the gateway) run as separate processes; their read/write syscall
+// counts come from /proc/<pid>/io (Linux only). Players are lightweight in-process clients that
+// queue, play with a steady input stream and count the snapshots they receive.
+// Usage: java pong.GatewayBenchmark [matches] [seconds]
+public class GatewayBenchmark {
+    private static final int SERVER_PORT = 3400;
+    private static final int LINK_PORT = 4400;
+    private static final int GATEWAY_PORT = 3401;
+    private static final long INPUT_INTERVAL_MS = 16;
+
+    private static final class Player {
+        final Socket socket;
+        final ObjectOutputStream out;
+        final ObjectInputStream in;
+        final Snapshot snapshot = new Snapshot();
+        final Heartbeat heartbeat = new Heartbeat();
+        volatile boolean inMatch;
+        long inputSequence;
+
+        Player(int port, int index) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            synchronized (out) {
+                PlayerProtocol.write(out, new QueueRequest("bench-" + index, 1200));
+            }
+        }
+
+        void send(Object message) throws IOException {
+            synchronized (out) {
+                PlayerProtocol.write(out, message);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Path dataDir = Files.createTempDirectory("pong-gateway-bench");
+
+        Process server = launch("pong.LobbyServer", List.of("-Dpong.graceMs=300", "-Dpong.dataDir=" + dataDir,
+                "-Dpong.linkPort=" + LINK_PORT), String.valueOf(SERVER_PORT));
+        try {
+            Thread.sleep(1500);
+            Result direct = run("direct", SERVER_PORT, matches, seconds, server, null);
+            Thread.sleep(1500); // Rooms of the first run end after the grace period
+
+            Process gateway = launch("pong.Gateway", List.of("-Dpong.backend=localhost:" + LINK_PORT),
+                    String.valueOf(GATEWAY_PORT));
+            try {
+                Thread.sleep(1500);
+                Result viaGateway = run("gateway", GATEWAY_PORT, matches, seconds, server, gateway);
+
+                System.out.printf("%n%d matches, %d players, %d s%n", matches, matches * 2, seconds);
+                System.out.printf("%-8s %12s %18s %19s %21s%n", "mode", "snapshots/s", "server syscalls/s",
+                        "gateway syscalls/s", "server syscalls/snap");
+                direct.print();
+                viaGateway.print();
+            } finally {
+                gateway.destroy();
+            }
+        } finally {
+            server.destroy();
+        }
+    }
+
+    private static final class Result {
+        final String mode;
+        final double snapshotsPerSecond;
+        final double serverSyscalls;
+        final double gatewaySyscalls;
+
+        Result(String mode, double snapshotsPerSecond, double serverSyscalls, double gatewaySyscalls) {
+            this.mode = mode;
+            this.snapshotsPerSecond = snapshotsPerSecond;
+            this.serverSyscalls = serverSyscalls;
+            this.gatewaySyscalls = gatewaySyscalls;
+        }
+
+        void print() {
+            System.out.printf("%-8s %12.0f %18.0f %19.0f %21.3f%n", mode, snapshotsPerSecond, serverSyscalls,
+                    gatewaySyscalls, serverSyscalls / snapshotsPerSecond);
+        }
+    }
+
+    private static Result run(String mode, int port, int matches, int seconds, Process server, Process gateway)
+            throws Exception {
+        LongAdder snapshots = new LongAdder();
+        List<Player> players = new ArrayList<>();
+        ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor();
+        ScheduledExecutorService inputs = Executors.newSingleThreadScheduledExecutor();
+        try {
+            for (int i = 0; i < matches * 2; i++) {
+                Player player = new Player(port, i);
+                players.add(player);
+                readers.execute(() -> readLoop(player, snapshots));
+            }
+            inputs.scheduleAtFixedRate(() -> {
+                for (Player player : players) {
+                    if (player.inMatch) {
+                        PlayerInput input = new PlayerInput();
+                        input.moveY = (player.inputSequence & 32) == 0 ? 5 : -5;
+                        input.sequence = ++player.inputSequence;
+                        try {
+                            player.send(input);
+                        } catch (IOException ignored) {
+                        }
+                    }
+                }
+            }, INPUT_INTERVAL_MS, INPUT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+            // Wait for every player to be in a room, then let the rates settle
+            long deadline = System.nanoTime() + 20_000_000_000L;
+            while (players.stream().anyMatch(p -> !p.inMatch) && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(2000);
+
+            long[] serverBefore = syscalls(server);
+            long[] gatewayBefore = syscalls(gateway);
+            long snapshotsBefore = snapshots.sum();
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long[] serverAfter = syscalls(server);
+            long[] gatewayAfter = syscalls(gateway);
+            double snapshotRate = (snapshots.sum() - snapshotsBefore) / elapsed;
+
+            double serverRate = (serverAfter[0] - serverBefore[0] + serverAfter[1] - serverBefore[1]) / elapsed;
+            double gatewayRate = (gatewayAfter[0] - gatewayBefore[0] + gatewayAfter[1] - gatewayBefore[1]) / elapsed;
+            System.out.printf("%s: server read %.0f/s write %.0f/s%n", mode,
+                    (serverAfter[0] - serverBefore[0]) / elapsed, (serverAfter[1] - serverBefore[1]) / elapsed);
+            return new Result(mode, snapshotRate, serverRate, gatewayRate);
+        } finally {
+            inputs.shutdownNow();
+            for (Player player : players) {
+                player.socket.close();
+            }
+            readers.shutdownNow();
+        }
+    }
+
+    private static void readLoop(Player player, LongAdder snapshots) {
+        try {
+            while (true) {
+                Object message = PlayerProtocol.read(player.in, player.snapshot, player.heartbeat);
+                if (message == player.snapshot) {
+                    snapshots.increment();
+                } else if (message instanceof Heartbeat heartbeat && !heartbeat.reply) {
+                    player.send(heartbeat.toReply(System.nanoTime()));
+                } else if (message instanceof SessionInfo) {
+                    player.inMatch = true;
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            // Closed at the end of the run
+        }
+    }
+
+    // {read syscalls, write syscalls} of a process, zeros if unavailable
+    private static long[] syscalls(Process process) {
+        long[] counts = new long[2];
+        if (process == null) {
+            return counts;
+        }
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(process.pid()), "io"))) {
+                if (line.startsWith("syscr:")) {
+                    counts[0] = Long.parseLong(line.substring(6).trim());
+                } else if (line.startsWith("syscw:")) {
+                    counts[1] = Long.parseLong(line.substring(6).trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read syscall counts: " + e.getMessage());
+        }
+        return counts;
+    }
+
+    private static Process launch(String mainClass, List<String> properties, String arg) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Djava.awt.headless=true");
+        command.addAll(properties);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.add(arg);
+        return new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+}
@@ -0,0 +1,36 @@
+package pong;
+
+import java.io.Serializable;
+
+// Ping/pong with NTP-style timestamps. Times are System.nanoTime() of whoever wrote them.
+public class Heartbeat implements Serializable {
+    boolean reply;
+    long originNanos;    // t0 - sender's clock when the ping left
+    long receiveNanos;   // t1 - responder's clock when the ping arrived
+    long transmitNanos;  // t2 - responder's clock when the pong left
+
+    // Filled by the server so clients can map tick numbers to their own clock
+    long serverTick;
+    long serverTickNanos;
+
+    public static Heartbeat ping(long now) {
+        Heartbeat heartbeat = new Heartbeat();
+        heartbeat.originNanos = now;
+        return heartbeat;
+    }
+
+    public Heartbeat toReply(long receivedAt) {
+        return toReply(receivedAt, new Heartbeat());
+    }
+
+    // Fills a reusable reply instead of allocating one
+    public Heartbeat toReply(long receivedAt, Heartbeat pong) {
+        pong.reply = true;
+        pong.originNanos = originNanos;
+        pong.receiveNanos = receivedAt;
+        pong.transmitNanos = System.nanoTime();
+        pong.serverTick = 0;
+        pong.serverTickNanos = 0;
+        return pong;
+    }
+}
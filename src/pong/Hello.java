@@ -0,0 +1,13 @@
+package pong;
+
+import java.io.Serializable;
+
+// First message a client sends after connecting
+public class Hello implements Serializable {
+    // Token from a previous SessionInfo to resume, 0 for a new session
+    long sessionToken;
+
+    public Hello(long sessionToken) {
+        this.sessionToken = sessionToken;
+    }
+}
@@ -0,0 +1,93 @@
+package pong;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Log-linear histogram of nanosecond values: 16 sub-buckets per power of two (~6% precision).
+// Recording is a single atomic increment, so it is cheap enough for per-tick use.
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Approximate value at the given percentile (0-100), 0 when empty
+    public long percentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(BUCKETS - 1);
+    }
+
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return valueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    // Copies the counts and clears them, so callers can report per-interval values
+    public Histogram drain() {
+        Histogram interval = new Histogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.getAndSet(i, 0);
+            if (count != 0) {
+                interval.counts.set(i, count);
+            }
+        }
+        return interval;
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Midpoint of the bucket
+    private static long valueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return lower + width / 2;
+    }
+}
@@ -0,0 +1,188 @@
+package pong;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Cost of reading a player input, and what the server does with clients that abuse the protocol.
+// First decodes a stream of inputs written as serialized objects (the old wire format) and as
+// primitives, timing them and reading the reader thread's allocation counter. Then attaches
+// clients to a headless GameServer over loopback: one that plays normally, one that sends
+// 1000 px moves at the normal rate, one that floods inputs and pause toggles, one that sends a
+// 1 MB object and one that sends a class no message uses. The first two must see nothing
+// rejected and the paddle must never move faster than the legal speed; the others must be
+// dropped quickly.
+// Usage: java -Djava.awt.headless=true pong.InputFloodBenchmark [inputs]
+public class InputFloodBenchmark {
+    private static final int PORT = 3800;
+
+    public static void main(String[] args) throws Exception {
+        int inputs = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < 3; round++) { // The last round is reported, after warmup
+            boolean report = round == 2;
+            decode(threads, inputs, true, report);
+            decode(threads, inputs, false, report);
+        }
+
+        System.setProperty("pong.dataDir", Files.createTempDirectory("pong-flood-bench").toString());
+        System.setProperty("pong.port", Integer.toString(PORT));
+        System.setProperty("pong.spectatorPort", Integer.toString(PORT + 1));
+        GameServer server = new GameServer();
+        server.startGameLoop(new GameState(), new GamePanel());
+        try {
+            long token = steady("well-behaved client", 0, GameState.MAX_PADDLE_SPEED);
+            steady("1000 px moves", token, 1000);
+            flood(token);
+            sendObject(token, "1 MB object", new RoomMigration(0, new byte[1024 * 1024], null));
+            sendObject(token, "foreign class", new HashMap<String, String>());
+        } finally {
+            server.close();
+        }
+        System.exit(0);
+    }
+
+    private static void decode(com.sun.management.ThreadMXBean threads, int inputs, boolean asObject, boolean report)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (int i = 0; i < inputs; i++) {
+            PlayerInput input = new PlayerInput();
+            input.sequence = i + 1;
+            input.moveY = (i & 32) == 0 ? 5 : -5;
+            input.ackTick = i;
+            if (asObject) {
+                out.reset();
+                out.writeByte(PlayerProtocol.TAG_OBJECT);
+                out.writeObject(input);
+            } else {
+                PlayerProtocol.encode(out, input);
+            }
+        }
+        out.flush();
+        byte[] stream = bytes.toByteArray();
+
+        ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new ByteArrayInputStream(stream)));
+        in.setObjectInputFilter(PlayerConnection.OBJECT_FILTER);
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < inputs; i++) {
+            checksum += ((PlayerInput) PlayerProtocol.read(in, null, null)).sequence;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        if (report) {
+            System.out.printf("%-22s %6.1f bytes/input on the wire, %7.1f ns/input, %6.1f bytes allocated/input (checksum %d)%n",
+                    asObject ? "inputs as objects:" : "inputs as primitives:", stream.length / (double) inputs,
+                    elapsed / (double) inputs, allocated / (double) inputs, checksum);
+        }
+    }
+
+    // A client like GameClient - an input per 16 ms and a heartbeat per 500 ms, for three seconds -
+    // moving its paddle by moveY; token 0 starts the session
+    private static long steady(String name, long token, int moveY) throws Exception {
+        LongAdder rejected = Metrics.counter("net.input.rejected");
+        LongAdder clamped = Metrics.counter("net.input.clamped");
+        long rejectedBefore = rejected.sum();
+        long clampedBefore = clamped.sum();
+        try (Socket socket = new Socket("localhost", PORT)) {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            PlayerProtocol.write(out, new Hello(token));
+            SessionInfo info = (SessionInfo) PlayerProtocol.read(in, null, null);
+            int[] fastestMove = new int[1];
+            Thread drain = Thread.ofVirtual().start(() -> drain(in, fastestMove));
+            long end = System.nanoTime() + 3_000_000_000L;
+            for (long sequence = 1; System.nanoTime() < end; sequence++) {
+                PlayerInput input = new PlayerInput();
+                input.sequence = sequence;
+                input.moveY = (sequence & 32) == 0 ? moveY : -moveY;
+                input.pauseRequest = sequence % 60 == 0; // Pause and unpause again
+                PlayerProtocol.write(out, input);
+                if (sequence % 31 == 0) {
+                    PlayerProtocol.write(out, Heartbeat.ping(System.nanoTime()));
+                }
+                Thread.sleep(16);
+            }
+            System.out.printf("%s: %d messages rejected, %d clamped, still connected: %b, fastest paddle move %d px/tick%n",
+                    name, rejected.sum() - rejectedBefore, clamped.sum() - clampedBefore, drain.isAlive(), fastestMove[0]);
+            return info.sessionToken;
+        }
+    }
+
+    // Resumes the session and writes inputs as fast as the socket takes them until the server hangs up
+    private static void flood(long token) throws Exception {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            PlayerProtocol.write(out, new Hello(token));
+            PlayerProtocol.read(in, null, null); // SessionInfo
+            Thread drain = Thread.ofVirtual().start(() -> drain(in, null));
+            long start = System.nanoTime();
+            long sent = 0;
+            try {
+                while (sent < 50_000_000) {
+                    PlayerInput input = new PlayerInput();
+                    input.sequence = ++sent;
+                    input.moveY = (sent & 1024) == 0 ? 1000 : -1000;
+                    input.pauseRequest = sent % 10 == 0;
+                    PlayerProtocol.encode(out, input);
+                    if (sent % 64 == 0) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // Dropped by the server
+            }
+            double ms = (System.nanoTime() - start) / 1e6;
+            drain.join(1000);
+            System.out.printf("input flood: dropped after %.1f ms and %d inputs%n", ms, sent);
+        }
+    }
+
+    private static void sendObject(long token, String name, Object message) throws Exception {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            PlayerProtocol.write(out, new Hello(token));
+            PlayerProtocol.read(in, null, null); // SessionInfo
+            long start = System.nanoTime();
+            try {
+                PlayerProtocol.write(out, message);
+            } catch (IOException e) {
+                // Closed mid-write
+            }
+            drain(in, null);
+            System.out.printf("%s: connection closed %.1f ms after sending%n", name, (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    // Reads until the server closes; tracks the largest right paddle step between consecutive ticks
+    private static void drain(ObjectInputStream in, int[] fastestMove) {
+        Snapshot snapshot = new Snapshot();
+        long lastTick = -1;
+        int lastY = 0;
+        try {
+            while (true) {
+                Object message = PlayerProtocol.read(in, snapshot, null);
+                if (message == snapshot && fastestMove != null) {
+                    if (snapshot.tick == lastTick + 1) {
+                        fastestMove[0] = Math.max(fastestMove[0], Math.abs(snapshot.paddleRightY - lastY));
+                    }
+                    lastTick = snapshot.tick;
+                    lastY = snapshot.paddleRightY;
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            // Closed
+        }
+    }
+}
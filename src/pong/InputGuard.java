@@ -0,0 +1,104 @@
+package pong;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Vets what one player sends, on the connection's reader thread, before the server acts on it.
+// Each kind of message has a token bucket sized well above what GameClient sends. An input or
+// heartbeat over its bucket is a few primitives, read and ignored; an object over its bucket is
+// refused on its tag, before it is deserialized, by closing the connection. Rejections draw on
+// a tolerance bucket of their own, so a burst (a reconnect, a stalled link flushing) passes
+// while a sustained flood empties it and the connection is closed. Moves are clamped to the
+// legal paddle speed.
+public class InputGuard {
+    private static final LongAdder rejected = Metrics.counter("net.input.rejected");
+    private static final LongAdder clamped = Metrics.counter("net.input.clamped");
+    private static final LongAdder dropped = Metrics.counter("net.input.connectionsDropped");
+
+    // The client sends an input per 16 ms frame and two heartbeat messages per second
+    private final TokenBucket inputs = new TokenBucket(90, 60);
+    private final TokenBucket heartbeats = new TokenBucket(8, 8);
+    // Pause and restart are key presses; objects are handshake messages, rare after it
+    private final TokenBucket toggles = new TokenBucket(2, 4);
+    private final TokenBucket objects = new TokenBucket(1, 4);
+    private final TokenBucket tolerance = new TokenBucket(2, 60);
+    private long rejectedCount = 0;
+    private boolean abusive = false;
+
+    // Before the message body is read; false means drop it - or stop reading if isAbusive()
+    public boolean admitTag(byte tag, long now) {
+        TokenBucket bucket;
+        if (tag == PlayerProtocol.TAG_INPUT) {
+            bucket = inputs;
+        } else if (tag == PlayerProtocol.TAG_HEARTBEAT) {
+            bucket = heartbeats;
+        } else {
+            bucket = objects; // Includes snapshots, which no player has reason to send
+        }
+        if (bucket.take(now)) {
+            return true;
+        }
+        reject(now);
+        if (bucket == objects && !abusive) {
+            // An object cannot be skipped without deserializing it; the stream ends here
+            abusive = true;
+            dropped.increment();
+        }
+        return false;
+    }
+
+    // After decoding: clamps the move and strips toggles over their rate
+    public void vet(PlayerInput input, long now) {
+        if (input.moveY > GameState.MAX_PADDLE_SPEED || input.moveY < -GameState.MAX_PADDLE_SPEED) {
+            input.moveY = Math.max(-GameState.MAX_PADDLE_SPEED, Math.min(GameState.MAX_PADDLE_SPEED, input.moveY));
+            clamped.increment();
+        }
+        if ((input.pauseRequest || input.restartRequest) && !toggles.take(now)) {
+            input.pauseRequest = false;
+            input.restartRequest = false;
+            reject(now);
+        }
+    }
+
+    private void reject(long now) {
+        rejected.increment();
+        rejectedCount++;
+        if (!abusive && !tolerance.take(now)) {
+            abusive = true;
+            dropped.increment();
+        }
+    }
+
+    public boolean isAbusive() {
+        return abusive;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    // Refills continuously at ratePerSecond up to burst; single-threaded
+    static final class TokenBucket {
+        private final double perNano;
+        private final double burst;
+        private double tokens;
+        private long lastNanos = Long.MIN_VALUE;
+
+        TokenBucket(double ratePerSecond, double burst) {
+            this.perNano = ratePerSecond / 1e9;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        boolean take(long now) {
+            if (lastNanos != Long.MIN_VALUE) {
+                tokens = Math.min(burst, tokens + (now - lastNanos) * perNano);
+            }
+            lastNanos = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
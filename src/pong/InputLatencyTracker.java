@@ -0,0 +1,159 @@
+package pong;
+
+// Follows key presses from the KeyAdapter to the first frame painted with their effect.
+// A key change is tagged with the sequence of the PlayerInput that first carries it; the server
+// echoes the newest input sequence it has applied in every snapshot (Snapshot.appliedInput), so
+// the first snapshot at or past that sequence shows the effect. Stages, all in the local clock:
+//   sample   key event -> game loop samples it into an input
+//   send     sampled -> input written to the socket
+//   uplink   written -> server tick that applied it (needs the heartbeat clock mapping)
+//   downlink that tick -> its snapshot received
+//   apply    received -> applied to the rendered state on the EDT
+//   paint    applied -> paintComponent finished drawing it
+//   total    key event -> painted
+// All hooks are allocation-free; the receiver's is called for every snapshot.
+public class InputLatencyTracker {
+    static final String[] STAGES = {"sample", "send", "uplink", "downlink", "apply", "paint", "total"};
+    private static final int SAMPLE = 0;
+    private static final int SEND = 1;
+    private static final int UPLINK = 2;
+    private static final int DOWNLINK = 3;
+    private static final int APPLY = 4;
+    private static final int PAINT = 5;
+    private static final int TOTAL = 6;
+
+    private static final int MAX_PENDING = 16;
+    // A press whose effect never shows (dropped input, reconnect) is forgotten after this long
+    private static final long PENDING_TIMEOUT_NANOS = 2_000_000_000L;
+
+    private final LinkStats linkStats;
+    private final Histogram[] stages = new Histogram[STAGES.length];
+
+    // Ring of key changes in flight, oldest at head; sequences increase along the ring
+    private final long[] sequence = new long[MAX_PENDING];
+    private final long[] keyNanos = new long[MAX_PENDING];
+    private final long[] sampledNanos = new long[MAX_PENDING];
+    private final long[] sentNanos = new long[MAX_PENDING];
+    private final long[] tickNanos = new long[MAX_PENDING];
+    private final long[] receivedNanos = new long[MAX_PENDING];
+    private final long[] appliedNanos = new long[MAX_PENDING];
+    private int head = 0;
+    private int count = 0;
+
+    public InputLatencyTracker(LinkStats linkStats) {
+        this.linkStats = linkStats;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new Histogram();
+        }
+    }
+
+    // Game loop: the input with this sequence is the first to carry a key change made at keyEventNanos
+    public synchronized void onSampled(long inputSequence, long keyEventNanos, long now) {
+        expire(now);
+        if (count == MAX_PENDING) {
+            drop();
+        }
+        int i = (head + count) % MAX_PENDING;
+        sequence[i] = inputSequence;
+        keyNanos[i] = keyEventNanos;
+        sampledNanos[i] = now;
+        sentNanos[i] = 0;
+        tickNanos[i] = 0;
+        receivedNanos[i] = 0;
+        appliedNanos[i] = 0;
+        count++;
+    }
+
+    public synchronized void onSent(long inputSequence, long now) {
+        if (count > 0) {
+            int newest = (head + count - 1) % MAX_PENDING;
+            if (sequence[newest] == inputSequence) {
+                sentNanos[newest] = now;
+            }
+        }
+    }
+
+    // Receiver thread, per snapshot
+    public synchronized void onReceived(long appliedInput, long tick, long now) {
+        for (int n = 0; n < count; n++) {
+            int i = (head + n) % MAX_PENDING;
+            if (sequence[i] > appliedInput) {
+                break;
+            }
+            if (receivedNanos[i] == 0) {
+                receivedNanos[i] = now;
+                tickNanos[i] = linkStats.remoteTickToLocalNanos(tick);
+            }
+        }
+    }
+
+    // EDT, when a snapshot becomes the rendered state
+    public synchronized void onApplied(long appliedInput, long now) {
+        for (int n = 0; n < count; n++) {
+            int i = (head + n) % MAX_PENDING;
+            if (sequence[i] > appliedInput) {
+                break;
+            }
+            if (receivedNanos[i] != 0 && appliedNanos[i] == 0) {
+                appliedNanos[i] = now;
+            }
+        }
+    }
+
+    // EDT, after paintComponent drew the current state
+    public synchronized void onPainted(long now) {
+        while (count > 0 && appliedNanos[head] != 0) {
+            int i = head;
+            stages[SAMPLE].record(sampledNanos[i] - keyNanos[i]);
+            if (sentNanos[i] != 0) {
+                stages[SEND].record(sentNanos[i] - sampledNanos[i]);
+                // Clock mapping is only as good as the offset estimate; skip what it cannot place
+                if (tickNanos[i] > 0 && tickNanos[i] >= sentNanos[i] && tickNanos[i] <= receivedNanos[i]) {
+                    stages[UPLINK].record(tickNanos[i] - sentNanos[i]);
+                    stages[DOWNLINK].record(receivedNanos[i] - tickNanos[i]);
+                }
+            }
+            stages[APPLY].record(appliedNanos[i] - receivedNanos[i]);
+            stages[PAINT].record(now - appliedNanos[i]);
+            stages[TOTAL].record(now - keyNanos[i]);
+            drop();
+        }
+    }
+
+    private void expire(long now) {
+        while (count > 0 && now - sampledNanos[head] > PENDING_TIMEOUT_NANOS) {
+            drop();
+        }
+    }
+
+    private void drop() {
+        head = (head + 1) % MAX_PENDING;
+        count--;
+    }
+
+    Histogram getStage(int index) {
+        return stages[index];
+    }
+
+    public long getCount() {
+        return stages[TOTAL].getCount();
+    }
+
+    // One line per stage for the F3 overlay and the exit report
+    public String[] formatLines() {
+        String[] lines = new String[STAGES.length];
+        for (int i = 0; i < STAGES.length; i++) {
+            lines[i] = String.format("%-8s %5.1f %5.1f ms", STAGES[i],
+                    stages[i].percentile(50) / 1e6, stages[i].percentile(99) / 1e6);
+        }
+        return lines;
+    }
+
+    public void registerMetrics(String prefix) {
+        for (int i = 0; i < STAGES.length; i++) {
+            Histogram stage = stages[i];
+            Metrics.gauge(prefix + "." + STAGES[i] + ".p50.ms", () -> stage.percentile(50) / 1e6);
+            Metrics.gauge(prefix + "." + STAGES[i] + ".p99.ms", () -> stage.percentile(99) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package pong;
+
+// Supplies one paddle's input per tick - a network player, the local panel or a bot
+public interface InputSource {
+    // Called on the game loop thread while the game state lock is held.
+    // Returns null when there is no new input for this tick.
+    PlayerInput nextInput(GameState state);
+}
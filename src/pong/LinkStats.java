@@ -0,0 +1,102 @@
+package pong;
+
+// Smoothed RTT, jitter and clock offset of one link, fed by Heartbeat round trips
+public class LinkStats {
+    static final long TICK_NANOS = 16_000_000L;
+
+    // Offset is taken from the lowest-RTT sample of the recent window (least queueing)
+    private static final int OFFSET_WINDOW = 8;
+    private final long[] windowRtt = new long[OFFSET_WINDOW];
+    private final long[] windowOffset = new long[OFFSET_WINDOW];
+    private int windowCount = 0;
+    private int windowNext = 0;
+
+    private volatile double smoothedRttMs = 0;
+    private volatile double jitterMs = 0;
+    private volatile double clockOffsetMs = 0;
+    private volatile long samples = 0;
+    private volatile long lastSampleNanos = 0;
+
+    // Latest (tick, start time) pair in the remote clock
+    private volatile long referenceTick = -1;
+    private volatile long referenceTickNanos = 0;
+    private volatile long clockOffsetNanos = 0;
+
+    // t0/t3 in the local clock, t1/t2 in the remote clock
+    public synchronized void onSample(long t0, long t1, long t2, long t3) {
+        long rttNanos = Math.max(0, (t3 - t0) - (t2 - t1));
+        long offsetNanos = ((t1 - t0) + (t2 - t3)) / 2;
+        double rttMs = rttNanos / 1_000_000.0;
+
+        // RFC 6298 style smoothing
+        if (samples == 0) {
+            smoothedRttMs = rttMs;
+            jitterMs = rttMs / 2;
+        } else {
+            jitterMs = 0.75 * jitterMs + 0.25 * Math.abs(smoothedRttMs - rttMs);
+            smoothedRttMs = 0.875 * smoothedRttMs + 0.125 * rttMs;
+        }
+
+        windowRtt[windowNext] = rttNanos;
+        windowOffset[windowNext] = offsetNanos;
+        windowNext = (windowNext + 1) % OFFSET_WINDOW;
+        if (windowCount < OFFSET_WINDOW) {
+            windowCount++;
+        }
+        int best = 0;
+        for (int i = 1; i < windowCount; i++) {
+            if (windowRtt[i] < windowRtt[best]) {
+                best = i;
+            }
+        }
+        clockOffsetNanos = windowOffset[best];
+        clockOffsetMs = clockOffsetNanos / 1_000_000.0;
+
+        lastSampleNanos = t3;
+        samples = samples + 1;
+    }
+
+    public void onRemoteTick(long tick, long tickNanos) {
+        referenceTickNanos = tickNanos;
+        referenceTick = tick;
+    }
+
+    // Local System.nanoTime() at which the remote side started the given tick, or -1 if unknown
+    public long remoteTickToLocalNanos(long tick) {
+        long reference = referenceTick;
+        if (reference < 0) {
+            return -1;
+        }
+        long remoteNanos = referenceTickNanos + (tick - reference) * TICK_NANOS;
+        return remoteNanos - clockOffsetNanos;
+    }
+
+    public double getSmoothedRttMs() {
+        return smoothedRttMs;
+    }
+
+    public double getJitterMs() {
+        return jitterMs;
+    }
+
+    // Remote clock minus local clock
+    public double getClockOffsetMs() {
+        return clockOffsetMs;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public double getSampleAgeMs() {
+        long last = lastSampleNanos;
+        return last == 0 ? -1 : (System.nanoTime() - last) / 1_000_000.0;
+    }
+
+    public void registerMetrics(String prefix) {
+        Metrics.gauge(prefix + ".rtt.ms", this::getSmoothedRttMs);
+        Metrics.gauge(prefix + ".jitter.ms", this::getJitterMs);
+        Metrics.gauge(prefix + ".clockOffset.ms", this::getClockOffsetMs);
+        Metrics.gauge(prefix + ".heartbeat.age.ms", this::getSampleAgeMs);
+    }
+}
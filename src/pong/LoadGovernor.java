@@ -0,0 +1,125 @@
+package pong;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Overload protection driven by the tick budget.
+// While load stays above the threshold (-Dpong.overload.threshold, share of the tick budget)
+// the governor escalates one level every ESCALATE_SAMPLES samples; it steps back down after a
+// second below RECOVER_FACTOR * threshold. Each level keeps the shedding of the levels below it.
+public class LoadGovernor {
+    enum Level {
+        NORMAL,
+        SHED_SPECTATORS,   // Spectator snapshots at a quarter rate
+        SHED_PLAYERS,      // Player snapshots at half rate, spectators at an eighth
+        COALESCE_INPUTS,   // Only the newest queued input per player is applied
+        REFUSE_MATCHES     // Lobby turns new players away
+    }
+
+    private static final long SAMPLE_INTERVAL_MS = 250;
+    private static final int ESCALATE_SAMPLES = 2; // A single spike (GC, JIT warmup) is not overload
+    private static final int RECOVER_SAMPLES = 4;
+    private static final double RECOVER_FACTOR = 0.75;
+
+    private final String name;
+    private final DoubleSupplier loadSource;
+    private final double threshold = Double.parseDouble(System.getProperty("pong.overload.threshold", "0.8"));
+
+    private volatile Level level = Level.NORMAL;
+    private volatile double load = 0;
+    private int samplesAbove = 0;
+    private int samplesBelow = 0;
+
+    // Every shedding decision is counted
+    private final LongAdder escalations;
+    private final LongAdder recoveries;
+    private final LongAdder spectatorFramesShed;
+    private final LongAdder playerSnapshotsShed;
+    private final LongAdder inputsCoalesced;
+    private final LongAdder matchesRefused;
+
+    public LoadGovernor(String name, DoubleSupplier loadSource) {
+        this.name = name;
+        this.loadSource = loadSource;
+        String prefix = name + ".overload.";
+        escalations = Metrics.counter(prefix + "escalations");
+        recoveries = Metrics.counter(prefix + "recoveries");
+        spectatorFramesShed = Metrics.counter(prefix + "spectatorFramesShed");
+        playerSnapshotsShed = Metrics.counter(prefix + "playerSnapshotsShed");
+        inputsCoalesced = Metrics.counter(prefix + "inputsCoalesced");
+        matchesRefused = Metrics.counter(prefix + "matchesRefused");
+        Metrics.gauge(prefix + "load", () -> load);
+        Metrics.gauge(prefix + "level", () -> level.ordinal());
+    }
+
+    public void start(ScheduledExecutorService executor) {
+        executor.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void sample() {
+        double current = loadSource.getAsDouble();
+        load = current;
+        Level[] levels = Level.values();
+        if (current > threshold) {
+            samplesBelow = 0;
+            if (++samplesAbove >= ESCALATE_SAMPLES && level.ordinal() < levels.length - 1) {
+                samplesAbove = 0;
+                level = levels[level.ordinal() + 1];
+                escalations.increment();
+                System.err.printf("%s overloaded (load %.2f), shedding: %s%n", name, current, level);
+            }
+        } else if (current < threshold * RECOVER_FACTOR && level != Level.NORMAL) {
+            samplesAbove = 0;
+            if (++samplesBelow >= RECOVER_SAMPLES) {
+                samplesBelow = 0;
+                level = levels[level.ordinal() - 1];
+                recoveries.increment();
+                System.out.printf("%s load %.2f, easing to: %s%n", name, current, level);
+            }
+        } else {
+            samplesAbove = 0;
+            samplesBelow = 0;
+        }
+    }
+
+    Level getLevel() {
+        return level;
+    }
+
+    public boolean sendSpectatorFrame(long tick) {
+        int divisor = level.compareTo(Level.SHED_PLAYERS) >= 0 ? 8 : level == Level.SHED_SPECTATORS ? 4 : 1;
+        return keep(tick, divisor, spectatorFramesShed);
+    }
+
+    public boolean sendPlayerSnapshot(long tick) {
+        return keep(tick, level.compareTo(Level.SHED_PLAYERS) >= 0 ? 2 : 1, playerSnapshotsShed);
+    }
+
+    public boolean coalesceInputs() {
+        return level.compareTo(Level.COALESCE_INPUTS) >= 0;
+    }
+
+    void recordCoalesced(int inputs) {
+        if (inputs > 0) {
+            inputsCoalesced.add(inputs);
+        }
+    }
+
+    public boolean acceptMatches() {
+        if (level == Level.REFUSE_MATCHES) {
+            matchesRefused.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean keep(long tick, int divisor, LongAdder shed) {
+        if (divisor == 1 || tick % divisor == 0) {
+            return true;
+        }
+        shed.increment();
+        return false;
+    }
+}
@@ -0,0 +1,645 @@
+package pong;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Dedicated headless server: players queue, get paired by rating and ping, and play in pooled rooms.
+// With -Dpong.coordinator=host:port it also runs as a cluster node: it reports load to the
+// coordinator and hosts the matches placed on it (-Dpong.advertiseHost, -Dpong.node.capacity).
+// On shutdown running matches are migrated instead of ended: each room is frozen, its checkpoint
+// goes to a node picked by the coordinator (or -Dpong.drainTo=host:port), and the players follow.
+// Nodes only send and accept migrations carrying the same -Dpong.migrationKey.
+// Usage: java pong.LobbyServer [port]
+public class LobbyServer {
+    static final int DEFAULT_PORT = 3100;
+
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private static final long SWEEP_INTERVAL_MS = 100;
+    private static final long DRAIN_WAIT_MS = 2000;
+
+    private final int port;
+    private ServerSocket serverSocket;
+    // Gateway links (-Dpong.linkPort); no link listener unless it is set
+    private final int linkPort;
+    private ServerSocket linkServerSocket;
+
+    private final ServerIoMode ioMode = ServerIoMode.fromProperty();
+    private final ExecutorService connectionExecutor = ioMode.newConnectionExecutor();
+    // Room ticks share the timer-wheel scheduler instead of one executor per match
+    private final RoomScheduler roomScheduler = RoomScheduler.shared();
+    private final LoadGovernor loadGovernor = new LoadGovernor("lobby", roomScheduler::getLoad);
+    private final ScheduledExecutorService matcher = Executors.newSingleThreadScheduledExecutor();
+
+    private final MatchQueue<LobbyPlayer> queue = new MatchQueue<>();
+    private final RoomPool roomPool;
+    private final Map<Long, Room> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom tokenRandom = new SecureRandom();
+    private final MatchStore matchStore = MatchStore.openDefault();
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private ClusterAgent clusterAgent;
+    private volatile boolean draining = false;
+    // Shared by the nodes of a cluster; without one this node neither sends nor accepts migrations
+    private final byte[] migrationKey = migrationKey();
+    // Wall-clock time from the last tick on the old node to the first live tick here
+    private final Histogram migrationFreezeMicros = new Histogram();
+
+    // A connected player, queued or in a room
+    private final class LobbyPlayer {
+        final PlayerConnection connection;
+        final String name;
+        final int rating;
+        MatchQueue.Ticket<LobbyPlayer> ticket;
+        volatile Room room;
+        volatile Room.Slot slot;
+
+        LobbyPlayer(PlayerConnection connection, String name, int rating) {
+            this.connection = connection;
+            this.name = name;
+            this.rating = rating;
+        }
+
+        void onMessage(Object message) {
+            if (message instanceof Heartbeat heartbeat) {
+                if (!heartbeat.reply) {
+                    Heartbeat pong = heartbeat.toReply(System.nanoTime());
+                    Room current = room;
+                    pong.serverTick = current != null ? current.getTick() : 0;
+                    pong.serverTickNanos = current != null ? current.getTickStartNanos() : 0;
+                    try {
+                        connection.send(pong);
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            } else if (message instanceof PlayerInput playerInput) {
+                connection.onAck(playerInput.ackTick);
+                Room current = room;
+                // A room that migrated away may already host another match
+                if (current != null && slot.connection == connection) {
+                    current.onInput(slot, playerInput);
+                }
+            }
+        }
+
+        void onDisconnect() {
+            Room current = room;
+            if (current != null) {
+                current.onDisconnect(slot, connection);
+            } else if (ticket != null && queue.cancel(ticket)) {
+                System.out.println(name + " left the queue");
+            }
+        }
+    }
+
+    public LobbyServer(int port) {
+        this.port = port;
+        this.linkPort = Integer.getInteger("pong.linkPort", 0);
+        this.roomPool = new RoomPool(64, ioMode, connectionExecutor, loadGovernor);
+        Metrics.gauge("lobby.queue.size", queue::size);
+        Metrics.gauge("lobby.rooms.active", roomPool::getActiveCount);
+        roomPool.arena.registerMetrics("lobby.rooms.parked");
+        Metrics.gauge("lobby.migration.freeze.p99.ms", () -> migrationFreezeMicros.percentile(99) / 1000.0);
+        Metrics.gauge("lobby.migration.freeze.max.ms", () -> migrationFreezeMicros.max() / 1000.0);
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        if (linkPort > 0) {
+            linkServerSocket = new ServerSocket(linkPort);
+        }
+        running.set(true);
+        System.out.println("Lobby server started. Port: " + port
+                + (linkPort > 0 ? ", gateway links: " + linkPort : "") + " (" + ioMode + " connection I/O)");
+
+        connectionExecutor.execute(this::acceptLoop);
+        if (linkServerSocket != null) {
+            connectionExecutor.execute(this::linkAcceptLoop);
+        }
+        matcher.scheduleAtFixedRate(this::sweepQueue, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Metrics.startReporter(matcher);
+        loadGovernor.start(matcher);
+        MatchAnalytics.shared().exportTo(Path.of(System.getProperty("pong.dataDir", "pong-data"), "analytics.csv"));
+
+        String coordinator = System.getProperty("pong.coordinator");
+        if (coordinator != null) {
+            NodeHello hello = new NodeHello(System.getProperty("pong.advertiseHost", "localhost"), port,
+                    Integer.getInteger("pong.node.capacity", 256));
+            clusterAgent = new ClusterAgent(coordinator, hello, this::loadReport, this::hostAssignment);
+            clusterAgent.start(matcher, connectionExecutor);
+        }
+    }
+
+    // Gateways multiplex their players over a few links; each stream is served like a socket
+    private void linkAcceptLoop() {
+        while (running.get()) {
+            try {
+                Socket socket = linkServerSocket.accept();
+                MuxLink link = new MuxLink(socket, "lobby.link");
+                connectionExecutor.execute(link::flushLoop);
+                connectionExecutor.execute(() -> serveLink(link));
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Link error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serveLink(MuxLink link) {
+        System.out.println("Gateway link from " + link.getRemoteAddress());
+        Map<Integer, MuxConnection> streams = new ConcurrentHashMap<>();
+        link.readLoop(new MuxLink.Handler() {
+            @Override
+            public void onOpen(int streamId) {
+                MuxConnection stream = new MuxConnection(link, streamId);
+                streams.put(streamId, stream);
+                connectionExecutor.execute(() -> serveConnection(stream));
+            }
+
+            @Override
+            public void onMessage(int streamId, Object message) {
+                MuxConnection stream = streams.get(streamId);
+                if (stream != null) {
+                    stream.deliver(message);
+                }
+            }
+
+            @Override
+            public void onClose(int streamId) {
+                MuxConnection stream = streams.remove(streamId);
+                if (stream != null) {
+                    stream.remoteClosed();
+                }
+            }
+        });
+        for (MuxConnection stream : streams.values()) {
+            stream.remoteClosed();
+        }
+        System.out.println("Gateway link from " + link.getRemoteAddress() + " closed");
+    }
+
+    private void acceptLoop() {
+        while (running.get()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionExecutor.execute(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Connection error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        PlayerConnection connection;
+        try {
+            connection = new PlayerConnection(socket);
+        } catch (IOException e) {
+            System.err.println("Handshake error: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        serveConnection(connection);
+    }
+
+    // Direct sockets and gateway streams alike
+    private void serveConnection(PlayerConnection connection) {
+        LobbyPlayer player;
+        try {
+            Object first = connection.readObject(HANDSHAKE_TIMEOUT_MS);
+            if (first instanceof Hello hello) {
+                player = resume(connection, hello.sessionToken);
+            } else if (first instanceof QueueRequest request) {
+                player = joinQueue(connection, request);
+            } else if (first instanceof RoomMigration migration) {
+                serveMigrations(connection, migration);
+                return;
+            } else {
+                player = null;
+            }
+            if (player == null) {
+                connection.close();
+                return;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Handshake error: " + e.getMessage());
+            connection.close();
+            return;
+        }
+
+        player.connection.guardInputs();
+        player.connection.readLoop(player::onMessage);
+        player.onDisconnect();
+    }
+
+    private LobbyPlayer resume(PlayerConnection connection, long token) throws IOException {
+        Room room = sessions.get(token);
+        Room.Slot slot = room != null ? room.slotForToken(token) : null;
+        if (slot == null) {
+            connection.send(new SessionInfo(0, false));
+            return null;
+        }
+        LobbyPlayer player = new LobbyPlayer(connection, slot.playerName, slot.rating);
+        player.room = room;
+        player.slot = slot;
+        room.attach(slot, connection, true);
+        System.out.println("Room " + room.id + ": " + slot.playerName + " resumed");
+        return player;
+    }
+
+    private LobbyPlayer joinQueue(PlayerConnection connection, QueueRequest request) throws IOException, ClassNotFoundException {
+        if (!loadGovernor.acceptMatches()) {
+            // Rooms already running keep their budget; the client sees a refused session
+            connection.send(new SessionInfo(0, false));
+            return null;
+        }
+        // One heartbeat round trip puts the player in a ping bucket
+        long sentAt = System.nanoTime();
+        connection.send(Heartbeat.ping(sentAt));
+        Object reply;
+        do {
+            reply = connection.readObject(HANDSHAKE_TIMEOUT_MS);
+        } while (!(reply instanceof Heartbeat heartbeat && heartbeat.reply));
+        double rttMs = (System.nanoTime() - sentAt) / 1_000_000.0;
+
+        String name = request.playerName == null || request.playerName.isBlank() ? "Player" : request.playerName;
+        LobbyPlayer player = new LobbyPlayer(connection, name, request.rating);
+        player.ticket = new MatchQueue.Ticket<>(player, request.rating, MatchQueue.pingBucketFor(rttMs), System.nanoTime());
+        System.out.printf("%s queued (rating %d, rtt %.1f ms)%n", name, request.rating, rttMs);
+
+        MatchQueue.Ticket<LobbyPlayer> opponent = queue.enqueue(player.ticket);
+        if (opponent != null) {
+            startMatch(opponent.getOwner(), player);
+        }
+        return player;
+    }
+
+    // Retries long waiters; matches are started outside the queue lock
+    private void sweepQueue() {
+        try {
+            List<LobbyPlayer> pairs = new ArrayList<>();
+            queue.sweep(System.nanoTime(), (a, b) -> {
+                pairs.add(a.getOwner());
+                pairs.add(b.getOwner());
+            });
+            for (int i = 0; i < pairs.size(); i += 2) {
+                startMatch(pairs.get(i), pairs.get(i + 1));
+            }
+        } catch (Exception e) {
+            System.err.println("Matchmaking error: " + e.getMessage());
+        }
+    }
+
+    private void startMatch(LobbyPlayer leftPlayer, LobbyPlayer rightPlayer) {
+        Room room = openRoom(leftPlayer.name, leftPlayer.rating, newToken(), rightPlayer.name, rightPlayer.rating, newToken());
+        joinRoom(leftPlayer, room, room.getLeft(), rightPlayer);
+        joinRoom(rightPlayer, room, room.getRight(), leftPlayer);
+        Metrics.counter("lobby.matches").increment();
+        System.out.println("Room " + room.id + ": " + leftPlayer.name + " vs " + rightPlayer.name);
+    }
+
+    // A match placed here by the coordinator; both players arrive with Hello and their token
+    private int hostAssignment(RoomAssignment assignment) {
+        if (!running.get() || draining || loadGovernor.getLevel() == LoadGovernor.Level.REFUSE_MATCHES
+                || sessions.containsKey(assignment.leftToken) || sessions.containsKey(assignment.rightToken)) {
+            return 0;
+        }
+        Room room = openRoom(assignment.leftName, assignment.leftRating, assignment.leftToken,
+                assignment.rightName, assignment.rightRating, assignment.rightToken);
+        Metrics.counter("lobby.matches.assigned").increment();
+        System.out.println("Room " + room.id + " (cluster match " + assignment.matchId + "): "
+                + assignment.leftName + " vs " + assignment.rightName);
+        return room.id;
+    }
+
+    // Slots wait for their players under the reconnect grace period, so the tick can start right away
+    private Room openRoom(String leftName, int leftRating, long leftToken, String rightName, int rightRating, long rightToken) {
+        Room room = roomPool.acquire();
+        room.start(leftName, leftRating, leftToken,
+                rightName, rightRating, rightToken, record -> releaseRoom(room, leftToken, rightToken, record));
+        sessions.put(leftToken, room);
+        sessions.put(rightToken, room);
+        room.setTickHandle(roomScheduler.scheduleAtFixedRate(room::tick, 0, 16, TimeUnit.MILLISECONDS));
+        return room;
+    }
+
+    private NodeLoad loadReport() {
+        return new NodeLoad(roomPool.getActiveCount(), roomScheduler.getLoad(),
+                !draining && loadGovernor.getLevel() != LoadGovernor.Level.REFUSE_MATCHES);
+    }
+
+    // Continues a match frozen on another node; its players arrive with Hello and their tokens.
+    // An empty checkpoint is the sender's connection probe and is only answered.
+    // Another node draining; more migrations may follow on the same connection. Each must carry
+    // the migration key, and only the first may be an empty probe - anything else ends the connection.
+    private void serveMigrations(PlayerConnection connection, RoomMigration first) {
+        AtomicBoolean probed = new AtomicBoolean(false);
+        if (!adoptRoom(connection, first, probed)) {
+            connection.close();
+            return;
+        }
+        connection.readLoop(message -> {
+            if (!(message instanceof RoomMigration next) || !adoptRoom(connection, next, probed)) {
+                connection.close();
+            }
+        });
+    }
+
+    // False when the migration is refused outright
+    private boolean adoptRoom(PlayerConnection connection, RoomMigration migration, AtomicBoolean probed) {
+        if (migrationKey == null || migration.key == null || !MessageDigest.isEqual(migrationKey, migration.key)) {
+            Metrics.counter("lobby.migrations.refused").increment();
+            System.err.println("Refused a migration from " + connection.getRemoteAddress() + ": wrong key");
+            return false;
+        }
+        if (migration.checkpoint.length == 0 && probed.getAndSet(true)) {
+            Metrics.counter("lobby.migrations.refused").increment();
+            return false;
+        }
+        int roomId = 0;
+        if (migration.checkpoint.length > 0 && running.get() && !draining) {
+            Room room = roomPool.acquire();
+            try {
+                room.restore(migration.checkpoint,
+                        record -> releaseRoom(room, room.getLeft().sessionToken, room.getRight().sessionToken, record),
+                        freezeMicros -> onMigrationResumed(room, freezeMicros));
+                sessions.put(room.getLeft().sessionToken, room);
+                sessions.put(room.getRight().sessionToken, room);
+                room.setTickHandle(roomScheduler.scheduleAtFixedRate(room::tick, 0, 16, TimeUnit.MILLISECONDS));
+                roomId = room.id;
+            } catch (RuntimeException e) {
+                System.err.println("Cannot restore migrated room: " + e.getMessage());
+                roomPool.release(room);
+            }
+        } else if (migration.checkpoint.length == 0) {
+            primeMigrationPath();
+        }
+        try {
+            connection.send(new RoomReady(migration.matchId, roomId));
+        } catch (IOException e) {
+            connection.close();
+        }
+        // Logged after the reply - the match is frozen until the sender hears back
+        if (roomId != 0) {
+            Metrics.counter("lobby.migrations.in").increment();
+            System.out.println("Room " + roomId + ": adopted match from another node");
+        }
+        return true;
+    }
+
+    // Runs checkpoint, restore and the migration messages once on a scratch room so the first real
+    // migration does not spend its freeze window loading classes and running cold code
+    private void primeMigrationPath() {
+        Room scratch = new Room(0, ioMode, connectionExecutor, loadGovernor);
+        scratch.start("", 0, 1, "", 0, 2, record -> { });
+        byte[] checkpoint = scratch.freeze();
+        scratch.restore(checkpoint, record -> { }, freezeMicros -> { });
+        scratch.freeze();
+        scratch.handedOff();
+        try (ObjectOutputStream out = new ObjectOutputStream(OutputStream.nullOutputStream())) {
+            PlayerProtocol.write(out, new RoomMigration(0, checkpoint, migrationKey));
+            PlayerProtocol.write(out, new RoomReady(0, 0));
+            PlayerProtocol.write(out, new Redirect("", 0, 0));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void onMigrationResumed(Room room, long freezeMicros) {
+        migrationFreezeMicros.record(freezeMicros);
+        System.out.printf("Room %d: resumed after migration, frozen %.1f ms (%.1f ticks)%n",
+                room.id, freezeMicros / 1000.0, freezeMicros / 16_000.0);
+    }
+
+    // Moves every running match to other nodes, one room at a time so each room's freeze covers
+    // only its own transfer. Rooms that cannot be placed keep running here until close.
+    private void drainRooms() {
+        String drainTo = System.getProperty("pong.drainTo");
+        if (clusterAgent == null && drainTo == null) {
+            return;
+        }
+        Set<Room> rooms = new LinkedHashSet<>(sessions.values());
+        if (rooms.isEmpty()) {
+            return;
+        }
+        if (migrationKey == null) {
+            System.err.println("No -Dpong.migrationKey set, the rooms end with this server");
+            return;
+        }
+        draining = true;
+        if (clusterAgent != null) {
+            clusterAgent.report(); // Stop new placements before asking for targets
+        }
+        System.out.println("Draining " + rooms.size() + " rooms...");
+        primeMigrationPath();
+
+        Map<String, PlayerConnection> targets = new HashMap<>();
+        List<PlayerConnection> redirected = new ArrayList<>();
+        int moved = 0;
+        for (Room room : rooms) {
+            String host;
+            int port;
+            if (clusterAgent != null) {
+                PlacementReply placement = clusterAgent.requestPlacement(HANDSHAKE_TIMEOUT_MS);
+                if (placement == null) {
+                    System.err.println("No node can take the remaining rooms, they end with this server");
+                    break;
+                }
+                host = placement.host;
+                port = placement.port;
+            } else {
+                int colon = drainTo.lastIndexOf(':');
+                host = drainTo.substring(0, colon);
+                port = Integer.parseInt(drainTo.substring(colon + 1));
+            }
+            if (migrateRoom(room, host, port, targets, redirected)) {
+                moved++;
+            }
+        }
+        for (PlayerConnection target : targets.values()) {
+            target.close();
+        }
+
+        // Players close their end once they have the redirect; closing first could reset the
+        // connection before the redirect is read
+        long deadline = System.nanoTime() + DRAIN_WAIT_MS * 1_000_000L;
+        for (PlayerConnection connection : redirected) {
+            while (connection.isOpen() && System.nanoTime() < deadline) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        System.out.println("Drained " + moved + " of " + rooms.size() + " rooms");
+    }
+
+    private boolean migrateRoom(Room room, String host, int port, Map<String, PlayerConnection> targets,
+                                List<PlayerConnection> redirected) {
+        String endpoint = host + ":" + port;
+        PlayerConnection target;
+        try {
+            target = targetConnection(host, port, targets);
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Cannot reach " + endpoint + " for room " + room.id + ": " + e.getMessage());
+            return false;
+        }
+
+        // The freeze starts only now that the target is connected and warm
+        long frozenAt = System.nanoTime();
+        byte[] checkpoint = room.freeze();
+        if (checkpoint == null) {
+            return false; // Finished meanwhile
+        }
+        try {
+            target.send(new RoomMigration(room.id, checkpoint, migrationKey));
+            Object reply = target.readObject(HANDSHAKE_TIMEOUT_MS);
+            if (!(reply instanceof RoomReady ready) || ready.roomId == 0) {
+                throw new IOException(endpoint + " declined the room");
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Migration of room " + room.id + " failed: " + e.getMessage());
+            target.close();
+            targets.remove(endpoint);
+            room.thaw();
+            room.setTickHandle(roomScheduler.scheduleAtFixedRate(room::tick, 0, 16, TimeUnit.MILLISECONDS));
+            return false;
+        }
+
+        addIfConnected(redirected, room.getLeft());
+        addIfConnected(redirected, room.getRight());
+        room.redirect(host, port);
+        long handoffNanos = System.nanoTime() - frozenAt;
+        room.handedOff();
+        sessions.remove(room.getLeft().sessionToken);
+        sessions.remove(room.getRight().sessionToken);
+        roomPool.release(room); // The match record is written by the node that finishes it
+        Metrics.counter("lobby.migrations.out").increment();
+        System.out.printf("Room %d: migrated to %s, handoff %.2f ms, %d byte checkpoint%n",
+                room.id, endpoint, handoffNanos / 1_000_000.0, checkpoint.length);
+        return true;
+    }
+
+    // One connection per target node, opened with an empty migration as a probe so the first
+    // real transfer does not pay for connection setup and stream class loading while frozen
+    private PlayerConnection targetConnection(String host, int port, Map<String, PlayerConnection> targets)
+            throws IOException, ClassNotFoundException {
+        String endpoint = host + ":" + port;
+        PlayerConnection target = targets.get(endpoint);
+        if (target != null && target.isOpen()) {
+            return target;
+        }
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), HANDSHAKE_TIMEOUT_MS);
+        target = new PlayerConnection(socket);
+        try {
+            target.send(new RoomMigration(0, new byte[0], migrationKey));
+            if (!(target.readObject(HANDSHAKE_TIMEOUT_MS) instanceof RoomReady)) {
+                throw new IOException(endpoint + " does not accept migrations");
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            target.close();
+            throw e;
+        }
+        targets.put(endpoint, target);
+        return target;
+    }
+
+    private static void addIfConnected(List<PlayerConnection> connections, Room.Slot slot) {
+        PlayerConnection connection = slot.connection;
+        if (connection != null) {
+            connections.add(connection);
+        }
+    }
+
+    private void joinRoom(LobbyPlayer player, Room room, Room.Slot slot, LobbyPlayer opponent) {
+        player.slot = slot;
+        player.room = room;
+        try {
+            player.connection.send(new MatchFound(room.id, slot.leftSide, opponent.name, opponent.rating));
+            room.attach(slot, player.connection, false);
+        } catch (IOException e) {
+            // Left while being matched - the grace period gives them a chance to come back
+            room.onDisconnect(slot, player.connection);
+        }
+    }
+
+    private void releaseRoom(Room room, long leftToken, long rightToken, MatchRecord record) {
+        if (matchStore != null) {
+            matchStore.record(record);
+        }
+        sessions.remove(leftToken);
+        sessions.remove(rightToken);
+        roomPool.release(room);
+    }
+
+    private long newToken() {
+        long token;
+        do {
+            token = tokenRandom.nextLong();
+        } while (token == 0 || sessions.containsKey(token));
+        return token;
+    }
+
+    public void close() {
+        if (running.get()) {
+            drainRooms();
+        }
+        running.set(false);
+        if (clusterAgent != null) {
+            clusterAgent.close();
+        }
+        try {
+            if (serverSocket != null) serverSocket.close();
+            if (linkServerSocket != null) linkServerSocket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+        matcher.shutdownNow();
+        // Only this lobby's rooms; the scheduler is shared with anything else in the JVM
+        for (Room room : new LinkedHashSet<>(sessions.values())) {
+            room.stop();
+        }
+        connectionExecutor.shutdownNow();
+        if (matchStore != null) {
+            matchStore.close();
+        }
+        ReplayRecorder.awaitWrites(2000);
+        System.out.println("Analytics: " + MatchAnalytics.shared().formatReport());
+        System.out.println("Lobby server closed.");
+    }
+
+    private static byte[] migrationKey() {
+        String key = System.getProperty("pong.migrationKey");
+        return key == null || key.isEmpty() ? null : key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        LobbyServer server = new LobbyServer(port);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+}
@@ -0,0 +1,65 @@
+package pong;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+// Starts a coordinator and several game-server nodes as separate JVMs on loopback, for testing
+// cluster mode on one machine. Clients join with -Dpong.lobbyPort=<coordinator port>.
+// Node i listens on basePort + i and keeps its match store under <pong.dataDir>/node-i.
+// Usage: java pong.LocalCluster [nodes] [coordinatorPort] [basePort]
+public class LocalCluster {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int coordinatorPort = args.length > 1 ? Integer.parseInt(args[1]) : ClusterCoordinator.DEFAULT_PORT;
+        int basePort = args.length > 2 ? Integer.parseInt(args[2]) : LobbyServer.DEFAULT_PORT + 10;
+        String dataDir = System.getProperty("pong.dataDir", "pong-data");
+
+        List<Process> processes = new ArrayList<>();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }));
+
+        // The nodes drain into each other on shutdown, which takes a shared migration key
+        String migrationKey = System.getProperty("pong.migrationKey", Long.toHexString(new SecureRandom().nextLong()));
+
+        processes.add(launch("pong.ClusterCoordinator", List.of(), String.valueOf(coordinatorPort)));
+        for (int i = 0; i < nodes; i++) {
+            processes.add(launch("pong.LobbyServer", List.of(
+                    "-Dpong.coordinator=localhost:" + coordinatorPort,
+                    "-Dpong.migrationKey=" + migrationKey,
+                    "-Dpong.advertiseHost=localhost",
+                    "-Dpong.dataDir=" + dataDir + File.separator + "node-" + i), String.valueOf(basePort + i)));
+        }
+        System.out.println("Local cluster: coordinator on " + coordinatorPort + ", " + nodes
+                + " nodes on " + basePort + "-" + (basePort + nodes - 1));
+
+        // Stays up until interrupted; a node that dies is reported but not restarted
+        for (Process process : processes) {
+            int code = process.waitFor();
+            System.err.println("Process " + process.pid() + " exited with " + code);
+        }
+    }
+
+    private static Process launch(String mainClass, List<String> properties, String arg) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Djava.awt.headless=true");
+        // Pass metrics and scheduler settings through to every process
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("pong.") && !name.equals("pong.dataDir")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.addAll(properties);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        command.add(arg);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+}
@@ -1,11 +1,17 @@
 package pong;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class Main {
+    // Where clients connect: -Dpong.host, -Dpong.port, -Dpong.lobbyPort, -Dpong.spectatorPort
+    private static final String HOST = System.getProperty("pong.host", "localhost");
+
     public static void main(String[] args) {
         // Ask user if they want to be Host or Client
-        String[] options = {"Host", "Client"};
+        String[] options = {"Host", "Client", "Find Match", "Spectate", "Replay"};
         int choice = JOptionPane.showOptionDialog(
                 null,
                 "How do you want to connect?",
@@ -23,12 +29,16 @@ public class Main {
             return;
         }
 
-        boolean isHost = (choice == 0);
-
-        if (isHost) {
+        if (choice == 0) {
             startAsHost();
-        } else {
+        } else if (choice == 1) {
             startAsClient();
+        } else if (choice == 2) {
+            startMatchmaking();
+        } else if (choice == 3) {
+            startAsSpectator();
+        } else {
+            startReplay();
         }
     }
 
@@ -84,11 +94,78 @@ public class Main {
         frame.add(gamePanel);
         frame.setVisible(true);
 
-        GameClient client = new GameClient();
+        // Returns immediately - the window shows a demo rally until the host answers
+        GameClient client = new GameClient(HOST, Integer.getInteger("pong.port", 3000), null);
         client.startGameLoop(gameState, gamePanel);
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             client.close();
         }));
     }
+
+    private static void startMatchmaking() {
+        String name = JOptionPane.showInputDialog(null, "Player name:", "Distributed Pong", JOptionPane.QUESTION_MESSAGE);
+        if (name == null) {
+            System.exit(0);
+            return;
+        }
+        int rating = Integer.getInteger("pong.rating", 1200);
+        System.out.println("Joining matchmaking as " + name + "...");
+
+        GamePanel gamePanel = new GamePanel();
+        gamePanel.gameState = new GameState();
+
+        // Create JFrame window
+        JFrame frame = new JFrame("Distributed Pong - " + name);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(800, 600);
+        frame.add(gamePanel);
+        frame.setVisible(true);
+
+        GameClient client = new GameClient(HOST, Integer.getInteger("pong.lobbyPort", LobbyServer.DEFAULT_PORT),
+                new QueueRequest(name, rating));
+        client.startGameLoop(gamePanel.gameState, gamePanel);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            client.close();
+        }));
+    }
+
+    private static void startAsSpectator() {
+        System.out.println("Starting as Spectator...");
+
+        GamePanel gamePanel = new GamePanel();
+        gamePanel.gameState = new GameState();
+
+        // Create JFrame window
+        JFrame frame = new JFrame("Distributed Pong - Spectator");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(800, 600);
+        frame.add(gamePanel);
+        frame.setVisible(true);
+
+        SpectatorClient spectator = new SpectatorClient(HOST, Integer.getInteger("pong.spectatorPort", 3001));
+        spectator.startWatching(gamePanel);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            spectator.close();
+        }));
+    }
+
+    private static void startReplay() {
+        JFileChooser chooser = new JFileChooser(Path.of(System.getProperty("pong.dataDir", "pong-data"), "replays").toFile());
+        chooser.setFileFilter(new FileNameExtensionFilter("Match replays", "replay"));
+        if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) {
+            System.exit(0);
+            return;
+        }
+        try {
+            ReplayArchive archive = ReplayArchive.open(chooser.getSelectedFile().toPath());
+            new ReplayViewer(archive).show();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Cannot open replay: " + e.getMessage(), "Distributed Pong",
+                    JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+    }
 }
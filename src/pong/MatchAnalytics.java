@@ -0,0 +1,347 @@
+package pong;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Gameplay statistics off the tick path. Simulations publish primitive events into an
+// AnalyticsRing (see GameState); one background thread folds them into per-match aggregates and
+// into fixed time windows across all matches. Queries and the CSV export read the aggregates
+// under a lock the tick threads never touch.
+public class MatchAnalytics {
+    // Event types; a and b per type
+    static final int MATCH_START = 1; // -
+    static final int PADDLE_HIT = 2;  // side (0 left, 1 right), -
+    static final int SCORE = 3;       // scoring side, |vx| << 16 | |vy| at the moment of scoring
+    static final int PADDLE_IDLE = 4; // side, ticks the paddle stood still before moving again
+    static final int MATCH_END = 5;   // -
+
+    private static final long WINDOW_NANOS = Long.getLong("pong.analytics.windowMs", 10_000) * 1_000_000L;
+    private static final int WINDOWS_KEPT = 6;
+    private static final int FINISHED_KEPT = 256;
+    private static final int DRAIN_BATCH = 4096;
+    private static final long IDLE_PARK_NANOS = 5_000_000L;
+
+    private static final MatchAnalytics shared = new MatchAnalytics(1 << 16);
+
+    // Running totals of one match
+    static final class MatchStats {
+        final long matchId;
+        final int[] hits = new int[2];
+        final int[] points = new int[2];
+        final long[] idleTicks = new long[2];
+        int rallies;
+        long rallyHits;
+        int longestRally;
+        long rallyTicks;
+        double scoreSpeedSum;
+        boolean finished;
+        // Rally in progress
+        int currentRallyHits;
+        long rallyStartTick;
+
+        MatchStats(long matchId) {
+            this.matchId = matchId;
+        }
+
+        // Share of balls reaching a paddle that it returned
+        double hitRate(int side) {
+            int faced = hits[side] + points[1 - side];
+            return faced == 0 ? 0 : hits[side] / (double) faced;
+        }
+
+        MatchStats copy() {
+            MatchStats copy = new MatchStats(matchId);
+            System.arraycopy(hits, 0, copy.hits, 0, 2);
+            System.arraycopy(points, 0, copy.points, 0, 2);
+            System.arraycopy(idleTicks, 0, copy.idleTicks, 0, 2);
+            copy.rallies = rallies;
+            copy.rallyHits = rallyHits;
+            copy.longestRally = longestRally;
+            copy.rallyTicks = rallyTicks;
+            copy.scoreSpeedSum = scoreSpeedSum;
+            copy.finished = finished;
+            return copy;
+        }
+    }
+
+    // Aggregates over every match for one time window
+    static final class Window {
+        final long startMillis;
+        long events;
+        int matchesStarted;
+        int matchesFinished;
+        long hits;
+        long points;
+        int rallies;
+        long rallyHits;
+        int longestRally;
+        long rallyTicks;
+        double scoreSpeedSum;
+        long idleStretches;
+        long idleTicks;
+
+        Window(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        void add(Window other) {
+            events += other.events;
+            matchesStarted += other.matchesStarted;
+            matchesFinished += other.matchesFinished;
+            hits += other.hits;
+            points += other.points;
+            rallies += other.rallies;
+            rallyHits += other.rallyHits;
+            longestRally = Math.max(longestRally, other.longestRally);
+            rallyTicks += other.rallyTicks;
+            scoreSpeedSum += other.scoreSpeedSum;
+            idleStretches += other.idleStretches;
+            idleTicks += other.idleTicks;
+        }
+
+        double meanRallyHits() {
+            return rallies == 0 ? 0 : rallyHits / (double) rallies;
+        }
+
+        double meanRallySeconds() {
+            return rallies == 0 ? 0 : rallyTicks * LinkStats.TICK_NANOS / 1e9 / rallies;
+        }
+
+        // Every point is a ball some paddle failed to return
+        double hitRate() {
+            return hits + points == 0 ? 0 : hits / (double) (hits + points);
+        }
+
+        double meanScoreSpeed() {
+            return points == 0 ? 0 : scoreSpeedSum / points;
+        }
+
+        double meanIdleSeconds() {
+            return idleStretches == 0 ? 0 : idleTicks * LinkStats.TICK_NANOS / 1e9 / idleStretches;
+        }
+
+        String toCsv() {
+            return String.format("%d,%d,%d,%d,%d,%d,%.2f,%d,%.2f,%.3f,%.2f,%.2f", startMillis, events,
+                    matchesStarted, matchesFinished, hits, rallies, meanRallyHits(), longestRally,
+                    meanRallySeconds(), hitRate(), meanScoreSpeed(), meanIdleSeconds());
+        }
+    }
+
+    static final String CSV_HEADER = "windowStartMillis,events,matchesStarted,matchesFinished,hits,rallies,"
+            + "meanRallyHits,longestRally,meanRallySeconds,hitRate,meanScoreSpeed,meanIdleSeconds";
+
+    private final AnalyticsRing ring;
+    private final AtomicLong nextMatchId = new AtomicLong(1);
+    private Thread consumer;
+
+    // Consumer-owned state, read by queries under the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, MatchStats> live = new HashMap<>();
+    private final Map<Long, MatchStats> finished = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, MatchStats> eldest) {
+            return size() > FINISHED_KEPT;
+        }
+    };
+    private final ArrayDeque<Window> windows = new ArrayDeque<>(); // Closed windows, newest last
+    private Window current = new Window(System.currentTimeMillis());
+    private long windowStartNanos = System.nanoTime();
+    private volatile Path exportPath;
+
+    private final AnalyticsRing.Handler apply = this::apply;
+
+    public MatchAnalytics(int ringCapacity) {
+        this.ring = new AnalyticsRing(ringCapacity);
+    }
+
+    static MatchAnalytics shared() {
+        return shared;
+    }
+
+    AnalyticsRing ring() {
+        return ring;
+    }
+
+    // Points the state's events at this pipeline under a new match id; starts the consumer on first use
+    public void track(GameState state) {
+        startConsumer();
+        state.trackAnalytics(ring, nextMatchId.getAndIncrement());
+    }
+
+    private synchronized void startConsumer() {
+        if (consumer != null) {
+            return;
+        }
+        consumer = new Thread(this::consumeLoop, "match-analytics");
+        consumer.setDaemon(true);
+        consumer.start();
+        if (this != shared) {
+            return; // Benchmarks and tools run their own pipelines; the gauges describe the server's
+        }
+        Metrics.gauge("analytics.dropped", ring::getDropped);
+        Metrics.gauge("analytics.backlog", ring::getBacklog);
+        Metrics.gauge("analytics.window.rally.hits", () -> recent(1).meanRallyHits());
+        Metrics.gauge("analytics.window.hitRate", () -> recent(1).hitRate());
+        Metrics.gauge("analytics.window.scoreSpeed", () -> recent(1).meanScoreSpeed());
+        Metrics.gauge("analytics.window.idle.s", () -> recent(1).meanIdleSeconds());
+    }
+
+    // Closed windows are appended here as CSV lines
+    public void exportTo(Path path) {
+        this.exportPath = path;
+    }
+
+    private void consumeLoop() {
+        while (true) {
+            int drained;
+            lock.lock();
+            try {
+                drained = ring.drain(apply, DRAIN_BATCH);
+                rotateIfDue();
+            } finally {
+                lock.unlock();
+            }
+            if (drained == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // Consumer thread, under the lock
+    private void apply(int type, long matchId, long tick, int a, int b) {
+        current.events++;
+        MatchStats match = live.get(matchId);
+        if (match == null) {
+            if (type == MATCH_END) {
+                return;
+            }
+            match = new MatchStats(matchId);
+            match.rallyStartTick = tick;
+            live.put(matchId, match);
+        }
+        if (type == MATCH_START) {
+            match.rallyStartTick = tick;
+            current.matchesStarted++;
+        } else if (type == PADDLE_HIT) {
+            match.hits[a]++;
+            match.currentRallyHits++;
+            current.hits++;
+        } else if (type == SCORE) {
+            double speed = Math.hypot(b >>> 16, b & 0xFFFF);
+            int rallyHits = match.currentRallyHits;
+            long rallyTicks = tick - match.rallyStartTick;
+            match.points[a]++;
+            match.rallies++;
+            match.rallyHits += rallyHits;
+            match.longestRally = Math.max(match.longestRally, rallyHits);
+            match.rallyTicks += rallyTicks;
+            match.scoreSpeedSum += speed;
+            match.currentRallyHits = 0;
+            match.rallyStartTick = tick;
+            current.points++;
+            current.rallies++;
+            current.rallyHits += rallyHits;
+            current.longestRally = Math.max(current.longestRally, rallyHits);
+            current.rallyTicks += rallyTicks;
+            current.scoreSpeedSum += speed;
+        } else if (type == PADDLE_IDLE) {
+            match.idleTicks[a] += b;
+            current.idleStretches++;
+            current.idleTicks += b;
+        } else if (type == MATCH_END) {
+            match.finished = true;
+            live.remove(matchId);
+            finished.put(matchId, match);
+            current.matchesFinished++;
+        }
+    }
+
+    private void rotateIfDue() {
+        long now = System.nanoTime();
+        if (now - windowStartNanos < WINDOW_NANOS) {
+            return;
+        }
+        Window closed = current;
+        windows.addLast(closed);
+        if (windows.size() > WINDOWS_KEPT) {
+            windows.removeFirst();
+        }
+        current = new Window(System.currentTimeMillis());
+        windowStartNanos = now;
+        export(closed);
+    }
+
+    private void export(Window closed) {
+        Path path = exportPath;
+        if (path == null) {
+            return;
+        }
+        try {
+            boolean fresh = !Files.exists(path);
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (fresh) {
+                    writer.write(CSV_HEADER);
+                    writer.newLine();
+                }
+                writer.write(closed.toCsv());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Analytics export failed: " + e.getMessage());
+        }
+    }
+
+    // Totals of the last n closed windows plus the open one
+    public Window recent(int n) {
+        lock.lock();
+        try {
+            Window total = new Window(current.startMillis);
+            int skip = Math.max(0, windows.size() - n);
+            for (Window window : windows) {
+                if (skip-- > 0) {
+                    continue;
+                }
+                total.add(window);
+            }
+            total.add(current);
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A running or recently finished match, null if unknown
+    public MatchStats match(long matchId) {
+        lock.lock();
+        try {
+            MatchStats stats = live.get(matchId);
+            if (stats == null) {
+                stats = finished.get(matchId);
+            }
+            return stats != null ? stats.copy() : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String formatReport() {
+        Window total = recent(WINDOWS_KEPT);
+        return String.format("matches %d started, %d finished; rallies %d, %.1f hits (longest %d), %.1f s; "
+                        + "hit rate %.2f; speed at score %.1f px/tick; idle stretches %.2f s",
+                total.matchesStarted, total.matchesFinished, total.rallies, total.meanRallyHits(),
+                total.longestRally, total.meanRallySeconds(), total.hitRate(), total.meanScoreSpeed(),
+                total.meanIdleSeconds());
+    }
+}
@@ -0,0 +1,230 @@
+package pong;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Match state for very many rooms, packed off-heap at a fixed stride.
+// A GameState costs a lock, seven atomics and duplicated primitives - several hundred bytes of
+// heap the collector has to trace - for about a dozen numbers. Here a room is a handle (slot
+// index) into direct buffers allocated a chunk at a time, and freed handles are reused. Both
+// step through EntityWorld, so a match can move between the two through the checkpoint format
+// (store/load) without a visible difference. The lobby parks rooms with neither player
+// connected here (RoomPool, Room.park); bots, snapshots and replays still read a GameState, so
+// a room takes one back as soon as anything needs to see its match.
+// Allocation and freeing are thread-safe; a live handle belongs to the one thread that ticks it.
+public class MatchArena {
+    static final int STRIDE = 64;
+    private static final int CHUNK_SLOTS = 1024;
+
+    // Slot layout
+    private static final int BALL_X = 0;
+    private static final int BALL_Y = 4;
+    private static final int PREV_BALL_X = 8;
+    private static final int PREV_BALL_Y = 12;
+    private static final int VELOCITY_X = 16;
+    private static final int VELOCITY_Y = 20;
+    private static final int PADDLE_LEFT_Y = 24;
+    private static final int PADDLE_RIGHT_Y = 28;
+    private static final int SCORE_LEFT = 32;
+    private static final int SCORE_RIGHT = 36;
+    private static final int PAUSED = 40;
+    private static final int TICK = 48;
+    private static final int RNG = 56;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private int[] freeHandles = new int[CHUNK_SLOTS];
+    private int freeCount = 0;
+    private int nextHandle = 0;
+    private final AtomicInteger live = new AtomicInteger();
+    private final ThreadLocal<EntityWorld> stepWorld = ThreadLocal.withInitial(EntityWorld::classic);
+
+    // A new match in the state GameState.resetGame() leaves, serving with the given seed
+    public int allocate(long seed) {
+        int handle;
+        lock.lock();
+        try {
+            if (freeCount > 0) {
+                handle = freeHandles[--freeCount];
+            } else {
+                handle = nextHandle++;
+                if (handle / CHUNK_SLOTS == chunks.length) {
+                    ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+                    grown[chunks.length] = ByteBuffer.allocateDirect(CHUNK_SLOTS * STRIDE).order(ByteOrder.nativeOrder());
+                    chunks = grown;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        live.incrementAndGet();
+        reset(handle);
+        seedRandom(handle, seed);
+        return handle;
+    }
+
+    public void free(int handle) {
+        lock.lock();
+        try {
+            if (freeCount == freeHandles.length) {
+                freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+            }
+            freeHandles[freeCount++] = handle;
+        } finally {
+            lock.unlock();
+        }
+        live.decrementAndGet();
+    }
+
+    public void reset(int handle) {
+        ByteBuffer chunk = chunk(handle);
+        int base = base(handle);
+        int paddleCenterY = GameState.GAME_HEIGHT / 2 - GameState.PADDLE_HEIGHT / 2;
+        chunk.putInt(base + BALL_X, GameState.GAME_WIDTH / 2);
+        chunk.putInt(base + BALL_Y, GameState.GAME_HEIGHT / 2);
+        chunk.putInt(base + PREV_BALL_X, 0);
+        chunk.putInt(base + PREV_BALL_Y, 0);
+        chunk.putInt(base + VELOCITY_X, 5);
+        chunk.putInt(base + VELOCITY_Y, 5);
+        chunk.putInt(base + PADDLE_LEFT_Y, paddleCenterY);
+        chunk.putInt(base + PADDLE_RIGHT_Y, paddleCenterY);
+        chunk.putInt(base + SCORE_LEFT, 0);
+        chunk.putInt(base + SCORE_RIGHT, 0);
+        chunk.put(base + PAUSED, (byte) 0);
+        chunk.putLong(base + TICK, 0);
+    }
+
+    public void seedRandom(int handle, long seed) {
+        chunk(handle).putLong(base(handle) + RNG, seed);
+    }
+
+    // One tick in Room's order: both paddle inputs, the ball, then the paddle bounds. The physics
+    // are EntityWorld's, as GameState's are; the slot is copied into this thread's world and back.
+    public void step(int handle, int leftMoveY, int rightMoveY) {
+        ByteBuffer chunk = chunk(handle);
+        int base = base(handle);
+        EntityWorld world = stepWorld.get();
+        world.ballX[0] = chunk.getInt(base + BALL_X);
+        world.ballY[0] = chunk.getInt(base + BALL_Y);
+        world.velocityX[0] = chunk.getInt(base + VELOCITY_X);
+        world.velocityY[0] = chunk.getInt(base + VELOCITY_Y);
+        world.paddlePos[EntityWorld.LEFT] = chunk.getInt(base + PADDLE_LEFT_Y) + leftMoveY;
+        world.paddlePos[EntityWorld.RIGHT] = chunk.getInt(base + PADDLE_RIGHT_Y) + rightMoveY;
+        world.conceded[EntityWorld.LEFT] = chunk.getInt(base + SCORE_RIGHT);
+        world.conceded[EntityWorld.RIGHT] = chunk.getInt(base + SCORE_LEFT);
+        world.rngState = chunk.getLong(base + RNG);
+        world.step();
+
+        chunk.putLong(base + TICK, chunk.getLong(base + TICK) + 1);
+        chunk.putInt(base + BALL_X, world.ballX[0]);
+        chunk.putInt(base + BALL_Y, world.ballY[0]);
+        chunk.putInt(base + PREV_BALL_X, world.prevBallX[0]);
+        chunk.putInt(base + PREV_BALL_Y, world.prevBallY[0]);
+        chunk.putInt(base + VELOCITY_X, world.velocityX[0]);
+        chunk.putInt(base + VELOCITY_Y, world.velocityY[0]);
+        chunk.putInt(base + PADDLE_LEFT_Y, world.paddlePos[EntityWorld.LEFT]);
+        chunk.putInt(base + PADDLE_RIGHT_Y, world.paddlePos[EntityWorld.RIGHT]);
+        chunk.putInt(base + SCORE_LEFT, world.conceded[EntityWorld.RIGHT]);
+        chunk.putInt(base + SCORE_RIGHT, world.conceded[EntityWorld.LEFT]);
+        chunk.putLong(base + RNG, world.rngState);
+    }
+
+    public int getBallX(int handle) {
+        return chunk(handle).getInt(base(handle) + BALL_X);
+    }
+
+    public int getBallY(int handle) {
+        return chunk(handle).getInt(base(handle) + BALL_Y);
+    }
+
+    public int getPaddleLeftY(int handle) {
+        return chunk(handle).getInt(base(handle) + PADDLE_LEFT_Y);
+    }
+
+    public int getPaddleRightY(int handle) {
+        return chunk(handle).getInt(base(handle) + PADDLE_RIGHT_Y);
+    }
+
+    public int getScoreLeft(int handle) {
+        return chunk(handle).getInt(base(handle) + SCORE_LEFT);
+    }
+
+    public int getScoreRight(int handle) {
+        return chunk(handle).getInt(base(handle) + SCORE_RIGHT);
+    }
+
+    public long getTick(int handle) {
+        return chunk(handle).getLong(base(handle) + TICK);
+    }
+
+    public boolean isPaused(int handle) {
+        return chunk(handle).get(base(handle) + PAUSED) != 0;
+    }
+
+    public void setPaused(int handle, boolean paused) {
+        chunk(handle).put(base(handle) + PAUSED, (byte) (paused ? 1 : 0));
+    }
+
+    // GameState.writeCheckpoint's format, so an arena match can migrate like any other
+    public void writeCheckpoint(int handle, ByteBuffer out) {
+        ByteBuffer chunk = chunk(handle);
+        int base = base(handle);
+        for (int offset = BALL_X; offset <= SCORE_RIGHT; offset += 4) {
+            out.putInt(chunk.getInt(base + offset));
+        }
+        out.put(chunk.get(base + PAUSED));
+        out.putLong(chunk.getLong(base + TICK));
+        out.putLong(chunk.getLong(base + RNG));
+    }
+
+    public void readCheckpoint(int handle, ByteBuffer in) {
+        ByteBuffer chunk = chunk(handle);
+        int base = base(handle);
+        for (int offset = BALL_X; offset <= SCORE_RIGHT; offset += 4) {
+            chunk.putInt(base + offset, in.getInt());
+        }
+        chunk.put(base + PAUSED, in.get());
+        chunk.putLong(base + TICK, in.getLong());
+        chunk.putLong(base + RNG, in.getLong());
+    }
+
+    // Moves a match in from the object model, e.g. when its room goes quiet
+    public void store(int handle, GameState state) {
+        ByteBuffer checkpoint = ByteBuffer.allocate(GameState.CHECKPOINT_SIZE);
+        state.writeCheckpoint(checkpoint);
+        checkpoint.flip();
+        readCheckpoint(handle, checkpoint);
+    }
+
+    public void load(int handle, GameState state) {
+        ByteBuffer checkpoint = ByteBuffer.allocate(GameState.CHECKPOINT_SIZE);
+        writeCheckpoint(handle, checkpoint);
+        checkpoint.flip();
+        state.readCheckpoint(checkpoint);
+    }
+
+    public int getLiveCount() {
+        return live.get();
+    }
+
+    // Off-heap bytes reserved, including free slots
+    public long getReservedBytes() {
+        return (long) chunks.length * CHUNK_SLOTS * STRIDE;
+    }
+
+    public void registerMetrics(String prefix) {
+        Metrics.gauge(prefix + ".live", this::getLiveCount);
+        Metrics.gauge(prefix + ".reserved.bytes", this::getReservedBytes);
+    }
+
+    private ByteBuffer chunk(int handle) {
+        return chunks[handle / CHUNK_SLOTS];
+    }
+
+    private static int base(int handle) {
+        return (handle % CHUNK_SLOTS) * STRIDE;
+    }
+}
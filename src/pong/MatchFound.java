@@ -0,0 +1,18 @@
+package pong;
+
+import java.io.Serializable;
+
+// Sent by the lobby when a room was allocated. SessionInfo and a keyframe follow.
+public class MatchFound implements Serializable {
+    int roomId;
+    boolean leftSide;
+    String opponentName;
+    int opponentRating;
+
+    public MatchFound(int roomId, boolean leftSide, String opponentName, int opponentRating) {
+        this.roomId = roomId;
+        this.leftSide = leftSide;
+        this.opponentName = opponentName;
+        this.opponentRating = opponentRating;
+    }
+}
@@ -0,0 +1,182 @@
+package pong;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+// Matchmaking queue indexed by ping bucket and rating.
+// Finding an opponent is a floor/ceiling lookup in a TreeMap - O(log n), no linear scan.
+public class MatchQueue<T> {
+    static final int PING_BUCKETS = 8;
+    static final int PING_BUCKET_MS = 25;
+
+    // Tickets only look at neighbouring ping buckets after waiting this long
+    private static final long CROSS_BUCKET_AFTER_NANOS = 3_000_000_000L;
+    // Tickets younger than this are not revisited by sweep(); enqueue() already tried them
+    private static final long SWEEP_MIN_WAIT_NANOS = 500_000_000L;
+
+    private final int baseWindow;
+    private final int windowGrowthPerSecond;
+
+    // Key: rating in the high bits, sequence in the low bits, so equal ratings keep FIFO order
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final TreeMap<Long, Ticket<T>>[] buckets = new TreeMap[PING_BUCKETS];
+    // Enqueue order for sweep(); matched or cancelled tickets are skipped lazily
+    private final ArrayDeque<Ticket<T>> waitingOrder = new ArrayDeque<>();
+    // Old tickets a sweep could not match, put back ahead of the younger ones in order
+    private final ArrayList<Ticket<T>> unmatched = new ArrayList<>();
+    private long nextSequence = 0;
+    private int size = 0;
+
+    public static final class Ticket<T> {
+        final T owner;
+        final int rating;
+        final int pingBucket;
+        final long enqueuedAtNanos;
+        private long key;
+        private boolean queued;
+
+        public Ticket(T owner, int rating, int pingBucket, long enqueuedAtNanos) {
+            this.owner = owner;
+            this.rating = Math.max(0, rating);
+            this.pingBucket = Math.max(0, Math.min(PING_BUCKETS - 1, pingBucket));
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+
+        public T getOwner() {
+            return owner;
+        }
+    }
+
+    public MatchQueue() {
+        this(50, 50);
+    }
+
+    public MatchQueue(int baseWindow, int windowGrowthPerSecond) {
+        this.baseWindow = baseWindow;
+        this.windowGrowthPerSecond = windowGrowthPerSecond;
+        for (int i = 0; i < PING_BUCKETS; i++) {
+            buckets[i] = new TreeMap<>();
+        }
+    }
+
+    public static int pingBucketFor(double rttMs) {
+        return (int) Math.min(PING_BUCKETS - 1, Math.max(0, rttMs / PING_BUCKET_MS));
+    }
+
+    // Pairs the ticket right away when possible and returns the opponent, otherwise queues it
+    public synchronized Ticket<T> enqueue(Ticket<T> ticket) {
+        Ticket<T> opponent = findOpponent(ticket, ticket.enqueuedAtNanos);
+        if (opponent != null) {
+            removeInternal(opponent);
+            return opponent;
+        }
+        ticket.key = ((long) ticket.rating << 32) | (nextSequence++ & 0xFFFFFFFFL);
+        ticket.queued = true;
+        buckets[ticket.pingBucket].put(ticket.key, ticket);
+        waitingOrder.addLast(ticket);
+        size++;
+        return null;
+    }
+
+    public synchronized boolean cancel(Ticket<T> ticket) {
+        if (!ticket.queued) {
+            return false;
+        }
+        removeInternal(ticket);
+        return true;
+    }
+
+    // Retries tickets that have waited long enough for their window to widen
+    public synchronized int sweep(long now, BiConsumer<Ticket<T>, Ticket<T>> onMatch) {
+        int matches = 0;
+        int pending = waitingOrder.size();
+        for (int i = 0; i < pending; i++) {
+            Ticket<T> ticket = waitingOrder.pollFirst();
+            if (!ticket.queued) {
+                continue; // Already matched or cancelled
+            }
+            if (now - ticket.enqueuedAtNanos < SWEEP_MIN_WAIT_NANOS) {
+                waitingOrder.addFirst(ticket); // Everything after it is younger
+                break;
+            }
+            Ticket<T> opponent = findOpponent(ticket, now);
+            if (opponent != null) {
+                removeInternal(ticket);
+                removeInternal(opponent);
+                onMatch.accept(ticket, opponent);
+                matches++;
+            } else {
+                unmatched.add(ticket);
+            }
+        }
+        for (int i = unmatched.size() - 1; i >= 0; i--) {
+            waitingOrder.addFirst(unmatched.get(i));
+        }
+        unmatched.clear();
+        return matches;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private Ticket<T> findOpponent(Ticket<T> ticket, long now) {
+        int window = windowFor(ticket, now);
+        Ticket<T> best = closestInBucket(ticket, ticket.pingBucket, window, now);
+        if (now - ticket.enqueuedAtNanos >= CROSS_BUCKET_AFTER_NANOS) {
+            for (int neighbour = ticket.pingBucket - 1; neighbour <= ticket.pingBucket + 1; neighbour += 2) {
+                if (neighbour < 0 || neighbour >= PING_BUCKETS) {
+                    continue;
+                }
+                Ticket<T> candidate = closestInBucket(ticket, neighbour, window, now);
+                if (candidate != null && (best == null
+                        || Math.abs(candidate.rating - ticket.rating) < Math.abs(best.rating - ticket.rating))) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    private Ticket<T> closestInBucket(Ticket<T> ticket, int bucket, int window, long now) {
+        TreeMap<Long, Ticket<T>> map = buckets[bucket];
+        if (map.isEmpty()) {
+            return null;
+        }
+        // Search around the ticket's rating; strict bounds skip the ticket itself when it is queued
+        long probe = ticket.queued ? ticket.key : ((long) ticket.rating << 32);
+        Map.Entry<Long, Ticket<T>> below = map.lowerEntry(probe);
+        Map.Entry<Long, Ticket<T>> above = ticket.queued ? map.higherEntry(probe) : map.ceilingEntry(probe);
+        Ticket<T> best = null;
+        int bestDiff = Integer.MAX_VALUE;
+        if (below != null) {
+            best = below.getValue();
+            bestDiff = ticket.rating - best.rating;
+        }
+        if (above != null && above.getValue().rating - ticket.rating < bestDiff) {
+            best = above.getValue();
+            bestDiff = best.rating - ticket.rating;
+        }
+        // Either side's window may accept - the longer waiter is the less picky one
+        if (best == null || bestDiff > Math.max(window, windowFor(best, now))) {
+            return null;
+        }
+        return best;
+    }
+
+    private int windowFor(Ticket<T> ticket, long now) {
+        long waitedMs = Math.max(0, now - ticket.enqueuedAtNanos) / 1_000_000L;
+        return (int) Math.min(Integer.MAX_VALUE, baseWindow + waitedMs * windowGrowthPerSecond / 1000);
+    }
+
+    private void removeInternal(Ticket<T> ticket) {
+        if (ticket.queued) {
+            buckets[ticket.pingBucket].remove(ticket.key);
+            ticket.queued = false;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package pong;
+
+// A finished match as stored in the match history
+public class MatchRecord {
+    final long matchId;
+    final long endedAtMillis;
+    final String leftName;
+    final String rightName;
+    final int scoreLeft;
+    final int scoreRight;
+    final long ticks;
+
+    public MatchRecord(long matchId, long endedAtMillis, String leftName, String rightName,
+                       int scoreLeft, int scoreRight, long ticks) {
+        this.matchId = matchId;
+        this.endedAtMillis = endedAtMillis;
+        this.leftName = leftName;
+        this.rightName = rightName;
+        this.scoreLeft = scoreLeft;
+        this.scoreRight = scoreRight;
+        this.ticks = ticks;
+    }
+
+    // Same record with the id assigned by the store
+    MatchRecord withId(long id) {
+        return new MatchRecord(id, endedAtMillis, leftName, rightName, scoreLeft, scoreRight, ticks);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + matchId + " " + leftName + " " + scoreLeft + " - " + scoreRight + " " + rightName;
+    }
+}
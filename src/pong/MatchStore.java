@@ -0,0 +1,407 @@
+package pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+// Embedded append-only store for finished matches.
+// Records go to segmented log files through one writer thread that batches writes and
+// fsyncs once per batch. Per-player history and the leaderboard are kept in memory and
+// updated incrementally as records become durable.
+public class MatchStore {
+    private static final long SEGMENT_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_BATCH = 256;
+    private static final int MAX_NAME_BYTES = 64;
+    private static final String SEGMENT_PREFIX = "matches-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // Record: [int payloadLength][int crc32][payload]
+    // Payload: long id, long endedAt, int scoreLeft, int scoreRight, long ticks, name left, name right
+    private static final int RECORD_HEADER = 8;
+
+    private final Path directory;
+    private FileChannel segment;
+    private int segmentIndex;
+    private long segmentSize;
+    private long nextMatchId = 1;
+
+    private final BlockingQueue<MatchRecord> pending = new LinkedBlockingQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final Thread writerThread;
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    // In-memory indexes, rebuilt from the log on startup
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final Map<String, List<MatchRecord>> historyByPlayer = new HashMap<>();
+    private final Map<String, Standing> standings = new HashMap<>();
+    private final TreeSet<Standing> leaderboard = new TreeSet<>(Standing.ORDER);
+
+    public static final class Standing {
+        // Most wins first, then goal difference, then name
+        static final Comparator<Standing> ORDER = Comparator
+                .comparingInt((Standing s) -> -s.wins)
+                .thenComparingInt(s -> -(s.pointsFor - s.pointsAgainst))
+                .thenComparing(s -> s.name);
+
+        final String name;
+        int wins;
+        int losses;
+        int draws;
+        int pointsFor;
+        int pointsAgainst;
+
+        Standing(String name) {
+            this.name = name;
+        }
+
+        Standing copy() {
+            Standing copy = new Standing(name);
+            copy.wins = wins;
+            copy.losses = losses;
+            copy.draws = draws;
+            copy.pointsFor = pointsFor;
+            copy.pointsAgainst = pointsAgainst;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return name + "  " + wins + "W " + losses + "L " + draws + "D";
+        }
+    }
+
+    public MatchStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        replay();
+        writerThread = new Thread(this::writeLoop, "match-store-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public static MatchStore openDefault() {
+        Path directory = Path.of(System.getProperty("pong.dataDir", "pong-data"));
+        try {
+            return new MatchStore(directory);
+        } catch (IOException e) {
+            System.err.println("Match store unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Never blocks - safe to call from the tick thread
+    public void record(MatchRecord record) {
+        if (running.get()) {
+            pending.offer(record);
+        }
+    }
+
+    // Newest first
+    public List<MatchRecord> history(String player, int limit) {
+        indexLock.readLock().lock();
+        try {
+            List<MatchRecord> matches = historyByPlayer.get(player);
+            if (matches == null) {
+                return List.of();
+            }
+            List<MatchRecord> result = new ArrayList<>(Math.min(limit, matches.size()));
+            for (int i = matches.size() - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(matches.get(i));
+            }
+            return result;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    public List<Standing> topN(int n) {
+        indexLock.readLock().lock();
+        try {
+            List<Standing> result = new ArrayList<>(n);
+            for (Standing standing : leaderboard) {
+                if (result.size() == n) {
+                    break;
+                }
+                result.add(standing.copy());
+            }
+            return result;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<MatchRecord> batch = new ArrayList<>(MAX_BATCH);
+        Backoff backoff = new Backoff();
+        while (running.get() || !pending.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    MatchRecord first = pending.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    pending.drainTo(batch, MAX_BATCH - 1);
+                }
+                List<MatchRecord> written = writeBatch(batch);
+                applyToIndexes(written);
+                batch.clear();
+                backoff.reset();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                // writeBatch rolled back; the same batch is retried until the disk recovers
+                System.err.println("Match store write error: " + e.getMessage());
+                if (!running.get()) {
+                    System.err.println("Match store closing: " + (batch.size() + pending.size()) + " records not written");
+                    break;
+                }
+                try {
+                    // In short steps, so close() does not wait out a long delay
+                    long resumeAt = System.currentTimeMillis() + backoff.nextDelayMs();
+                    while (running.get() && System.currentTimeMillis() < resumeAt) {
+                        Thread.sleep(100);
+                    }
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    // One write and one fsync for the whole group. On failure the segment is truncated back to the
+    // last whole batch and the ids are handed out again, so a torn record never hides later ones.
+    private List<MatchRecord> writeBatch(List<MatchRecord> batch) throws IOException {
+        long firstId = nextMatchId;
+        List<MatchRecord> written = new ArrayList<>(batch.size());
+        writeBuffer.clear();
+        for (MatchRecord record : batch) {
+            MatchRecord stored = record.withId(nextMatchId++);
+            byte[] payload = encode(stored);
+            ensureCapacity(RECORD_HEADER + payload.length);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            writeBuffer.putInt(payload.length);
+            writeBuffer.putInt((int) crc.getValue());
+            writeBuffer.put(payload);
+            written.add(stored);
+        }
+        writeBuffer.flip();
+
+        long committedSize = -1;
+        try {
+            if (segment == null || segmentSize + writeBuffer.remaining() > SEGMENT_BYTES) {
+                rollSegment();
+            }
+            committedSize = segmentSize;
+            while (writeBuffer.hasRemaining()) {
+                segmentSize += segment.write(writeBuffer);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            nextMatchId = firstId;
+            if (committedSize >= 0) {
+                rollBack(committedSize);
+            }
+            throw e;
+        }
+        return written;
+    }
+
+    private void rollBack(long size) {
+        try {
+            segment.truncate(size);
+            segmentSize = size;
+        } catch (IOException e) {
+            // Leave the torn tail to startup recovery and write the retry to a fresh segment
+            System.err.println("Match store cannot truncate " + segmentPath(segmentIndex) + ": " + e.getMessage());
+            closeSegment();
+            segmentIndex++;
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            System.err.println("Match store closing error: " + e.getMessage());
+        }
+        segment = null;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (writeBuffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(writeBuffer.capacity() * 2, writeBuffer.position() + bytes));
+            writeBuffer.flip();
+            larger.put(writeBuffer);
+            writeBuffer = larger;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (segment != null) {
+            closeSegment();
+            segmentIndex++;
+        }
+        segment = FileChannel.open(segmentPath(segmentIndex),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = segment.size();
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    private void applyToIndexes(List<MatchRecord> records) {
+        indexLock.writeLock().lock();
+        try {
+            for (MatchRecord record : records) {
+                historyByPlayer.computeIfAbsent(record.leftName, k -> new ArrayList<>()).add(record);
+                historyByPlayer.computeIfAbsent(record.rightName, k -> new ArrayList<>()).add(record);
+                updateStanding(record.leftName, record.scoreLeft, record.scoreRight);
+                updateStanding(record.rightName, record.scoreRight, record.scoreLeft);
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    // Remove, update, re-insert keeps the TreeSet ordered in O(log n)
+    private void updateStanding(String name, int scored, int conceded) {
+        Standing standing = standings.get(name);
+        if (standing == null) {
+            standing = new Standing(name);
+            standings.put(name, standing);
+        } else {
+            leaderboard.remove(standing);
+        }
+        if (scored > conceded) {
+            standing.wins++;
+        } else if (scored < conceded) {
+            standing.losses++;
+        } else {
+            standing.draws++;
+        }
+        standing.pointsFor += scored;
+        standing.pointsAgainst += conceded;
+        leaderboard.add(standing);
+    }
+
+    private static byte[] encode(MatchRecord record) {
+        byte[] left = nameBytes(record.leftName);
+        byte[] right = nameBytes(record.rightName);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 8 + 4 + 4 + 8 + 2 + left.length + 2 + right.length);
+        buffer.putLong(record.matchId);
+        buffer.putLong(record.endedAtMillis);
+        buffer.putInt(record.scoreLeft);
+        buffer.putInt(record.scoreRight);
+        buffer.putLong(record.ticks);
+        buffer.putShort((short) left.length);
+        buffer.put(left);
+        buffer.putShort((short) right.length);
+        buffer.put(right);
+        return buffer.array();
+    }
+
+    private static MatchRecord decode(ByteBuffer buffer) {
+        long id = buffer.getLong();
+        long endedAt = buffer.getLong();
+        int scoreLeft = buffer.getInt();
+        int scoreRight = buffer.getInt();
+        long ticks = buffer.getLong();
+        String left = readName(buffer);
+        String right = readName(buffer);
+        return new MatchRecord(id, endedAt, left, right, scoreLeft, scoreRight, ticks);
+    }
+
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = (name == null ? "" : name).getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_NAME_BYTES ? bytes : Arrays.copyOf(bytes, MAX_NAME_BYTES);
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Rebuilds indexes from all segments and cuts off a torn record at the end of the last one
+    private void replay() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .forEach(segments::add);
+        }
+
+        List<MatchRecord> records = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+            long validEnd = 0;
+            while (data.remaining() >= RECORD_HEADER) {
+                int length = data.getInt();
+                int expectedCrc = data.getInt();
+                if (length <= 0 || length > data.remaining()) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                data.get(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                MatchRecord record = decode(ByteBuffer.wrap(payload));
+                records.add(record);
+                nextMatchId = Math.max(nextMatchId, record.matchId + 1);
+                validEnd = data.position();
+            }
+            if (validEnd < data.capacity()) {
+                System.err.println("Match store: truncating damaged tail of " + path.getFileName());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(validEnd);
+                }
+            }
+            segmentIndex = parseIndex(path);
+        }
+        applyToIndexes(records);
+        if (!records.isEmpty()) {
+            System.out.println("Match store: loaded " + records.size() + " matches from " + directory);
+        }
+    }
+
+    private static int parseIndex(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Flushes everything recorded so far
+    public void close() {
+        running.set(false);
+        try {
+            writerThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (segment != null) segment.close();
+        } catch (IOException e) {
+            System.err.println("Match store closing error: " + e.getMessage());
+        }
+    }
+}
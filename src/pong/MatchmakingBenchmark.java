@@ -0,0 +1,69 @@
+package pong;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Pairing throughput and per-arrival latency of MatchQueue with a large standing queue.
+// Usage: java pong.MatchmakingBenchmark [queuedPlayers] [arrivals]
+public class MatchmakingBenchmark {
+    public static void main(String[] args) {
+        int queued = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int arrivals = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        for (int round = 0; round < 3; round++) {
+            run(queued, arrivals, round == 2);
+        }
+    }
+
+    private static void run(int queued, int arrivals, boolean report) {
+        Random random = new Random(42);
+        // Rating window of 1 so the standing queue does not pair with itself
+        MatchQueue<Integer> queue = new MatchQueue<>(1, 0);
+        long now = System.nanoTime();
+
+        // Standing queue: ratings spaced 4 apart within each ping bucket
+        int[] waitingRatings = new int[queued];
+        int[] waitingBuckets = new int[queued];
+        for (int i = 0; i < queued; i++) {
+            waitingBuckets[i] = i % MatchQueue.PING_BUCKETS;
+            waitingRatings[i] = (i / MatchQueue.PING_BUCKETS) * 4;
+            queue.enqueue(new MatchQueue.Ticket<>(i, waitingRatings[i], waitingBuckets[i], now));
+        }
+
+        // Arrivals alternate: one pairs with a waiting player (exact rating), the next takes its place
+        long[] latencies = new long[arrivals];
+        int pairs = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < arrivals; i++) {
+            int victim = random.nextInt(queued);
+            long t0 = System.nanoTime();
+            MatchQueue.Ticket<Integer> opponent;
+            if ((i & 1) == 0) {
+                opponent = queue.enqueue(new MatchQueue.Ticket<>(-1, waitingRatings[victim], waitingBuckets[victim], now));
+            } else {
+                opponent = queue.enqueue(new MatchQueue.Ticket<>(i, waitingRatings[victim] + 2, waitingBuckets[victim], now));
+            }
+            latencies[i] = System.nanoTime() - t0;
+            if (opponent != null) {
+                pairs++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Sweep cost when every queued ticket is a long waiter
+        long sweepStart = System.nanoTime();
+        queue.sweep(now + 1_000_000_000L, (a, b) -> { });
+        long sweepNanos = System.nanoTime() - sweepStart;
+
+        if (report) {
+            Arrays.sort(latencies);
+            System.out.printf("standing queue: %d, arrivals: %d, pairs: %d%n", queued, arrivals, pairs);
+            System.out.printf("throughput: %.0f arrivals/s (%.0f pairs/s)%n",
+                    arrivals / (elapsed / 1e9), pairs / (elapsed / 1e9));
+            System.out.printf("enqueue latency: p50=%d ns p99=%d ns p99.9=%d ns max=%.3f ms%n",
+                    latencies[arrivals / 2], latencies[(int) (arrivals * 0.99)],
+                    latencies[(int) (arrivals * 0.999)], latencies[arrivals - 1] / 1e6);
+            System.out.printf("full sweep of %d waiting tickets: %.3f ms%n", queue.size(), sweepNanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package pong;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Process-wide registry of named counters and gauges
+public final class Metrics {
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    // Re-registering a name replaces the previous supplier
+    public static void gauge(String name, DoubleSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static void remove(String name) {
+        counters.remove(name);
+        gauges.remove(name);
+    }
+
+    public static Map<String, Double> snapshot() {
+        Map<String, Double> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, (double) counter.sum()));
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsDouble()));
+        return values;
+    }
+
+    public static String format() {
+        StringBuilder sb = new StringBuilder();
+        snapshot().forEach((name, value) -> sb.append(name).append('=')
+                .append(String.format("%.2f", value)).append('\n'));
+        return sb.toString();
+    }
+
+    // Logs all metrics periodically when -Dpong.metricsLogMs is set
+    public static ScheduledFuture<?> startReporter(ScheduledExecutorService executor) {
+        long periodMs = Long.getLong("pong.metricsLogMs", 0);
+        if (periodMs <= 0) {
+            return null;
+        }
+        return executor.scheduleAtFixedRate(() -> System.out.print(format()),
+                periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,153 @@
+package pong;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// A player reached through the gateway: one stream on a shared MuxLink.
+// The server treats it like any other PlayerConnection; sends are encoded into the link's batch.
+public class MuxConnection extends PlayerConnection {
+    private static final Object CLOSED = new Object();
+
+    private final MuxLink link;
+    private final int streamId;
+    // Filled by the link's reader thread
+    private final BlockingQueue<Object> inbox = new LinkedBlockingQueue<>();
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    public MuxConnection(MuxLink link, int streamId) {
+        this.link = link;
+        this.streamId = streamId;
+        guard = new InputGuard();
+    }
+
+    // Guarded from the first message, on the link's reader thread - see deliver()
+    @Override
+    public void guardInputs() {
+    }
+
+    // On the link's reader thread: the stream's rate limits and move clamp, as a socket's readLoop
+    // applies them. A stream that floods is closed; the link and its other players carry on.
+    void deliver(Object message) {
+        long now = System.nanoTime();
+        byte tag = message instanceof PlayerInput ? PlayerProtocol.TAG_INPUT
+                : message instanceof Heartbeat ? PlayerProtocol.TAG_HEARTBEAT : PlayerProtocol.TAG_OBJECT;
+        boolean admitted = guard.admitTag(tag, now);
+        if (!guard.isAbusive() && message instanceof PlayerInput input) {
+            guard.vet(input, now);
+        }
+        if (guard.isAbusive()) {
+            if (open.get()) {
+                System.err.println("Dropping " + getRemoteAddress() + ": flooding ("
+                        + guard.getRejectedCount() + " messages rejected)");
+                close();
+            }
+            return;
+        }
+        if (admitted) {
+            inbox.offer(message);
+        }
+    }
+
+    // The gateway closed the stream, or the whole link went down
+    void remoteClosed() {
+        if (open.getAndSet(false)) {
+            inbox.offer(CLOSED);
+        }
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return link.getRemoteAddress() + "#" + streamId;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    @Override
+    public Object readObject(int timeoutMs) throws IOException {
+        Object message;
+        try {
+            message = inbox.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        if (message == null) {
+            throw new SocketTimeoutException("Read timed out");
+        }
+        if (message == CLOSED) {
+            throw new EOFException();
+        }
+        return message;
+    }
+
+    @Override
+    public void readLoop(Consumer<Object> handler) {
+        while (open.get()) {
+            try {
+                Object message = inbox.take();
+                if (message == CLOSED) {
+                    break;
+                }
+                handler.accept(message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        close();
+    }
+
+    @Override
+    public void send(Object message) throws IOException {
+        if (!open.get()) {
+            throw new IOException("Stream closed");
+        }
+        link.send(streamId, message);
+    }
+
+    // Sends never block on the player's socket, so no writer thread is needed
+    @Override
+    public void startWriter(Executor executor, Consumer<PlayerConnection> onFailure) {
+    }
+
+    @Override
+    public void offerSnapshot(Snapshot snapshot) {
+        try {
+            send(snapshot);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // The gateway paces each player on its side of the link
+    @Override
+    public void sendSnapshot(GameState state, long appliedInput) throws IOException {
+        Snapshot snapshot = new Snapshot();
+        snapshot.copyFrom(state);
+        snapshot.appliedInput = appliedInput;
+        send(snapshot);
+    }
+
+    @Override
+    public void close() {
+        if (!open.getAndSet(false)) {
+            return;
+        }
+        inbox.offer(CLOSED);
+        try {
+            link.close(streamId);
+        } catch (IOException ignored) {
+            // Link already down - the gateway drops all its streams anyway
+        }
+    }
+}
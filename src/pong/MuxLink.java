@@ -0,0 +1,185 @@
+package pong;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// One long-lived connection carrying many player streams between the gateway and a game server.
+// Frame: [byte kind][int streamId] followed, for DATA, by one PlayerProtocol message.
+// Senders only encode into a buffer; a flusher thread writes whatever has accumulated in one
+// go, so a tick's worth of snapshots (or a burst of inputs) costs one write instead of one each.
+public class MuxLink {
+    static final byte KIND_OPEN = 1;
+    static final byte KIND_DATA = 2;
+    static final byte KIND_CLOSE = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // How long the flusher lets a batch grow after the first frame arrives
+    private static final long LINGER_NANOS = Long.getLong("pong.link.lingerMicros", 100) * 1000L;
+
+    // Callbacks run on the link's reader thread and must not block
+    interface Handler {
+        void onOpen(int streamId);
+
+        void onMessage(int streamId, Object message);
+
+        void onClose(int streamId);
+    }
+
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+    // The same per-message limits as a player socket: the link listener is reachable by anyone
+    private final PlayerConnection.FrameLimit frameLimit;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition dataPending = writeLock.newCondition();
+    private boolean pending = false;
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    private final LongAdder framesSent;
+    private final LongAdder flushes;
+
+    public MuxLink(Socket socket, String metricsPrefix) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        socket.setSendBufferSize(4 * BUFFER_SIZE);
+        out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        out.flush();
+        frameLimit = new PlayerConnection.FrameLimit(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+        in = new ObjectInputStream(frameLimit);
+        in.setObjectInputFilter(PlayerConnection.OBJECT_FILTER);
+        framesSent = Metrics.counter(metricsPrefix + ".frames");
+        flushes = Metrics.counter(metricsPrefix + ".flushes");
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    public void open(int streamId) throws IOException {
+        writeFrame(KIND_OPEN, streamId, null);
+    }
+
+    public void send(int streamId, Object message) throws IOException {
+        writeFrame(KIND_DATA, streamId, message);
+    }
+
+    public void close(int streamId) throws IOException {
+        writeFrame(KIND_CLOSE, streamId, null);
+    }
+
+    private void writeFrame(byte kind, int streamId, Object message) throws IOException {
+        writeLock.lock();
+        try {
+            if (!open.get()) {
+                throw new IOException("Link closed");
+            }
+            out.writeByte(kind);
+            out.writeInt(streamId);
+            if (message != null) {
+                PlayerProtocol.encode(out, message);
+            }
+            framesSent.increment();
+            if (!pending) {
+                pending = true;
+                dataPending.signal();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Runs until the link closes; one flush per batch of frames
+    public void flushLoop() {
+        while (open.get()) {
+            writeLock.lock();
+            try {
+                while (!pending && open.get()) {
+                    dataPending.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                writeLock.unlock();
+            }
+            if (LINGER_NANOS > 0) {
+                LockSupport.parkNanos(LINGER_NANOS);
+            }
+            writeLock.lock();
+            try {
+                if (pending && open.get()) {
+                    out.flush();
+                    pending = false;
+                    flushes.increment();
+                }
+            } catch (IOException e) {
+                if (open.get()) {
+                    System.err.println("Link write error: " + e.getMessage());
+                }
+                break;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        close();
+    }
+
+    // Blocks until the peer disconnects; frames are handed to the handler in order
+    public void readLoop(Handler handler) {
+        while (open.get()) {
+            try {
+                frameLimit.startFrame();
+                byte kind = in.readByte();
+                int streamId = in.readInt();
+                if (kind == KIND_DATA) {
+                    handler.onMessage(streamId, PlayerProtocol.read(in, null, null));
+                } else if (kind == KIND_OPEN) {
+                    handler.onOpen(streamId);
+                } else if (kind == KIND_CLOSE) {
+                    handler.onClose(streamId);
+                } else {
+                    throw new StreamCorruptedException("Unknown link frame: " + kind);
+                }
+            } catch (EOFException | SocketException e) {
+                break;
+            } catch (IOException | ClassNotFoundException e) {
+                if (open.get() && !frameLimit.atEnd()) {
+                    System.err.println("Link read error: " + e.getMessage());
+                }
+                break;
+            }
+        }
+        close();
+    }
+
+    public void close() {
+        if (!open.getAndSet(false)) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            dataPending.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Arrival times of the chunks that crossed one proxied connection, per direction.
+// File: [8 MAGIC][long rttMicros][int count][long atMicros...] for UP, then the same for DOWN
+// Replaying a trace does not resend its bytes - the harness's own traffic differs - but holds
+// new traffic back the way the captured link held its traffic: wherever a captured gap was
+// longer than the steady cadence, the link is closed for the excess and opens again at the
+// late arrival. Stalls, bursts after them and jitter carry over; order is kept, as on TCP.
+public final class NetTrace {
+    static final byte[] MAGIC = "PONGTRC1".getBytes(StandardCharsets.US_ASCII);
+    static final int UP = 0;   // Client to server
+    static final int DOWN = 1; // Server to client
+
+    // TCP retransmission timeout floor on Linux; a lost segment stalls the stream at least this long
+    private static final long MIN_RTO_MICROS = 200_000;
+    private static final long CADENCE_MICROS = 16_000;
+
+    final long rttMicros;
+    private final long[][] atMicros = {new long[256], new long[256]};
+    private final int[] count = new int[2];
+
+    public NetTrace(long rttMicros) {
+        this.rttMicros = rttMicros;
+    }
+
+    // One relay thread per direction
+    void record(int direction, long at) {
+        if (count[direction] == atMicros[direction].length) {
+            atMicros[direction] = Arrays.copyOf(atMicros[direction], count[direction] * 2);
+        }
+        atMicros[direction][count[direction]++] = at;
+    }
+
+    public int getCount(int direction) {
+        return count[direction];
+    }
+
+    public long getDurationMicros() {
+        long up = count[UP] > 0 ? atMicros[UP][count[UP] - 1] : 0;
+        long down = count[DOWN] > 0 ? atMicros[DOWN][count[DOWN] - 1] : 0;
+        return Math.max(up, down);
+    }
+
+    public void save(Path path) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(MAGIC.length + 8 + 8 + 8 * (count[UP] + count[DOWN]));
+        out.put(MAGIC);
+        out.putLong(rttMicros);
+        for (int direction = UP; direction <= DOWN; direction++) {
+            out.putInt(count[direction]);
+            for (int i = 0; i < count[direction]; i++) {
+                out.putLong(atMicros[direction][i]);
+            }
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.write(path, out.array());
+    }
+
+    public static NetTrace load(Path path) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a network trace: " + path);
+        }
+        NetTrace trace = new NetTrace(in.getLong());
+        for (int direction = UP; direction <= DOWN; direction++) {
+            int n = in.getInt();
+            for (int i = 0; i < n; i++) {
+                trace.record(direction, in.getLong());
+            }
+        }
+        return trace;
+    }
+
+    // A link with the given round trip, one chunk per tick each way, and per chunk:
+    // - jitter: extra one-way delay, half-normal with the given mean deviation
+    // - loss: the stream stalls until the retransmission, max(200 ms, rtt + 4 * jitter) per RFC 6298
+    // - reordering: the stream waits 1-3 chunks for the displaced segment
+    public static NetTrace synthetic(int seconds, double rttMs, double jitterMs, double lossPercent,
+                                     double reorderPercent, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        NetTrace trace = new NetTrace((long) (rttMs * 1000));
+        long rtoMicros = Math.max(MIN_RTO_MICROS, (long) ((rttMs + 4 * jitterMs) * 1000));
+        long chunks = seconds * 1_000_000L / CADENCE_MICROS;
+        for (int direction = UP; direction <= DOWN; direction++) {
+            long last = 0;
+            for (long i = 1; i <= chunks; i++) {
+                double lateMicros = Math.abs(random.nextGaussian()) * jitterMs * 1000 * Math.sqrt(Math.PI / 2);
+                double roll = random.nextDouble() * 100;
+                if (roll < lossPercent) {
+                    lateMicros += rtoMicros;
+                } else if (roll < lossPercent + reorderPercent) {
+                    lateMicros += (1 + random.nextInt(3)) * CADENCE_MICROS;
+                }
+                last = Math.max(last, i * CADENCE_MICROS + (long) lateMicros);
+                trace.record(direction, last);
+            }
+        }
+        return trace;
+    }
+
+    public Schedule schedule(int direction) {
+        return new Schedule(Arrays.copyOf(atMicros[direction], count[direction]), rttMicros / 2);
+    }
+
+    // Release times for one direction of a shaped link. The trace loops if the run outlasts it.
+    public static final class Schedule {
+        private final long[] arrival;
+        private final long[] closedFrom; // The link is closed over [closedFrom[i], arrival[i])
+        private final long durationMicros;
+        private final long oneWayMicros;
+        private long lastRelease = 0;
+
+        Schedule(long[] arrival, long oneWayMicros) {
+            this.arrival = arrival;
+            this.oneWayMicros = oneWayMicros;
+            this.closedFrom = new long[arrival.length];
+            this.durationMicros = arrival.length > 0 ? arrival[arrival.length - 1] + 1 : 1;
+            long[] gaps = new long[Math.max(0, arrival.length - 1)];
+            for (int i = 1; i < arrival.length; i++) {
+                gaps[i - 1] = arrival[i] - arrival[i - 1];
+            }
+            long[] sorted = gaps.clone();
+            Arrays.sort(sorted);
+            long cadence = sorted.length > 0 ? sorted[sorted.length / 2] : 0;
+            for (int i = 0; i < arrival.length; i++) {
+                long excess = i > 0 ? Math.max(0, gaps[i - 1] - cadence) : 0;
+                closedFrom[i] = arrival[i] - excess;
+            }
+        }
+
+        // Micros since the connection opened at which a chunk offered now leaves the far end
+        long release(long offeredMicros) {
+            long lap = offeredMicros / durationMicros * durationMicros;
+            long t = offeredMicros - lap;
+            int i = Arrays.binarySearch(arrival, t);
+            if (i < 0) {
+                i = -i - 1; // First arrival after t
+            }
+            if (i < arrival.length && t >= closedFrom[i]) {
+                t = arrival[i];
+            }
+            lastRelease = Math.max(lastRelease, lap + t + oneWayMicros);
+            return lastRelease;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package pong;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Netcode regression runs: a headless GameServer and GameClient over loopback, through a proxy
+// that shapes both directions by a NetTrace - either captured with TraceProxy or one of the
+// synthetic profiles below. The client's NetcodeScore gives comparable smoothness and latency
+// figures per run; the synthetic profiles are seeded, so two builds see the same link.
+// Usage: java -Djava.awt.headless=true pong.NetcodeHarness [seconds] [file.trace ...]
+public class NetcodeHarness {
+    private static final int BASE_PORT = 3600;
+    private static final int WARMUP_MS = 3000;
+
+    private static final class Profile {
+        final String name;
+        final NetTrace trace;
+
+        Profile(String name, NetTrace trace) {
+            this.name = name;
+            this.trace = trace;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        System.setProperty("pong.dataDir", Files.createTempDirectory("pong-netcode-harness").toString());
+
+        List<Profile> profiles = new ArrayList<>();
+        if (args.length > 1) {
+            for (String file : Arrays.copyOfRange(args, 1, args.length)) {
+                profiles.add(new Profile(Path.of(file).getFileName().toString(), NetTrace.load(Path.of(file))));
+            }
+        } else {
+            int length = seconds + WARMUP_MS / 1000 + 5;
+            profiles.add(new Profile("clean 20ms", NetTrace.synthetic(length, 20, 0, 0, 0, 1)));
+            profiles.add(new Profile("jitter 10ms", NetTrace.synthetic(length, 60, 10, 0, 0, 2)));
+            profiles.add(new Profile("loss 2%", NetTrace.synthetic(length, 60, 2, 2, 0, 3)));
+            profiles.add(new Profile("reorder 2%", NetTrace.synthetic(length, 60, 2, 0, 2, 4)));
+            profiles.add(new Profile("bad wifi", NetTrace.synthetic(length, 80, 20, 1, 1, 5)));
+        }
+
+        List<String[]> details = new ArrayList<>();
+        System.out.printf("%-14s %8s %8s %8s %9s %9s %9s %9s %9s %9s%n", "link", "gap p50", "gap p99", "gap max",
+                "stall/min", "repeat %", "corr p50", "corr p99", "age p50", "age p99");
+        for (int i = 0; i < profiles.size(); i++) {
+            Profile profile = profiles.get(i);
+            NetcodeScore score = run(profile.trace, BASE_PORT + i * 10, seconds);
+            Histogram gap = score.getGapNanos();
+            Histogram correction = score.getCorrectionPx();
+            Histogram age = score.getAgeNanos();
+            System.out.printf("%-14s %8.1f %8.1f %8.1f %9.1f %9.1f %9d %9d %9.1f %9.1f%n", profile.name,
+                    gap.percentile(50) / 1e6, gap.percentile(99) / 1e6, gap.max() / 1e6,
+                    score.getStallsPerMinute(), score.getRepeatedPercent(),
+                    correction.percentile(50), correction.percentile(99),
+                    age.percentile(50) / 1e6, age.percentile(99) / 1e6);
+            details.add(score.formatLines());
+        }
+        System.out.println("(gaps and ages in ms, corrections in px)");
+        for (int i = 0; i < profiles.size(); i++) {
+            System.out.println(profiles.get(i).name + ":");
+            for (String line : details.get(i)) {
+                System.out.println("  " + line);
+            }
+        }
+        System.exit(0); // The server's and client's Swing and scheduler threads are not daemons
+    }
+
+    private static NetcodeScore run(NetTrace trace, int port, int seconds) throws Exception {
+        int proxyPort = port + 5;
+        System.setProperty("pong.port", Integer.toString(port));
+        System.setProperty("pong.spectatorPort", Integer.toString(port + 1));
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        ServerSocket proxy = new ServerSocket(proxyPort);
+        executor.execute(() -> acceptShaped(proxy, port, trace, executor));
+
+        GameServer server = new GameServer();
+        server.startGameLoop(new GameState(), new GamePanel());
+        GameClient client = new GameClient("localhost", proxyPort, null);
+        NetcodeScore score = new NetcodeScore(client.getLinkStats());
+        client.setNetcodeScore(score);
+        client.startGameLoop(new GameState(), new GamePanel());
+        try {
+            Thread.sleep(WARMUP_MS); // Connected, and the clock offset estimate has samples
+            score.reset();
+            Thread.sleep(seconds * 1000L);
+            score.stop();
+            return score;
+        } finally {
+            client.close();
+            server.close();
+            proxy.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void acceptShaped(ServerSocket proxy, int serverPort, NetTrace trace, ExecutorService executor) {
+        try {
+            while (true) {
+                Socket client = proxy.accept();
+                Socket upstream = new Socket("localhost", serverPort);
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                long openedNanos = System.nanoTime();
+                NetTrace.Schedule up = trace.schedule(NetTrace.UP);
+                NetTrace.Schedule down = trace.schedule(NetTrace.DOWN);
+                executor.execute(() -> relay(client, upstream, up, openedNanos));
+                executor.execute(() -> relay(upstream, client, down, openedNanos));
+            }
+        } catch (IOException e) {
+            // Proxy closed
+        }
+    }
+
+    // Copies from -> to, each chunk leaving when the schedule releases it
+    private static void relay(Socket from, Socket to, NetTrace.Schedule schedule, long openedNanos) {
+        BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        Thread sender = Thread.ofVirtual().start(() -> {
+            try {
+                OutputStream out = to.getOutputStream();
+                while (true) {
+                    Chunk chunk = chunks.take();
+                    long wait = chunk.releaseNanos - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    }
+                    out.write(chunk.data);
+                }
+            } catch (IOException | InterruptedException e) {
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        });
+        try {
+            InputStream in = from.getInputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                long offeredMicros = (System.nanoTime() - openedNanos) / 1000;
+                long releaseNanos = openedNanos + schedule.release(offeredMicros) * 1000;
+                chunks.add(new Chunk(releaseNanos, Arrays.copyOf(buffer, read)));
+            }
+        } catch (IOException e) {
+            // Either side closed
+        }
+        sender.interrupt();
+        closeQuietly(from);
+        closeQuietly(to);
+    }
+
+    private static final class Chunk {
+        final long releaseNanos;
+        final byte[] data;
+
+        Chunk(long releaseNanos, byte[] data) {
+            this.releaseNanos = releaseNanos;
+            this.data = data;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
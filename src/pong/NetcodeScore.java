@@ -0,0 +1,160 @@
+package pong;
+
+// Smoothness and latency of the client's snapshot stream, for comparing netcode changes.
+// - gap: time between snapshots arriving at the receiver; stalls are gaps over STALL_MS
+// - repeated: render frames that found no new snapshot and showed the previous one again
+// - correction: per render frame, how far the ball moved from where one tick of motion at the
+//   stream's velocity would put it - a late snapshot shows as a freeze, then a jump
+// - age: how old the server tick was when its snapshot became the rendered state
+public class NetcodeScore {
+    static final long STALL_MS = 100;
+
+    private final LinkStats linkStats;
+    private Histogram gapNanos = new Histogram();
+    private Histogram correctionPx = new Histogram();
+    private Histogram ageNanos = new Histogram();
+    private long snapshots;
+    private long skippedTicks;
+    private long stalls;
+    private long frames;
+    private long repeatedFrames;
+    private long startNanos = System.nanoTime();
+    private long stopNanos = 0;
+
+    // Receiver side
+    private long lastReceivedNanos = 0;
+    private long lastReceivedTick = -1;
+
+    // Render side
+    private long lastTick = -1;
+    private int lastBallX;
+    private int lastBallY;
+    private int lastScore;
+    private double velocityX;
+    private double velocityY;
+    private boolean hasVelocity = false;
+
+    public NetcodeScore(LinkStats linkStats) {
+        this.linkStats = linkStats;
+    }
+
+    // Receiver thread, per snapshot
+    public synchronized void onReceived(long tick, long now) {
+        if (stopNanos != 0) {
+            return;
+        }
+        if (lastReceivedTick >= 0 && tick > lastReceivedTick) {
+            long gap = now - lastReceivedNanos;
+            gapNanos.record(gap);
+            if (gap > STALL_MS * 1_000_000) {
+                stalls++;
+            }
+            skippedTicks += tick - lastReceivedTick - 1;
+            snapshots++;
+        }
+        lastReceivedNanos = now;
+        lastReceivedTick = tick;
+    }
+
+    // EDT, every render frame; fresh when a new snapshot was applied to the state this frame
+    public synchronized void onFrame(GameState state, boolean fresh, long now) {
+        if (stopNanos != 0) {
+            return;
+        }
+        int score = state.scoreLeft + state.scoreRight;
+        if (lastTick < 0 || score != lastScore) {
+            // Nothing to compare with yet, or the ball was served again
+            if (fresh) {
+                remember(state, score);
+                hasVelocity = false;
+            }
+            return;
+        }
+        frames++;
+        if (!fresh) {
+            repeatedFrames++;
+        }
+        int dx = state.ballX - lastBallX;
+        int dy = state.ballY - lastBallY;
+        if (hasVelocity) {
+            correctionPx.record(Math.round(Math.hypot(dx - velocityX, dy - velocityY)));
+        }
+        if (fresh) {
+            long ticks = state.tick - lastTick;
+            if (ticks > 0) {
+                velocityX = dx / (double) ticks;
+                velocityY = dy / (double) ticks;
+                hasVelocity = true;
+            }
+            long tickNanos = linkStats.remoteTickToLocalNanos(state.tick);
+            if (tickNanos >= 0) {
+                ageNanos.record(now - tickNanos);
+            }
+            remember(state, score);
+        }
+    }
+
+    private void remember(GameState state, int score) {
+        lastTick = state.tick;
+        lastBallX = state.ballX;
+        lastBallY = state.ballY;
+        lastScore = score;
+    }
+
+    // Starts a new measurement window, e.g. after warmup
+    public synchronized void reset() {
+        gapNanos = new Histogram();
+        correctionPx = new Histogram();
+        ageNanos = new Histogram();
+        snapshots = 0;
+        skippedTicks = 0;
+        stalls = 0;
+        frames = 0;
+        repeatedFrames = 0;
+        startNanos = System.nanoTime();
+        stopNanos = 0;
+    }
+
+    // Ends the measurement window; what follows (e.g. the client shutting down) is not counted
+    public synchronized void stop() {
+        stopNanos = System.nanoTime();
+    }
+
+    private double minutes() {
+        return ((stopNanos != 0 ? stopNanos : System.nanoTime()) - startNanos) / 60e9;
+    }
+
+    public synchronized String[] formatLines() {
+        double minutes = minutes();
+        return new String[]{
+                String.format("gap        p50 %.1f ms, p99 %.1f ms, max %.1f ms; %.1f stalls/min; %.2f ticks skipped per snapshot",
+                        gapNanos.percentile(50) / 1e6, gapNanos.percentile(99) / 1e6, gapNanos.max() / 1e6,
+                        stalls / minutes, snapshots > 0 ? skippedTicks / (double) snapshots : 0),
+                String.format("frames     %d rendered, %.1f%% repeated", frames, getRepeatedPercent()),
+                String.format("correction p50 %d px, p99 %d px, max %d px",
+                        correctionPx.percentile(50), correctionPx.percentile(99), correctionPx.max()),
+                String.format("age        p50 %.1f ms, p99 %.1f ms", ageNanos.percentile(50) / 1e6,
+                        ageNanos.percentile(99) / 1e6)
+        };
+    }
+
+    public synchronized double getRepeatedPercent() {
+        return frames > 0 ? 100.0 * repeatedFrames / frames : 0;
+    }
+
+    public synchronized double getStallsPerMinute() {
+        return stalls / minutes();
+    }
+
+    public synchronized Histogram getGapNanos() {
+        return gapNanos;
+    }
+
+    public synchronized Histogram getCorrectionPx() {
+        return correctionPx;
+    }
+
+    public synchronized Histogram getAgeNanos() {
+        return ageNanos;
+    }
+}
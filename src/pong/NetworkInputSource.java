@@ -0,0 +1,57 @@
+package pong;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Remote player - inputs are pushed by the connection's reader thread
+public class NetworkInputSource implements InputSource {
+    private final BlockingQueue<PlayerInput> inputQueue = new LinkedBlockingQueue<>();
+    private final LoadGovernor governor;
+
+    public NetworkInputSource() {
+        this(null);
+    }
+
+    public NetworkInputSource(LoadGovernor governor) {
+        this.governor = governor;
+    }
+
+    public boolean offer(PlayerInput playerInput) throws InterruptedException {
+        return inputQueue.offer(playerInput, 100, TimeUnit.MILLISECONDS);
+    }
+
+    // Copies the unapplied backlog, oldest first, without consuming it (room checkpoints)
+    public void copyTo(Collection<PlayerInput> target) {
+        target.addAll(inputQueue);
+    }
+
+    public int size() {
+        return inputQueue.size();
+    }
+
+    // Restores a checkpointed backlog before any connection feeds the source
+    void add(PlayerInput input) {
+        inputQueue.add(input);
+    }
+
+    @Override
+    public PlayerInput nextInput(GameState state) {
+        PlayerInput input = inputQueue.poll();
+        if (input == null || governor == null || !governor.coalesceInputs()) {
+            return input;
+        }
+        // Under overload the backlog collapses into the newest movement, keeping any requests
+        int merged = 0;
+        PlayerInput next;
+        while ((next = inputQueue.poll()) != null) {
+            next.pauseRequest |= input.pauseRequest;
+            next.restartRequest |= input.restartRequest;
+            input = next;
+            merged++;
+        }
+        governor.recordCoalesced(merged);
+        return input;
+    }
+}
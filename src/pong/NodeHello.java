@@ -0,0 +1,17 @@
+package pong;
+
+import java.io.Serializable;
+
+// First message of a game-server node joining the cluster coordinator
+public class NodeHello implements Serializable {
+    // Endpoint players are redirected to
+    String host;
+    int port;
+    int capacity; // Rooms the node is willing to host
+
+    public NodeHello(String host, int port, int capacity) {
+        this.host = host;
+        this.port = port;
+        this.capacity = capacity;
+    }
+}
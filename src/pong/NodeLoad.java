@@ -0,0 +1,16 @@
+package pong;
+
+import java.io.Serializable;
+
+// Periodic load report from a node to the coordinator
+public class NodeLoad implements Serializable {
+    int activeRooms;
+    double tickLoad;    // RoomScheduler.getLoad(), share of the tick budget
+    boolean accepting;  // False while the node's governor refuses matches
+
+    public NodeLoad(int activeRooms, double tickLoad, boolean accepting) {
+        this.activeRooms = activeRooms;
+        this.tickLoad = tickLoad;
+        this.accepting = accepting;
+    }
+}
@@ -0,0 +1,202 @@
+package pong;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Snapshot delivery over a slow link, with and without ack-driven pacing (SendPacer).
+// Two players reach an in-process lobby server through proxies that add a one-way delay and
+// limit the server-to-client direction to a fixed byte rate, like a congested Wi-Fi hop. The
+// proxy records how long each chunk queued at the bottleneck - the latency that buffers add.
+// Players that do not ack get every snapshot in full, as before pacing existed.
+// Usage: java pong.PacingBenchmark [bytesPerSecond] [delayMs] [seconds]
+public class PacingBenchmark {
+    private static final int SERVER_PORT = 3500;
+    private static final int PROXY_PORT = 3510;
+
+    public static void main(String[] args) throws Exception {
+        int bytesPerSecond = args.length > 0 ? Integer.parseInt(args[0]) : 1500;
+        int delayMs = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.setProperty("pong.graceMs", "300");
+        System.setProperty("pong.dataDir", Files.createTempDirectory("pong-pacing-bench").toString());
+
+        LobbyServer server = new LobbyServer(SERVER_PORT);
+        server.start();
+        try {
+            System.out.printf("Link: %d B/s down, %d ms each way, %d s per run%n", bytesPerSecond, delayMs, seconds);
+            System.out.printf("%-9s %12s %10s %14s %14s %14s%n", "acks", "snapshots/s", "bytes/s",
+                    "queue p50 ms", "queue p99 ms", "queue max ms");
+            for (boolean acking : new boolean[]{false, true}) {
+                run(acking, bytesPerSecond, delayMs, seconds);
+                Thread.sleep(1000); // Let the room of the previous run finish
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void run(boolean acking, int bytesPerSecond, int delayMs, int seconds) throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Histogram queueDelay = new Histogram();
+        LongAdder snapshots = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        ServerSocket proxy = new ServerSocket(PROXY_PORT);
+        executor.execute(() -> acceptProxied(proxy, executor, bytesPerSecond, delayMs * 1_000_000L, queueDelay, bytes));
+
+        Socket[] sockets = new Socket[2];
+        for (int i = 0; i < sockets.length; i++) {
+            Socket socket = new Socket("localhost", PROXY_PORT);
+            sockets[i] = socket;
+            int index = i;
+            executor.execute(() -> play(socket, "pacing-" + index, acking, snapshots));
+        }
+        Thread.sleep(3000); // Matched, and the pacer has settled
+        long snapshotsBefore = snapshots.sum();
+        long bytesBefore = bytes.sum();
+        queueDelay.drain();
+        Thread.sleep(seconds * 1000L);
+        Histogram measured = queueDelay.drain();
+        System.out.printf("%-9s %12.1f %10.0f %14.1f %14.1f %14.1f%n", acking ? "on" : "off",
+                (snapshots.sum() - snapshotsBefore) / 2.0 / seconds, (bytes.sum() - bytesBefore) / 2.0 / seconds,
+                measured.percentile(50) / 1e6, measured.percentile(99) / 1e6, measured.max() / 1e6);
+
+        proxy.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+    }
+
+    // A minimal player: queues, acks (or not) on a 16 ms input loop and counts snapshots
+    private static void play(Socket socket, String name, boolean acking, LongAdder snapshots) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+            PlayerProtocol.write(out, new QueueRequest(name, 1200));
+            Snapshot snapshot = new Snapshot();
+            Snapshot base = new Snapshot();
+            long[] lastTick = new long[1];
+            Thread inputs = Thread.ofVirtual().start(() -> {
+                long sequence = 0;
+                try {
+                    while (!socket.isClosed()) {
+                        PlayerInput input = new PlayerInput();
+                        input.sequence = ++sequence;
+                        input.moveY = (sequence & 32) == 0 ? 5 : -5;
+                        input.ackTick = acking ? lastTick[0] : 0;
+                        synchronized (out) {
+                            PlayerProtocol.write(out, input);
+                        }
+                        Thread.sleep(16);
+                    }
+                } catch (IOException | InterruptedException ignored) {
+                }
+            });
+            try {
+                while (true) {
+                    Object message = PlayerProtocol.read(in, snapshot, null, base);
+                    if (message == snapshot) {
+                        lastTick[0] = snapshot.tick;
+                        snapshots.increment();
+                    } else if (message instanceof Heartbeat heartbeat && !heartbeat.reply) {
+                        synchronized (out) {
+                            PlayerProtocol.write(out, heartbeat.toReply(System.nanoTime()));
+                        }
+                    }
+                }
+            } finally {
+                inputs.interrupt();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            // Closed at the end of the run
+        }
+    }
+
+    private static void acceptProxied(ServerSocket proxy, ExecutorService executor, int bytesPerSecond,
+                                      long delayNanos, Histogram queueDelay, LongAdder bytes) {
+        try {
+            while (true) {
+                Socket client = proxy.accept();
+                Socket upstream = new Socket("localhost", SERVER_PORT);
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                executor.execute(() -> relay(client, upstream, 0, delayNanos, null, null));
+                executor.execute(() -> relay(upstream, client, bytesPerSecond, delayNanos, queueDelay, bytes));
+            }
+        } catch (IOException e) {
+            // Proxy closed
+        }
+    }
+
+    // Copies from -> to after delayNanos; with a byte rate, chunks leave no faster than the rate
+    // allows and the wait beyond the delay is recorded as queueing
+    private static void relay(Socket from, Socket to, int bytesPerSecond, long delayNanos,
+                              Histogram queueDelay, LongAdder bytes) {
+        BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        Thread sender = Thread.ofVirtual().start(() -> {
+            try {
+                OutputStream out = to.getOutputStream();
+                long linkFreeAt = 0;
+                while (true) {
+                    Chunk chunk = chunks.take();
+                    long due = chunk.arrivedAt + delayNanos;
+                    if (bytesPerSecond > 0) {
+                        due = Math.max(due, linkFreeAt);
+                        linkFreeAt = due + chunk.data.length * 1_000_000_000L / bytesPerSecond;
+                    }
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    }
+                    out.write(chunk.data);
+                    if (queueDelay != null) {
+                        queueDelay.record(System.nanoTime() - chunk.arrivedAt - delayNanos);
+                        bytes.add(chunk.data.length);
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                closeQuietly(from);
+                closeQuietly(to);
+            }
+        });
+        try {
+            InputStream in = from.getInputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                chunks.add(new Chunk(System.nanoTime(), Arrays.copyOf(buffer, read)));
+            }
+        } catch (IOException e) {
+            // Either side closed
+        }
+        sender.interrupt();
+        closeQuietly(from);
+        closeQuietly(to);
+    }
+
+    private static final class Chunk {
+        final long arrivedAt;
+        final byte[] data;
+
+        Chunk(long arrivedAt, byte[] data) {
+            this.arrivedAt = arrivedAt;
+            this.data = data;
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package pong;
+
+// Local keyboard player reading from the host's GamePanel
+public class PanelInputSource implements InputSource {
+    private final GamePanel gamePanel;
+    private final PlayerInput input = new PlayerInput();
+
+    public PanelInputSource(GamePanel gamePanel) {
+        this.gamePanel = gamePanel;
+    }
+
+    @Override
+    public PlayerInput nextInput(GameState state) {
+        // Pause and restart are wired through the panel callbacks directly
+        input.moveY = gamePanel.getCurrentMoveY();
+        return input;
+    }
+}
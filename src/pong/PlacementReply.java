@@ -0,0 +1,16 @@
+package pong;
+
+import java.io.Serializable;
+
+// Coordinator's answer to PlacementRequest; host is null when no node can take the match
+public class PlacementReply implements Serializable {
+    long requestId;
+    String host;
+    int port;
+
+    public PlacementReply(long requestId, String host, int port) {
+        this.requestId = requestId;
+        this.host = host;
+        this.port = port;
+    }
+}
@@ -0,0 +1,12 @@
+package pong;
+
+import java.io.Serializable;
+
+// Node -> coordinator: pick a node for a match this node is handing off (drain before restart)
+public class PlacementRequest implements Serializable {
+    long requestId;
+
+    public PlacementRequest(long requestId) {
+        this.requestId = requestId;
+    }
+}
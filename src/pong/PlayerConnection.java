@@ -0,0 +1,309 @@
+package pong;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Server side of one client socket
+public class PlayerConnection {
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    private static final LongAdder fullSnapshots = Metrics.counter("net.snapshots.full");
+    private static final LongAdder deltaSnapshots = Metrics.counter("net.snapshots.delta");
+    private static final LongAdder pacedSnapshots = Metrics.counter("net.snapshots.paced");
+    private static final LongAdder snapshotBytes = Metrics.counter("net.snapshots.bytes");
+
+    // Largest message a peer may send (-Dpong.maxFrameBytes); a room migration is the biggest
+    // legitimate one, at a few KB
+    static final int MAX_FRAME_BYTES = Integer.getInteger("pong.maxFrameBytes", 64 * 1024);
+    // What a peer's objects may contain. Only per-object limits: the stream-wide ones (maxbytes,
+    // maxrefs) add up over a session and would end long matches.
+    static final ObjectInputFilter OBJECT_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=8;maxarray=" + MAX_FRAME_BYTES + ";pong.*;java.lang.*;java.util.concurrent.atomic.*;!*");
+
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+    private final FrameLimit frameLimit;
+    // Player connections only (guardInputs); cluster and migration peers are trusted
+    InputGuard guard;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    // Latest snapshot waiting for the writer thread, older ones are dropped
+    private final BlockingQueue<Snapshot> outbox = new ArrayBlockingQueue<>(1);
+
+    // Snapshot pacing from client acks; the estimates are exposed as net.client.<id>.* metrics
+    private final SendPacer pacer = new SendPacer();
+    private final String metricsPrefix = "net.client." + nextId.getAndIncrement();
+    // Guarded by writeLock: the snapshot being written and the last one the client got (delta base)
+    private final Snapshot current = new Snapshot();
+    private final Snapshot lastSent = new Snapshot();
+    private boolean hasSent = false;
+    private boolean metricsRegistered = false;
+
+    public PlayerConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        out = new ObjectOutputStream(socket.getOutputStream());
+        out.flush();
+        frameLimit = new FrameLimit(new BufferedInputStream(socket.getInputStream()));
+        in = new ObjectInputStream(frameLimit);
+        in.setObjectInputFilter(OBJECT_FILTER);
+    }
+
+    // For connections that are a stream on a shared link rather than a socket of their own
+    // (MuxConnection); such subclasses override every method that touches the socket
+    PlayerConnection() {
+        this.socket = null;
+        this.out = null;
+        this.in = null;
+        this.frameLimit = null;
+    }
+
+    // Rate limits and clamps what this connection sends from now on; call before readLoop
+    public void guardInputs() {
+        guard = new InputGuard();
+    }
+
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    // An ack piggybacked on a PlayerInput
+    public void onAck(long tick) {
+        pacer.onAck(tick, System.nanoTime());
+    }
+
+    // Reads a single message, giving up after timeoutMs (used for the handshake)
+    public Object readObject(int timeoutMs) throws IOException, ClassNotFoundException {
+        socket.setSoTimeout(timeoutMs);
+        try {
+            frameLimit.startFrame();
+            return PlayerProtocol.read(in, null, null);
+        } finally {
+            socket.setSoTimeout(0);
+        }
+    }
+
+    // Blocks until the peer disconnects or the stream breaks; never spins on a dead socket
+    public void readLoop(Consumer<Object> handler) {
+        while (open.get()) {
+            try {
+                frameLimit.startFrame();
+                if (guard == null) {
+                    handler.accept(PlayerProtocol.read(in, null, null));
+                    continue;
+                }
+                byte tag = in.readByte();
+                long now = System.nanoTime();
+                boolean admitted = guard.admitTag(tag, now);
+                Object message = null;
+                if (!guard.isAbusive()) {
+                    message = PlayerProtocol.readBody(in, tag, null, null, null);
+                    if (message instanceof PlayerInput input) {
+                        guard.vet(input, now);
+                    }
+                }
+                if (guard.isAbusive()) {
+                    System.err.println("Dropping " + getRemoteAddress() + ": flooding ("
+                            + guard.getRejectedCount() + " messages rejected)");
+                    break;
+                }
+                if (admitted) {
+                    handler.accept(message);
+                }
+            } catch (EOFException | SocketException e) {
+                break; // Peer closed or connection reset
+            } catch (IOException | ClassNotFoundException e) {
+                // A peer that hangs up mid-message leaves the object stream "corrupted"; that is a close too
+                if (open.get() && !frameLimit.atEnd()) {
+                    System.err.println("Input reading error: " + e.getMessage());
+                }
+                break;
+            }
+        }
+        close();
+    }
+
+    public void send(Object message) throws IOException {
+        writeLock.lock();
+        try {
+            PlayerProtocol.write(out, message);
+            if (message instanceof GameState state) {
+                // A keyframe written directly - deltas continue from it
+                current.copyFrom(state);
+                lastSent.copyFrom(current);
+                hasSent = true;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Snapshot from the tick thread (pooled I/O): skipped when the pacer holds this client back,
+    // the next tick brings a newer one anyway. appliedInput is this player's newest applied input.
+    public void sendSnapshot(GameState state, long appliedInput) throws IOException {
+        if (pacer.delayNanos(System.nanoTime()) > 0) {
+            pacedSnapshots.increment();
+            return;
+        }
+        writeSnapshot(state, appliedInput);
+    }
+
+    // Full snapshot, or a delta once the client acks (a client that acks decodes deltas).
+    // A queued Snapshot carries its own applied input.
+    private void writeSnapshot(Object state, long appliedInput) throws IOException {
+        writeLock.lock();
+        try {
+            if (state instanceof GameState gameState) {
+                current.copyFrom(gameState);
+                current.appliedInput = appliedInput;
+            } else {
+                current.copyFrom((Snapshot) state);
+            }
+            if (!metricsRegistered) {
+                pacer.registerMetrics(metricsPrefix); // Only connections that carry a match
+                metricsRegistered = true;
+            }
+            int bytes = -1;
+            if (hasSent && pacer.isAcking()) {
+                bytes = PlayerProtocol.encodeDelta(out, current, lastSent, pacer.getDeltaThreshold());
+            }
+            if (bytes < 0) {
+                PlayerProtocol.encode(out, current);
+                lastSent.copyFrom(current);
+                bytes = PlayerProtocol.SNAPSHOT_SIZE;
+                fullSnapshots.increment();
+            } else {
+                deltaSnapshots.increment();
+            }
+            out.flush();
+            hasSent = true;
+            snapshotBytes.add(bytes);
+            pacer.onSent(current.tick, bytes, System.nanoTime());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Moves snapshot writes off the tick thread onto a dedicated writer. While the pacer holds a
+    // snapshot back, newer ones replace it, so a slow link gets fewer but current snapshots.
+    public void startWriter(Executor executor, Consumer<PlayerConnection> onFailure) {
+        executor.execute(() -> {
+            while (open.get()) {
+                try {
+                    Snapshot state = outbox.poll(100, TimeUnit.MILLISECONDS);
+                    if (state == null) {
+                        continue;
+                    }
+                    long delay;
+                    while ((delay = pacer.delayNanos(System.nanoTime())) > 0 && open.get()) {
+                        LockSupport.parkNanos(delay);
+                        Snapshot newer = outbox.poll();
+                        if (newer != null) {
+                            pacedSnapshots.increment();
+                            state = newer;
+                        }
+                    }
+                    writeSnapshot(state, 0);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (IOException e) {
+                    break;
+                }
+            }
+            close();
+            onFailure.accept(this);
+        });
+    }
+
+    // Never blocks the caller - a writer that is behind only gets the newest snapshot
+    public void offerSnapshot(Snapshot snapshot) {
+        while (!outbox.offer(snapshot)) {
+            outbox.poll();
+        }
+    }
+
+    public void close() {
+        if (!open.getAndSet(false)) {
+            return;
+        }
+        SendPacer.removeMetrics(metricsPrefix);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+    }
+
+    // Counts what the object stream consumes per message and fails it past MAX_FRAME_BYTES.
+    // The object stream reads ahead by up to a block (1 KB), so the limit is that approximate.
+    static final class FrameLimit extends FilterInputStream {
+        private int frameBytes = 0;
+        private boolean ended = false;
+
+        FrameLimit(InputStream in) {
+            super(in);
+        }
+
+        boolean atEnd() {
+            return ended;
+        }
+
+        void startFrame() {
+            frameBytes = 0;
+        }
+
+        private void count(int bytes) throws IOException {
+            frameBytes += bytes;
+            if (frameBytes > MAX_FRAME_BYTES) {
+                throw new StreamCorruptedException("Message over " + MAX_FRAME_BYTES + " bytes");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count(1);
+            } else {
+                ended = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                count(read);
+            } else if (read < 0) {
+                ended = true;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count((int) skipped);
+            return skipped;
+        }
+    }
+}
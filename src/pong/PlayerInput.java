@@ -6,4 +6,9 @@ public class PlayerInput implements Serializable {
     int moveY;
     boolean pauseRequest = false;
     boolean restartRequest = false;
+    // Increases by one per input a client sends; lets a server drop inputs it has already seen
+    long sequence;
+    // Tick of the newest snapshot the client had when it sent this input, 0 for none; the
+    // server paces its snapshots from these acks (SendPacer)
+    long ackTick;
 }
@@ -0,0 +1,225 @@
+package pong;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+
+// Player connection wire format on top of the object streams.
+// Every message starts with a tag byte. Snapshots, heartbeats and inputs - the per-tick traffic -
+// are written as primitives (snapshots in SnapshotCodec's body layout, shared with spectators),
+// snapshots and heartbeats decoded into caller-owned objects; everything else (handshake,
+// cluster messages) is a serialized object. A delta carries only what changed since the
+// previous snapshot on the same stream: [tag][byte fields][char tick advance][short per
+// position or score present][char applied-input advance if present].
+public final class PlayerProtocol {
+    static final byte TAG_OBJECT = 0;
+    static final byte TAG_SNAPSHOT = 1;
+    static final byte TAG_HEARTBEAT = 2;
+    static final byte TAG_DELTA = 3;
+    static final byte TAG_INPUT = 4;
+
+    static final int SNAPSHOT_SIZE = 1 + SnapshotCodec.SNAPSHOT_BODY_SIZE;
+
+    // Delta field bits; the paused flag travels as the value of its bit
+    private static final int DELTA_BALL_X = 1;
+    private static final int DELTA_BALL_Y = 1 << 1;
+    private static final int DELTA_PADDLE_LEFT = 1 << 2;
+    private static final int DELTA_PADDLE_RIGHT = 1 << 3;
+    private static final int DELTA_SCORE_LEFT = 1 << 4;
+    private static final int DELTA_SCORE_RIGHT = 1 << 5;
+    private static final int DELTA_APPLIED_INPUT = 1 << 6; // As a char advance
+    private static final int DELTA_PAUSED = 1 << 7;
+
+    // Input flags: [tag][int moveY][byte flags][long sequence][long ackTick]
+    private static final int INPUT_PAUSE = 1;
+    private static final int INPUT_RESTART = 1 << 1;
+
+    private PlayerProtocol() {
+    }
+
+    // GameStates must be synced (syncStateForSerialization) before they are written
+    static void write(ObjectOutputStream out, Object message) throws IOException {
+        encode(out, message);
+        out.flush();
+    }
+
+    // Same as write without the flush, for links that batch several messages per write
+    static void encode(ObjectOutputStream out, Object message) throws IOException {
+        if (message instanceof GameState state) {
+            out.writeByte(TAG_SNAPSHOT);
+            SnapshotCodec.writeSnapshot(out, state);
+        } else if (message instanceof Snapshot snapshot) {
+            // A snapshot relayed by the gateway, or prepared by a connection's writer
+            out.writeByte(TAG_SNAPSHOT);
+            SnapshotCodec.writeSnapshot(out, snapshot);
+        } else if (message instanceof Heartbeat heartbeat) {
+            out.writeByte(TAG_HEARTBEAT);
+            out.writeBoolean(heartbeat.reply);
+            out.writeLong(heartbeat.originNanos);
+            out.writeLong(heartbeat.receiveNanos);
+            out.writeLong(heartbeat.transmitNanos);
+            out.writeLong(heartbeat.serverTick);
+            out.writeLong(heartbeat.serverTickNanos);
+        } else if (message instanceof PlayerInput input) {
+            out.writeByte(TAG_INPUT);
+            out.writeInt(input.moveY);
+            out.writeByte((input.pauseRequest ? INPUT_PAUSE : 0) | (input.restartRequest ? INPUT_RESTART : 0));
+            out.writeLong(input.sequence);
+            out.writeLong(input.ackTick);
+        } else {
+            // reset() keeps the stream's handle table from holding on to every message sent
+            out.reset();
+            out.writeByte(TAG_OBJECT);
+            out.writeObject(message);
+        }
+    }
+
+    // Writes current as a delta against base - the last snapshot written to this stream - and
+    // moves base to what the peer holds afterwards. Position changes of at most threshold pixels
+    // are left out, so the peer may trail by that much until the position moves further.
+    // Returns the bytes written, or -1 without writing if the change does not fit a delta.
+    static int encodeDelta(ObjectOutputStream out, Snapshot current, Snapshot base, int threshold)
+            throws IOException {
+        long advance = current.tick - base.tick;
+        long inputAdvance = current.appliedInput - base.appliedInput;
+        if (advance < 0 || advance > Character.MAX_VALUE || inputAdvance < 0 || inputAdvance > Character.MAX_VALUE) {
+            return -1;
+        }
+        int fields = 0;
+        fields |= changed(current.ballX, base.ballX, threshold) ? DELTA_BALL_X : 0;
+        fields |= changed(current.ballY, base.ballY, threshold) ? DELTA_BALL_Y : 0;
+        fields |= changed(current.paddleLeftY, base.paddleLeftY, threshold) ? DELTA_PADDLE_LEFT : 0;
+        fields |= changed(current.paddleRightY, base.paddleRightY, threshold) ? DELTA_PADDLE_RIGHT : 0;
+        fields |= current.scoreLeft != base.scoreLeft ? DELTA_SCORE_LEFT : 0;
+        fields |= current.scoreRight != base.scoreRight ? DELTA_SCORE_RIGHT : 0;
+        fields |= inputAdvance != 0 ? DELTA_APPLIED_INPUT : 0;
+        if (!fitsShort(current.ballX) || !fitsShort(current.ballY) || !fitsShort(current.paddleLeftY)
+                || !fitsShort(current.paddleRightY) || !fitsShort(current.scoreLeft) || !fitsShort(current.scoreRight)) {
+            return -1;
+        }
+        out.writeByte(TAG_DELTA);
+        out.writeByte(fields | (current.paused ? DELTA_PAUSED : 0));
+        out.writeChar((int) advance);
+        int size = 4;
+        base.tick = current.tick;
+        base.paused = current.paused;
+        if ((fields & DELTA_BALL_X) != 0) {
+            out.writeShort(base.ballX = current.ballX);
+            size += 2;
+        }
+        if ((fields & DELTA_BALL_Y) != 0) {
+            out.writeShort(base.ballY = current.ballY);
+            size += 2;
+        }
+        if ((fields & DELTA_PADDLE_LEFT) != 0) {
+            out.writeShort(base.paddleLeftY = current.paddleLeftY);
+            size += 2;
+        }
+        if ((fields & DELTA_PADDLE_RIGHT) != 0) {
+            out.writeShort(base.paddleRightY = current.paddleRightY);
+            size += 2;
+        }
+        if ((fields & DELTA_SCORE_LEFT) != 0) {
+            out.writeShort(base.scoreLeft = current.scoreLeft);
+            size += 2;
+        }
+        if ((fields & DELTA_SCORE_RIGHT) != 0) {
+            out.writeShort(base.scoreRight = current.scoreRight);
+            size += 2;
+        }
+        if ((fields & DELTA_APPLIED_INPUT) != 0) {
+            out.writeChar((int) inputAdvance);
+            base.appliedInput = current.appliedInput;
+            size += 2;
+        }
+        return size;
+    }
+
+    private static boolean changed(int value, int previous, int threshold) {
+        return Math.abs(value - previous) > threshold;
+    }
+
+    private static boolean fitsShort(int value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    // Reads one message. Snapshots and heartbeats are decoded into the given objects when they
+    // are not null, so a steady stream of them allocates nothing.
+    static Object read(ObjectInputStream in, Snapshot snapshot, Heartbeat heartbeat)
+            throws IOException, ClassNotFoundException {
+        return read(in, snapshot, heartbeat, null);
+    }
+
+    // Same, for peers that accept deltas: base holds the last snapshot decoded from this stream
+    static Object read(ObjectInputStream in, Snapshot snapshot, Heartbeat heartbeat, Snapshot base)
+            throws IOException, ClassNotFoundException {
+        return readBody(in, in.readByte(), snapshot, heartbeat, base);
+    }
+
+    // The message after its tag, for readers that vet the tag first (PlayerConnection)
+    static Object readBody(ObjectInputStream in, byte tag, Snapshot snapshot, Heartbeat heartbeat, Snapshot base)
+            throws IOException, ClassNotFoundException {
+        if (tag == TAG_SNAPSHOT) {
+            Snapshot target = snapshot != null ? snapshot : new Snapshot();
+            SnapshotCodec.readSnapshot(in, target);
+            if (base != null) {
+                base.copyFrom(target);
+            }
+            return target;
+        } else if (tag == TAG_DELTA) {
+            if (base == null) {
+                throw new StreamCorruptedException("Delta snapshot on a stream without deltas");
+            }
+            int fields = in.readUnsignedByte();
+            base.tick += in.readChar();
+            base.paused = (fields & DELTA_PAUSED) != 0;
+            if ((fields & DELTA_BALL_X) != 0) {
+                base.ballX = in.readShort();
+            }
+            if ((fields & DELTA_BALL_Y) != 0) {
+                base.ballY = in.readShort();
+            }
+            if ((fields & DELTA_PADDLE_LEFT) != 0) {
+                base.paddleLeftY = in.readShort();
+            }
+            if ((fields & DELTA_PADDLE_RIGHT) != 0) {
+                base.paddleRightY = in.readShort();
+            }
+            if ((fields & DELTA_SCORE_LEFT) != 0) {
+                base.scoreLeft = in.readShort();
+            }
+            if ((fields & DELTA_SCORE_RIGHT) != 0) {
+                base.scoreRight = in.readShort();
+            }
+            if ((fields & DELTA_APPLIED_INPUT) != 0) {
+                base.appliedInput += in.readChar();
+            }
+            Snapshot target = snapshot != null ? snapshot : new Snapshot();
+            target.copyFrom(base);
+            return target;
+        } else if (tag == TAG_HEARTBEAT) {
+            Heartbeat target = heartbeat != null ? heartbeat : new Heartbeat();
+            target.reply = in.readBoolean();
+            target.originNanos = in.readLong();
+            target.receiveNanos = in.readLong();
+            target.transmitNanos = in.readLong();
+            target.serverTick = in.readLong();
+            target.serverTickNanos = in.readLong();
+            return target;
+        } else if (tag == TAG_INPUT) {
+            // Inputs are queued by the server, so each gets its own object - a small one
+            PlayerInput input = new PlayerInput();
+            input.moveY = in.readInt();
+            int flags = in.readByte();
+            input.pauseRequest = (flags & INPUT_PAUSE) != 0;
+            input.restartRequest = (flags & INPUT_RESTART) != 0;
+            input.sequence = in.readLong();
+            input.ackTick = in.readLong();
+            return input;
+        } else if (tag == TAG_OBJECT) {
+            return in.readObject();
+        }
+        throw new StreamCorruptedException("Unknown message tag: " + tag);
+    }
+}
@@ -0,0 +1,14 @@
+package pong;
+
+import java.io.Serializable;
+
+// First message of a client that wants the lobby to find it an opponent
+public class QueueRequest implements Serializable {
+    String playerName;
+    int rating;
+
+    public QueueRequest(String playerName, int rating) {
+        this.playerName = playerName;
+        this.rating = rating;
+    }
+}
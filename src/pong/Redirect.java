@@ -0,0 +1,16 @@
+package pong;
+
+import java.io.Serializable;
+
+// Coordinator -> client after MatchFound: reconnect to this node and resume with the token
+public class Redirect implements Serializable {
+    String host;
+    int port;
+    long sessionToken;
+
+    public Redirect(String host, int port, long sessionToken) {
+        this.host = host;
+        this.port = port;
+        this.sessionToken = sessionToken;
+    }
+}
@@ -0,0 +1,191 @@
+package pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Seekable recording of one match, read through a memory-mapped file.
+// File: [header][blocks][index][footer]
+//   header  [8 MAGIC][int version][int keyframeTicks][short len][left name][short len][right name]
+//   block   [GameState checkpoint at tick T][inputs for ticks T+1 .. T+keyframeTicks]
+//   input   one byte (left << 4 | right, 4-bit signed) or ESCAPE followed by [short left][short right]
+//   index   [long tick][int offset] per keyframe
+//   footer  [int keyframes][long firstTick][long lastTick][int indexOffset][8 INDEX_MAGIC]
+// The match is deterministic given a checkpoint and the paddle moves, so any tick is one index
+// lookup and at most keyframeTicks simulated ticks away.
+public class ReplayArchive implements AutoCloseable {
+    static final byte[] MAGIC = "PONGRPL1".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] INDEX_MAGIC = "PONGIDX1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int FOOTER_SIZE = 4 + 8 + 8 + 4 + 8;
+    static final int INDEX_ENTRY_SIZE = 8 + 4;
+    static final byte ESCAPE = (byte) 0x88; // -8, -8: never a packed move pair
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int keyframeTicks;
+    private final String leftName;
+    private final String rightName;
+    private final long firstTick;
+    private final long lastTick;
+    private final long[] keyframeTick;
+    private final int[] keyframeOffset;
+
+    private ReplayArchive(FileChannel channel, MappedByteBuffer map) throws IOException {
+        this.channel = channel;
+        this.map = map;
+        ByteBuffer in = map.duplicate();
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a replay archive");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        keyframeTicks = in.getInt();
+        leftName = readName(in);
+        rightName = readName(in);
+
+        int footer = map.limit() - FOOTER_SIZE;
+        if (footer < in.position()) {
+            throw new IOException("Replay archive is truncated");
+        }
+        in.position(footer);
+        int keyframes = in.getInt();
+        firstTick = in.getLong();
+        lastTick = in.getLong();
+        int indexOffset = in.getInt();
+        in.get(magic);
+        if (!Arrays.equals(magic, INDEX_MAGIC)) {
+            throw new IOException("Replay archive has no index (not finished?)");
+        }
+        keyframeTick = new long[keyframes];
+        keyframeOffset = new int[keyframes];
+        in.position(indexOffset);
+        for (int i = 0; i < keyframes; i++) {
+            keyframeTick[i] = in.getLong();
+            keyframeOffset[i] = in.getInt();
+        }
+    }
+
+    public static ReplayArchive open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ReplayArchive(channel, map);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static String readName(ByteBuffer in) {
+        byte[] name = new byte[in.getShort()];
+        in.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public String getLeftName() {
+        return leftName;
+    }
+
+    public String getRightName() {
+        return rightName;
+    }
+
+    public long getFirstTick() {
+        return firstTick;
+    }
+
+    public long getLastTick() {
+        return lastTick;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeTick.length;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close(); // The mapping itself goes away with the buffer
+    }
+
+    // A position in the match with the state at that tick. Not thread-safe; one per viewer.
+    public final class Cursor {
+        final GameState state = new GameState();
+        private final ByteBuffer in = map.duplicate();
+        private int keyframe = -1;
+        private long tick;
+
+        public GameState getState() {
+            return state;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        // Clamped to the recorded range
+        public void seek(long target) {
+            target = Math.max(firstTick, Math.min(lastTick, target));
+            int index = Arrays.binarySearch(keyframeTick, target);
+            if (index < 0) {
+                index = -index - 2; // Last keyframe before the target
+            }
+            // Moving forward within the current block needs no keyframe
+            if (index != keyframe || target < tick) {
+                loadKeyframe(index);
+            }
+            while (tick < target) {
+                step();
+            }
+        }
+
+        // One tick forward; false at the end of the recording
+        public boolean step() {
+            if (tick >= lastTick) {
+                return false;
+            }
+            int left;
+            int right;
+            byte packed = in.get();
+            if (packed == ESCAPE) {
+                left = in.getShort();
+                right = in.getShort();
+            } else {
+                left = packed >> 4;
+                right = (byte) (packed << 4) >> 4;
+            }
+            // Room's tick order
+            state.tick++;
+            state.updatePaddleLeft(left);
+            state.updatePaddleRight(right);
+            state.moveBall();
+            state.checkBoundaries();
+            tick = state.tick;
+            if (keyframe + 1 < keyframeTick.length && keyframeTick[keyframe + 1] == tick) {
+                // The recorded state follows; continue from it rather than past it
+                loadKeyframe(keyframe + 1);
+            }
+            return true;
+        }
+
+        private void loadKeyframe(int index) {
+            keyframe = index;
+            in.position(keyframeOffset[index]);
+            state.readCheckpoint(in);
+            tick = state.tick;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package pong;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Replay archive size and seek latency for a long match.
+// Records a bot-vs-bot match the way Room does, writes it, then seeks to random ticks through
+// the memory-mapped archive. Every sampled tick is checked against the state the recording run
+// had at that tick. Re-simulating from tick 0 - what seeking costs without keyframes - is
+// timed on a few targets for comparison.
+// Usage: java pong.ReplayBenchmark [minutes] [keyframeTicks] [seeks]
+public class ReplayBenchmark {
+    private static final int SAMPLES = 500;
+
+    public static void main(String[] args) throws Exception {
+        int minutes = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int keyframeTicks = args.length > 1 ? Integer.parseInt(args[1]) : ReplayRecorder.KEYFRAME_TICKS;
+        int seeks = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        long ticks = minutes * 60L * 60;
+
+        // Record, keeping the state at SAMPLES random ticks
+        SplittableRandom random = new SplittableRandom(42);
+        long[] sampleTicks = new long[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            sampleTicks[i] = 1 + random.nextLong(ticks);
+        }
+        Arrays.sort(sampleTicks);
+        byte[][] expected = new byte[SAMPLES][];
+        GameState state = new GameState();
+        state.resetGame();
+        state.seedRandom(7);
+        AiPaddleController left = new AiPaddleController(true, AiDifficulty.HARD, 1);
+        AiPaddleController right = new AiPaddleController(false, AiDifficulty.MEDIUM, 2);
+        ReplayRecorder recorder = new ReplayRecorder(keyframeTicks);
+        recorder.begin(state, "left-bot", "right-bot");
+        int next = 0;
+        for (long t = 1; t <= ticks; t++) {
+            state.tick++;
+            int leftMove = left.nextInput(state).moveY;
+            int rightMove = right.nextInput(state).moveY;
+            state.updatePaddleLeft(leftMove);
+            state.updatePaddleRight(rightMove);
+            state.moveBall();
+            state.checkBoundaries();
+            recorder.onTick(state, leftMove, rightMove);
+            while (next < SAMPLES && sampleTicks[next] == t) {
+                expected[next++] = checkpoint(state);
+            }
+        }
+        byte[] bytes = recorder.finish(state);
+        Path file = Files.createTempFile("pong-replay-bench", ".replay");
+        Files.write(file, bytes);
+        System.out.printf("%d min match, %d ticks, keyframe every %d ticks: %d bytes (%.2f bytes/tick), final score %d:%d%n",
+                minutes, ticks, keyframeTicks, bytes.length, bytes.length / (double) ticks,
+                state.scoreLeft, state.scoreRight);
+
+        try (ReplayArchive archive = ReplayArchive.open(file)) {
+            ReplayArchive.Cursor cursor = archive.cursor();
+            int mismatches = 0;
+            for (int i = SAMPLES - 1; i >= 0; i--) { // Backwards, so every seek goes through a keyframe
+                cursor.seek(sampleTicks[i]);
+                if (!Arrays.equals(checkpoint(cursor.getState()), expected[i])) {
+                    mismatches++;
+                }
+            }
+            System.out.printf("seek check: %d of %d sampled ticks differ from the recording run%n", mismatches, SAMPLES);
+
+            // Warm up, then time random seeks
+            for (int i = 0; i < seeks / 4; i++) {
+                cursor.seek(random.nextLong(ticks + 1));
+            }
+            Histogram latency = new Histogram();
+            for (int i = 0; i < seeks; i++) {
+                long target = random.nextLong(ticks + 1);
+                long start = System.nanoTime();
+                cursor.seek(target);
+                latency.record(System.nanoTime() - start);
+            }
+            System.out.printf("random seek: p50 %.1f us, p99 %.1f us, max %.1f us (%d seeks)%n",
+                    latency.percentile(50) / 1000.0, latency.percentile(99) / 1000.0, latency.max() / 1000.0, seeks);
+
+            // Without keyframes: from the first tick to the target
+            Histogram replayFromStart = new Histogram();
+            for (int i = 0; i < 5; i++) {
+                long target = ticks / 2 + random.nextLong(ticks / 2);
+                long start = System.nanoTime();
+                cursor.seek(archive.getFirstTick());
+                while (cursor.getTick() < target) {
+                    cursor.step();
+                }
+                replayFromStart.record(System.nanoTime() - start);
+            }
+            System.out.printf("re-simulating from tick 0 to the second half: p50 %.1f ms%n",
+                    replayFromStart.percentile(50) / 1e6);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static byte[] checkpoint(GameState state) {
+        ByteBuffer out = ByteBuffer.allocate(GameState.CHECKPOINT_SIZE);
+        state.writeCheckpoint(out);
+        return out.array();
+    }
+}
@@ -0,0 +1,164 @@
+package pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Builds a ReplayArchive in memory as a match is ticked, then writes it off the tick thread.
+// A minute of play is about 4 KB (a byte per tick plus a keyframe every KEYFRAME_TICKS), so the
+// whole match stays in one growing buffer that the room reuses for its next match.
+public class ReplayRecorder {
+    static final int KEYFRAME_TICKS = Integer.getInteger("pong.replay.keyframeTicks", 300);
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replay-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int keyframeTicks;
+    private ByteBuffer body = ByteBuffer.allocate(16 * 1024);
+    private long[] indexTick = new long[64];
+    private int[] indexOffset = new int[64];
+    private int keyframes;
+    private long firstTick;
+    private boolean recording = false;
+
+    public ReplayRecorder() {
+        this(KEYFRAME_TICKS);
+    }
+
+    public ReplayRecorder(int keyframeTicks) {
+        this.keyframeTicks = keyframeTicks;
+    }
+
+    // Starts a new archive at the state's current tick
+    public void begin(GameState state, String leftName, String rightName) {
+        body.clear();
+        keyframes = 0;
+        firstTick = state.tick;
+        recording = true;
+        ensure(ReplayArchive.MAGIC.length + 4 + 4);
+        body.put(ReplayArchive.MAGIC);
+        body.putInt(ReplayArchive.VERSION);
+        body.putInt(keyframeTicks);
+        putName(leftName);
+        putName(rightName);
+        keyframe(state);
+    }
+
+    // After the tick simulated its moves
+    public void onTick(GameState state, int leftMove, int rightMove) {
+        if (!recording) {
+            return;
+        }
+        ensure(5 + GameState.CHECKPOINT_SIZE);
+        if (leftMove >= -7 && leftMove <= 7 && rightMove >= -7 && rightMove <= 7) {
+            body.put((byte) ((leftMove << 4) | (rightMove & 0xF)));
+        } else {
+            body.put(ReplayArchive.ESCAPE);
+            body.putShort((short) leftMove);
+            body.putShort((short) rightMove);
+        }
+        if ((state.tick - firstTick) % keyframeTicks == 0) {
+            keyframe(state);
+        }
+    }
+
+    private void keyframe(GameState state) {
+        if (keyframes == indexTick.length) {
+            indexTick = Arrays.copyOf(indexTick, keyframes * 2);
+            indexOffset = Arrays.copyOf(indexOffset, keyframes * 2);
+        }
+        indexTick[keyframes] = state.tick;
+        indexOffset[keyframes] = body.position();
+        keyframes++;
+        ensure(GameState.CHECKPOINT_SIZE);
+        state.writeCheckpoint(body);
+    }
+
+    // Completes the archive; null if nothing was recorded
+    public byte[] finish(GameState state) {
+        if (!recording) {
+            return null;
+        }
+        recording = false;
+        ensure(keyframes * ReplayArchive.INDEX_ENTRY_SIZE + ReplayArchive.FOOTER_SIZE);
+        int indexStart = body.position();
+        for (int i = 0; i < keyframes; i++) {
+            body.putLong(indexTick[i]);
+            body.putInt(indexOffset[i]);
+        }
+        body.putInt(keyframes);
+        body.putLong(firstTick);
+        body.putLong(state.tick);
+        body.putInt(indexStart);
+        body.put(ReplayArchive.INDEX_MAGIC);
+        return Arrays.copyOf(body.array(), body.position());
+    }
+
+    // Writes a finished archive from the background writer thread
+    public static void save(Path path, byte[] archive) {
+        writer.execute(() -> {
+            try {
+                Files.createDirectories(path.getParent());
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    ByteBuffer out = ByteBuffer.wrap(archive);
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Replay not saved: " + path + ": " + e.getMessage());
+            }
+        });
+    }
+
+    // Waits for the archives saved so far to reach disk; the writer is a daemon thread
+    static void awaitWrites(long timeoutMillis) {
+        try {
+            writer.submit(() -> { }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("Replays still being written: " + e.getMessage());
+        }
+    }
+
+    // <dataDir>/replays/<startMillis>-<left>-vs-<right>.replay
+    static Path pathFor(long startMillis, String leftName, String rightName) {
+        String name = startMillis + "-" + fileSafe(leftName) + "-vs-" + fileSafe(rightName) + ".replay";
+        return Path.of(System.getProperty("pong.dataDir", "pong-data"), "replays", name);
+    }
+
+    private static String fileSafe(String name) {
+        return name.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+
+    private void putName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ensure(2 + bytes.length);
+        body.putShort((short) bytes.length);
+        body.put(bytes);
+    }
+
+    private void ensure(int bytes) {
+        if (body.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + bytes));
+            body.flip();
+            grown.put(body);
+            body = grown;
+        }
+    }
+}
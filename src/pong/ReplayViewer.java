@@ -0,0 +1,149 @@
+package pong;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+
+// Plays a ReplayArchive in a GamePanel with a scrub bar.
+// Space plays and pauses, left/right jump 5 s, comma/period step a single tick, and dragging the
+// slider seeks - each seek is an index lookup plus at most one keyframe interval of simulation.
+// Usage: java pong.ReplayViewer <file.replay>
+public class ReplayViewer {
+    private static final int TICKS_PER_SECOND = 60;
+    private static final double[] SPEEDS = {0.25, 0.5, 1, 2, 4, 8};
+
+    private final ReplayArchive archive;
+    private final ReplayArchive.Cursor cursor;
+    private final GamePanel panel = new GamePanel();
+    private final JSlider slider;
+    private final JLabel position = new JLabel();
+    private final JButton playButton = new JButton("Play");
+    private final JComboBox<String> speedBox = new JComboBox<>();
+    private final Timer timer;
+    private boolean playing = false;
+    private double pendingTicks = 0;
+    private boolean updatingSlider = false;
+
+    public ReplayViewer(ReplayArchive archive) {
+        this.archive = archive;
+        this.cursor = archive.cursor();
+        cursor.seek(archive.getFirstTick());
+        panel.gameState = cursor.getState();
+        // Nothing to pause or restart on a recording
+        panel.setOnPauseToggle(() -> { });
+        panel.setOnRestart(() -> { });
+
+        slider = new JSlider((int) archive.getFirstTick(), (int) archive.getLastTick(), (int) archive.getFirstTick());
+        slider.setFocusable(false);
+        slider.addChangeListener(e -> {
+            if (!updatingSlider) {
+                seek(slider.getValue());
+            }
+        });
+        for (double speed : SPEEDS) {
+            speedBox.addItem(speed + "x");
+        }
+        speedBox.setSelectedIndex(2);
+        speedBox.setFocusable(false);
+        playButton.setFocusable(false);
+        playButton.addActionListener(e -> togglePlaying());
+        timer = new Timer(1000 / TICKS_PER_SECOND, e -> advance());
+        updatePosition();
+    }
+
+    public void show() {
+        JFrame frame = new JFrame("Distributed Pong - Replay: " + archive.getLeftName() + " vs " + archive.getRightName());
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        JPanel controls = new JPanel(new BorderLayout(8, 0));
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 0));
+        buttons.add(playButton);
+        buttons.add(speedBox);
+        controls.add(buttons, BorderLayout.WEST);
+        controls.add(slider, BorderLayout.CENTER);
+        controls.add(position, BorderLayout.EAST);
+        frame.add(panel, BorderLayout.CENTER);
+        frame.add(controls, BorderLayout.SOUTH);
+        panel.setPreferredSize(new Dimension(GameState.GAME_WIDTH, GameState.GAME_HEIGHT));
+        bindKeys(frame.getRootPane());
+        frame.pack();
+        frame.setVisible(true);
+        timer.start();
+    }
+
+    private void bindKeys(JRootPane root) {
+        InputMap keys = root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        ActionMap actions = root.getActionMap();
+        bind(keys, actions, KeyEvent.VK_SPACE, "play", this::togglePlaying);
+        bind(keys, actions, KeyEvent.VK_LEFT, "back", () -> seek(cursor.getTick() - 5 * TICKS_PER_SECOND));
+        bind(keys, actions, KeyEvent.VK_RIGHT, "forward", () -> seek(cursor.getTick() + 5 * TICKS_PER_SECOND));
+        bind(keys, actions, KeyEvent.VK_COMMA, "stepBack", () -> seek(cursor.getTick() - 1));
+        bind(keys, actions, KeyEvent.VK_PERIOD, "step", () -> seek(cursor.getTick() + 1));
+    }
+
+    private static void bind(InputMap keys, ActionMap actions, int key, String name, Runnable action) {
+        keys.put(KeyStroke.getKeyStroke(key, 0), name);
+        actions.put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    private void togglePlaying() {
+        playing = !playing;
+        if (playing && cursor.getTick() >= archive.getLastTick()) {
+            seek(archive.getFirstTick());
+        }
+        pendingTicks = 0;
+        playButton.setText(playing ? "Pause" : "Play");
+    }
+
+    // Timer, on the EDT: plays forward by stepping, not seeking
+    private void advance() {
+        if (!playing) {
+            return;
+        }
+        pendingTicks += SPEEDS[speedBox.getSelectedIndex()];
+        while (pendingTicks >= 1) {
+            pendingTicks--;
+            if (!cursor.step()) {
+                togglePlaying();
+                break;
+            }
+        }
+        updatePosition();
+        panel.repaint();
+    }
+
+    private void seek(long tick) {
+        cursor.seek(tick);
+        updatePosition();
+        panel.repaint();
+    }
+
+    private void updatePosition() {
+        updatingSlider = true;
+        slider.setValue((int) cursor.getTick());
+        updatingSlider = false;
+        position.setText(String.format("%s / %s", clock(cursor.getTick() - archive.getFirstTick()),
+                clock(archive.getLastTick() - archive.getFirstTick())));
+    }
+
+    private static String clock(long ticks) {
+        long seconds = ticks / TICKS_PER_SECOND;
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java pong.ReplayViewer <file.replay>");
+            System.exit(1);
+        }
+        ReplayArchive archive = ReplayArchive.open(Path.of(args[0]));
+        SwingUtilities.invokeLater(() -> new ReplayViewer(archive).show());
+    }
+}
@@ -0,0 +1,527 @@
+package pong;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+// One headless match hosted by the lobby server. Rooms are pooled and reused between matches.
+public class Room {
+    private static final long GRACE_PERIOD_NANOS = Long.getLong("pong.graceMs", 15000) * 1_000_000L;
+    private static final int CHECKPOINT_VERSION = 2;
+
+    final int id;
+    private final ServerIoMode ioMode;
+    private final Executor connectionExecutor;
+    private final LoadGovernor governor;
+    // Room 0 is the lobby's scratch room for priming migrations and stays out of the statistics
+    private final MatchAnalytics analytics;
+    private static final boolean RECORD_REPLAYS = Boolean.parseBoolean(System.getProperty("pong.replays", "true"));
+    private final ReplayRecorder replay;
+    private long replayStartMillis;
+
+    // Null while parked: with neither player connected the room is paused until one is back, so
+    // its match waits in the pool's MatchArena and the GameState goes back to the pool
+    private GameState state;
+    private final RoomPool pool; // Null for rooms outside a pool, which never park
+    private int parkedHandle = -1;
+    private GameState.AnalyticsTracking parkedAnalytics;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Slot left = new Slot(true);
+    private final Slot right = new Slot(false);
+
+    private volatile boolean active = false;
+    private volatile long tickStartNanos; // When the current state.tick was simulated
+    private long frames = 0; // Tick loop iterations, including paused ones
+    private RoomScheduler.Handle tickHandle;
+    private Consumer<MatchRecord> onFinished;
+    // Set on a room restored from a checkpoint until its first live tick, which reports the freeze
+    private long frozenAtMicros;
+    private LongConsumer onResumed;
+    private long restoredAtNanos;
+    private boolean awaitingPlayers;
+
+    // One paddle of the room - a human connection, or a bot once the human is gone
+    static final class Slot {
+        final boolean leftSide;
+        final AiPaddleController bot;
+        NetworkInputSource networkInput;
+        String playerName;
+        int rating;
+        long sessionToken;
+        volatile PlayerConnection connection;
+        boolean botControlled;
+        long disconnectedAtNanos;
+        volatile long lastInputSequence; // Highest PlayerInput.sequence received
+        long appliedInput; // Highest sequence applied by a tick, echoed in snapshots
+
+        Slot(boolean leftSide) {
+            this.leftSide = leftSide;
+            this.bot = new AiPaddleController(leftSide, AiDifficulty.MEDIUM);
+        }
+
+        void reset(String playerName, int rating, long sessionToken, LoadGovernor governor) {
+            this.playerName = playerName;
+            this.rating = rating;
+            this.sessionToken = sessionToken;
+            this.networkInput = new NetworkInputSource(governor); // Drop inputs from the previous match
+            this.connection = null;
+            this.botControlled = false;
+            this.disconnectedAtNanos = System.nanoTime();
+            this.lastInputSequence = 0;
+            this.appliedInput = 0;
+        }
+    }
+
+    public Room(int id, ServerIoMode ioMode, Executor connectionExecutor, LoadGovernor governor) {
+        this(id, ioMode, connectionExecutor, governor, null);
+    }
+
+    Room(int id, ServerIoMode ioMode, Executor connectionExecutor, LoadGovernor governor, RoomPool pool) {
+        this.id = id;
+        this.ioMode = ioMode;
+        this.connectionExecutor = connectionExecutor;
+        this.governor = governor;
+        this.pool = pool;
+        this.state = pool != null ? pool.takeState() : new GameState();
+        this.analytics = id > 0 ? MatchAnalytics.shared() : null;
+        this.replay = id > 0 && RECORD_REPLAYS ? new ReplayRecorder() : null;
+    }
+
+    void start(String leftName, int leftRating, long leftToken,
+               String rightName, int rightRating, long rightToken, Consumer<MatchRecord> onFinished) {
+        lock.lock();
+        try {
+            state.resetGame();
+            state.tick = 0;
+            state.seedRandom(leftToken * 31 + rightToken);
+            if (analytics != null) {
+                analytics.track(state);
+            }
+            left.reset(leftName, leftRating, leftToken, governor);
+            right.reset(rightName, rightRating, rightToken, governor);
+            beginReplay();
+            this.onFinished = onFinished;
+            this.onResumed = null;
+            frozenAtMicros = 0;
+            awaitingPlayers = false;
+            active = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Stops the tick and captures everything needed to continue the match elsewhere:
+    // [int version][long frozenAtMicros][long frames][GameState checkpoint][left slot][right slot]
+    // Returns null if the room is not running. Inputs still queued are copied, not consumed, and
+    // the match stays tracked and recorded, so thaw() can continue here if the transfer fails.
+    byte[] freeze() {
+        lock.lock();
+        try {
+            if (!active) {
+                return null;
+            }
+            active = false;
+            if (tickHandle != null) {
+                tickHandle.cancel();
+                tickHandle = null;
+            }
+            if (parkedHandle >= 0) {
+                unpark();
+            }
+            ByteBuffer out = ByteBuffer.allocate(4 + 8 + 8 + GameState.CHECKPOINT_SIZE
+                    + checkpointSize(left) + checkpointSize(right));
+            out.putInt(CHECKPOINT_VERSION);
+            out.putLong(epochMicros());
+            out.putLong(frames);
+            state.writeCheckpoint(out);
+            writeSlot(out, left);
+            writeSlot(out, right);
+            return out.array();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The checkpoint did not get through - the caller reschedules the tick
+    void thaw() {
+        active = true;
+    }
+
+    // The receiving node took the match over; it continues there as a new tracked match and a new
+    // recording. Called after the reply, so saving the replay does not lengthen the freeze.
+    void handedOff() {
+        lock.lock();
+        try {
+            state.endAnalytics();
+            saveReplay();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Continues a match from another node's checkpoint. Both players are expected back with their
+    // tokens; the match stays paused until they are, or the grace period hands a slot to a bot.
+    void restore(byte[] checkpoint, Consumer<MatchRecord> onFinished, LongConsumer onResumed) {
+        ByteBuffer in = ByteBuffer.wrap(checkpoint);
+        int version = in.getInt();
+        if (version != CHECKPOINT_VERSION) {
+            throw new IllegalArgumentException("Unsupported checkpoint version " + version);
+        }
+        lock.lock();
+        try {
+            frozenAtMicros = in.getLong();
+            frames = in.getLong();
+            state.readCheckpoint(in);
+            if (analytics != null) {
+                analytics.track(state);
+            }
+            readSlot(in, left);
+            readSlot(in, right);
+            beginReplay();
+            this.onFinished = onFinished;
+            this.onResumed = onResumed;
+            restoredAtNanos = System.nanoTime();
+            awaitingPlayers = true;
+            active = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Tells both players where the match went; they reconnect there with their tokens
+    void redirect(String host, int port) {
+        for (Slot slot : new Slot[]{left, right}) {
+            PlayerConnection connection = slot.connection;
+            if (connection != null) {
+                try {
+                    connection.send(new Redirect(host, port, slot.sessionToken));
+                } catch (IOException e) {
+                    connection.close(); // It resumes through the grace period on the new node
+                }
+            }
+        }
+    }
+
+    private static int checkpointSize(Slot slot) {
+        return 2 + slot.playerName.getBytes(StandardCharsets.UTF_8).length + 4 + 8 + 1 + 8 + 8 + 2
+                + slot.networkInput.size() * (4 + 8) + 64; // Slack for inputs arriving meanwhile
+    }
+
+    // [short nameLength][name][int rating][long token][byte bot][long lastInputSequence]
+    // [long appliedInput][short pending][pending: int moveY, long sequence]
+    private static void writeSlot(ByteBuffer out, Slot slot) {
+        byte[] name = slot.playerName.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) name.length);
+        out.put(name);
+        out.putInt(slot.rating);
+        out.putLong(slot.sessionToken);
+        out.put((byte) (slot.botControlled ? 1 : 0));
+        out.putLong(slot.lastInputSequence);
+        out.putLong(slot.appliedInput);
+        List<PlayerInput> pending = new ArrayList<>();
+        slot.networkInput.copyTo(pending);
+        int count = Math.min(pending.size(), (out.remaining() - 2) / (4 + 8));
+        out.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            out.putInt(pending.get(i).moveY);
+            out.putLong(pending.get(i).sequence);
+        }
+    }
+
+    private void readSlot(ByteBuffer in, Slot slot) {
+        byte[] name = new byte[in.getShort()];
+        in.get(name);
+        int rating = in.getInt();
+        long token = in.getLong();
+        slot.reset(new String(name, StandardCharsets.UTF_8), rating, token, governor);
+        slot.botControlled = in.get() != 0;
+        slot.lastInputSequence = in.getLong();
+        slot.appliedInput = in.getLong();
+        int pending = in.getShort();
+        for (int i = 0; i < pending; i++) {
+            PlayerInput input = new PlayerInput();
+            input.moveY = in.getInt();
+            input.sequence = in.getLong();
+            slot.networkInput.add(input);
+        }
+    }
+
+    static long epochMicros() {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+    }
+
+    void setTickHandle(RoomScheduler.Handle tickHandle) {
+        this.tickHandle = tickHandle;
+    }
+
+    // Stops ticking a room that ends with this server; the shared scheduler keeps running
+    void stop() {
+        lock.lock();
+        try {
+            active = false;
+            if (tickHandle != null) {
+                tickHandle.cancel();
+                tickHandle = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Slot getLeft() {
+        return left;
+    }
+
+    Slot getRight() {
+        return right;
+    }
+
+    Slot slotForToken(long token) {
+        if (!active || token == 0) {
+            return null;
+        }
+        if (left.sessionToken == token) {
+            return left;
+        }
+        return right.sessionToken == token ? right : null;
+    }
+
+    long getTick() {
+        lock.lock();
+        try {
+            return parkedHandle >= 0 ? pool.arena.getTick(parkedHandle) : state.tick;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getTickStartNanos() {
+        return tickStartNanos;
+    }
+
+    // Hands the slot to a connection and sends it the session plus a full keyframe
+    void attach(Slot slot, PlayerConnection connection, boolean resumed) throws IOException {
+        lock.lock();
+        try {
+            PlayerConnection previous = slot.connection;
+            if (previous != null && previous != connection) {
+                previous.close();
+            }
+            if (parkedHandle >= 0) {
+                unpark();
+            }
+            connection.send(new SessionInfo(slot.sessionToken, resumed));
+            state.syncStateForSerialization();
+            connection.send(state);
+            slot.connection = connection;
+            slot.botControlled = false;
+            if (awaitingPlayers && !isWaiting(left) && !isWaiting(right)) {
+                awaitingPlayers = false;
+                System.out.printf("Room %d: players back %.1f ms after migration%n",
+                        id, (System.nanoTime() - restoredAtNanos) / 1_000_000.0);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (ioMode == ServerIoMode.VIRTUAL) {
+            connection.startWriter(connectionExecutor, dropped -> onDisconnect(slot, dropped));
+        }
+    }
+
+    void onInput(Slot slot, PlayerInput playerInput) {
+        // Pause and restart requests are ignored in matchmade games
+        if (playerInput.sequence != 0) {
+            if (playerInput.sequence <= slot.lastInputSequence) {
+                return; // Already seen, e.g. replayed across a migration
+            }
+            slot.lastInputSequence = playerInput.sequence;
+        }
+        try {
+            if (!slot.networkInput.offer(playerInput)) {
+                System.err.println("WARNING: Player input dropped in room " + id);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void onDisconnect(Slot slot, PlayerConnection connection) {
+        connection.close();
+        lock.lock();
+        try {
+            if (slot.connection != connection) {
+                return; // Already replaced by a reconnect
+            }
+            slot.connection = null;
+            slot.disconnectedAtNanos = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+        System.out.println("Room " + id + ": " + slot.playerName + " disconnected, waiting for reconnect");
+    }
+
+    public void tick() {
+        if (!active) {
+            return;
+        }
+        boolean finished;
+        lock.lock();
+        try {
+            if (!active) {
+                return; // Frozen for migration while this tick waited for the lock
+            }
+            long now = System.nanoTime();
+            expireSlot(left, now);
+            expireSlot(right, now);
+            boolean deserted = isWaiting(left) && isWaiting(right);
+            if (parkedHandle >= 0) {
+                if (deserted) {
+                    return; // Nothing to simulate and nobody to send a snapshot to
+                }
+                unpark(); // A bot took a slot over
+            }
+
+            // Auto-pause while a human is inside the reconnect grace period
+            boolean waiting = isWaiting(left) || isWaiting(right);
+            if (state.isPaused != waiting) {
+                state.togglePause();
+            }
+            if (!waiting) {
+                state.tick++;
+                tickStartNanos = now;
+                int leftMove = applyInput(left);
+                int rightMove = applyInput(right);
+                state.moveBall();
+                state.checkBoundaries();
+                if (replay != null) {
+                    replay.onTick(state, leftMove, rightMove);
+                }
+            }
+            state.syncStateForSerialization();
+            finished = left.botControlled && right.botControlled;
+            if (!waiting && onResumed != null) {
+                // First live tick after a migration, with both paddles controlled again: the
+                // freeze spans both nodes and the players' reconnect, so wall clock
+                onResumed.accept(epochMicros() - frozenAtMicros);
+                onResumed = null;
+            }
+            if (deserted && pool != null) {
+                park();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (governor.sendPlayerSnapshot(frames++)) {
+            sendState(left);
+            sendState(right);
+        }
+
+        if (finished) {
+            finish();
+        }
+    }
+
+    // Under the lock, on a paused room
+    private void park() {
+        parkedHandle = pool.arena.allocate(0);
+        pool.arena.store(parkedHandle, state);
+        parkedAnalytics = state.detachAnalytics();
+        pool.returnState(state);
+        state = null;
+    }
+
+    private void unpark() {
+        state = pool.takeState();
+        pool.arena.load(parkedHandle, state);
+        state.attachAnalytics(parkedAnalytics);
+        parkedAnalytics = null;
+        pool.arena.free(parkedHandle);
+        parkedHandle = -1;
+    }
+
+    private void expireSlot(Slot slot, long now) {
+        if (isWaiting(slot) && now - slot.disconnectedAtNanos > GRACE_PERIOD_NANOS) {
+            slot.botControlled = true;
+            System.out.println("Room " + id + ": " + slot.playerName + " did not return, bot took over");
+        }
+    }
+
+    private boolean isWaiting(Slot slot) {
+        return slot.connection == null && !slot.botControlled;
+    }
+
+    // Returns the paddle move applied, for the replay
+    private int applyInput(Slot slot) {
+        PlayerInput input = slot.botControlled ? slot.bot.nextInput(state) : slot.networkInput.nextInput(state);
+        if (input == null) {
+            return 0;
+        }
+        if (!slot.botControlled && input.sequence != 0) {
+            slot.appliedInput = input.sequence;
+        }
+        if (slot.leftSide) {
+            state.updatePaddleLeft(input.moveY);
+        } else {
+            state.updatePaddleRight(input.moveY);
+        }
+        return input.moveY;
+    }
+
+    private void beginReplay() {
+        if (replay != null) {
+            replayStartMillis = System.currentTimeMillis();
+            replay.begin(state, left.playerName, right.playerName);
+        }
+    }
+
+    private void saveReplay() {
+        byte[] archive = replay != null ? replay.finish(state) : null;
+        if (archive != null) {
+            ReplayRecorder.save(ReplayRecorder.pathFor(replayStartMillis, left.playerName, right.playerName), archive);
+        }
+    }
+
+    private void sendState(Slot slot) {
+        PlayerConnection connection = slot.connection;
+        if (connection == null) {
+            return;
+        }
+        if (ioMode == ServerIoMode.VIRTUAL) {
+            Snapshot snapshot = new Snapshot();
+            snapshot.copyFrom(state);
+            snapshot.appliedInput = slot.appliedInput;
+            connection.offerSnapshot(snapshot);
+            return;
+        }
+        try {
+            connection.sendSnapshot(state, slot.appliedInput);
+        } catch (IOException e) {
+            onDisconnect(slot, connection);
+        }
+    }
+
+    private void finish() {
+        active = false;
+        if (tickHandle != null) {
+            tickHandle.cancel();
+            tickHandle = null;
+        }
+        state.endAnalytics();
+        saveReplay();
+        System.out.println("Room " + id + " finished: " + left.playerName + " " + state.scoreLeft
+                + " - " + state.scoreRight + " " + right.playerName);
+        if (onFinished != null) {
+            onFinished.accept(new MatchRecord(0, System.currentTimeMillis(), left.playerName, right.playerName,
+                    state.scoreLeft, state.scoreRight, state.tick));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package pong;
+
+import java.io.Serializable;
+
+// Coordinator -> node: host this match. Both players arrive later with Hello(token).
+public class RoomAssignment implements Serializable {
+    long matchId;
+    String leftName;
+    int leftRating;
+    long leftToken;
+    String rightName;
+    int rightRating;
+    long rightToken;
+
+    public RoomAssignment(long matchId, String leftName, int leftRating, long leftToken,
+                          String rightName, int rightRating, long rightToken) {
+        this.matchId = matchId;
+        this.leftName = leftName;
+        this.leftRating = leftRating;
+        this.leftToken = leftToken;
+        this.rightName = rightName;
+        this.rightRating = rightRating;
+        this.rightToken = rightToken;
+    }
+}
@@ -0,0 +1,16 @@
+package pong;
+
+import java.io.Serializable;
+
+// Node -> node: continue this match here. Answered with RoomReady (matchId echoed, roomId 0 on failure).
+public class RoomMigration implements Serializable {
+    long matchId;
+    byte[] checkpoint; // Room.freeze()
+    byte[] key; // The sending node's pong.migrationKey
+
+    public RoomMigration(long matchId, byte[] checkpoint, byte[] key) {
+        this.matchId = matchId;
+        this.checkpoint = checkpoint;
+        this.key = key;
+    }
+}
@@ -0,0 +1,59 @@
+package pong;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+// Free list of rooms so a match can start without building a new GameState and threads.
+// A room with neither player connected parks its match in the pool's arena (Room.park) and hands
+// its GameState back; the next room to unpark takes a spare one, so idle rooms hold no GameState.
+public final class RoomPool {
+    private static final int MAX_SPARE_STATES = 64;
+
+    final MatchArena arena = new MatchArena();
+    private final ArrayDeque<Room> free = new ArrayDeque<>();
+    private final ArrayDeque<GameState> spareStates = new ArrayDeque<>();
+    private final ServerIoMode ioMode;
+    private final Executor connectionExecutor;
+    private final LoadGovernor governor;
+    private int nextId = 1;
+    private int active = 0;
+
+    public RoomPool(int preallocate, ServerIoMode ioMode, Executor connectionExecutor, LoadGovernor governor) {
+        this.ioMode = ioMode;
+        this.connectionExecutor = connectionExecutor;
+        this.governor = governor;
+        for (int i = 0; i < preallocate; i++) {
+            free.addLast(new Room(nextId++, ioMode, connectionExecutor, governor, this));
+        }
+    }
+
+    public synchronized Room acquire() {
+        Room room = free.pollFirst();
+        if (room == null) {
+            room = new Room(nextId++, ioMode, connectionExecutor, governor, this);
+        }
+        active++;
+        return room;
+    }
+
+    public synchronized void release(Room room) {
+        active--;
+        free.addFirst(room); // Most recently used room is the warmest in cache
+    }
+
+    public synchronized int getActiveCount() {
+        return active;
+    }
+
+    synchronized GameState takeState() {
+        GameState state = spareStates.pollFirst();
+        return state != null ? state : new GameState();
+    }
+
+    // Beyond a few spares - e.g. after many players dropped at once - the collector takes them
+    synchronized void returnState(GameState state) {
+        if (spareStates.size() < MAX_SPARE_STATES) {
+            spareStates.addFirst(state);
+        }
+    }
+}
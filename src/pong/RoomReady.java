@@ -0,0 +1,15 @@
+package pong;
+
+import java.io.Serializable;
+
+// Node -> coordinator: the assigned room is running and its tokens are valid
+public class RoomReady implements Serializable {
+    long matchId;
+    // 0 when the node could not host the match
+    int roomId;
+
+    public RoomReady(long matchId, int roomId) {
+        this.matchId = matchId;
+        this.roomId = roomId;
+    }
+}
@@ -0,0 +1,353 @@
+package pong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Central fixed-rate scheduler for room ticks.
+// Each worker thread owns a hashed timer wheel of tick deadlines. It sleeps coarsely and
+// spin-waits the last stretch before a deadline, which keeps tick-start lateness far below
+// what ScheduledThreadPoolExecutor achieves on a loaded box. Rooms move from a worker that
+// falls behind to the least loaded one.
+public class RoomScheduler {
+    private static final long RESOLUTION_NANOS = 1_000_000L;
+    private static final int WHEEL_SLOTS = 64;
+    private static final long SPIN_NANOS = Long.getLong("pong.scheduler.spinNanos", 500_000L);
+    private static final long STATS_INTERVAL_MS = 250;
+    private static final int REBALANCE_EVERY = 4; // Stats windows between room moves
+    // A worker is "behind" when this share of its ticks started over 1 ms late
+    private static final double BEHIND_LATE_SHARE = 0.01;
+    private static final long LATE_NANOS = 1_000_000L;
+
+    private static volatile RoomScheduler shared;
+
+    private final Worker[] workers;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private int statsWindows = 0;
+    private final ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "room-scheduler-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // A periodic task; only its owning worker touches the scheduling fields
+    public static final class Handle {
+        private final Runnable action;
+        private final long periodNanos;
+        private long deadline;
+        private volatile boolean cancelled;
+
+        private Handle(Runnable action, long periodNanos, long firstDeadline) {
+            this.action = action;
+            this.periodNanos = periodNanos;
+            this.deadline = firstDeadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final int index;
+        final Thread thread;
+        final ConcurrentLinkedQueue<Handle> inbox = new ConcurrentLinkedQueue<>();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        final List<Handle>[] wheel = new List[WHEEL_SLOTS];
+        final List<Handle> due = new ArrayList<>();
+        final long origin = System.nanoTime();
+        long cursor = 0; // Absolute wheel tick being processed
+
+        final Histogram lateness = new Histogram();
+        volatile Histogram lastWindow = new Histogram();
+        final AtomicInteger taskCount = new AtomicInteger();
+        // Set by the rebalancer; the next room this worker runs moves there instead
+        volatile Worker donateTo;
+        volatile long busyNanos = 0;
+        volatile long budgetUsedNanos = 0; // Lateness plus run time, per tick
+        volatile long budgetNanos = 0; // Sum of the periods of the ticks run
+        volatile long lateTicks = 0;
+        volatile long ticks = 0;
+        long lastBusyNanos = 0;
+        long lastLateTicks = 0;
+        long lastTicks = 0;
+        long lastBudgetUsedNanos = 0;
+        long lastBudgetNanos = 0;
+        volatile double utilization = 0;
+        volatile double load = 0;
+
+        Worker(int index) {
+            this.index = index;
+            for (int i = 0; i < WHEEL_SLOTS; i++) {
+                wheel[i] = new ArrayList<>();
+            }
+            thread = new Thread(this, "room-scheduler-" + index);
+            thread.setDaemon(true);
+        }
+
+        void submit(Handle handle) {
+            taskCount.incrementAndGet();
+            inbox.add(handle);
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            cursor = wheelTick(System.nanoTime());
+            while (running.get()) {
+                drainInbox();
+                long slotStart = origin + cursor * RESOLUTION_NANOS;
+                List<Handle> slot = wheel[(int) (cursor & (WHEEL_SLOTS - 1))];
+                if (slot.isEmpty()) {
+                    // Nothing due in this slot - sleep through it, leaving the spin window for the
+                    // next one, and wake early on new work
+                    long wait = slotStart + RESOLUTION_NANOS - SPIN_NANOS - System.nanoTime();
+                    if (wait > 0 && inbox.isEmpty()) {
+                        LockSupport.parkNanos(wait);
+                        if (System.nanoTime() < slotStart + RESOLUTION_NANOS - SPIN_NANOS) {
+                            continue; // Woken for new work
+                        }
+                    }
+                    cursor++;
+                    continue;
+                }
+
+                // Pull out the tasks whose deadline falls into this slot (later rounds stay)
+                long slotEnd = slotStart + RESOLUTION_NANOS;
+                for (int i = slot.size() - 1; i >= 0; i--) {
+                    Handle handle = slot.get(i);
+                    if (handle.deadline < slotEnd) {
+                        slot.set(i, slot.get(slot.size() - 1));
+                        slot.remove(slot.size() - 1);
+                        due.add(handle);
+                    }
+                }
+                due.sort((a, b) -> Long.compare(a.deadline, b.deadline));
+                for (Handle handle : due) {
+                    runHandle(handle);
+                }
+                due.clear();
+                cursor++;
+            }
+        }
+
+        private void runHandle(Handle handle) {
+            if (handle.cancelled) {
+                taskCount.decrementAndGet();
+                return;
+            }
+            Worker target = donateTo;
+            if (target != null) {
+                donateTo = null;
+                if (target != this && taskCount.get() > 1) {
+                    taskCount.decrementAndGet();
+                    target.submit(handle);
+                    return;
+                }
+            }
+
+            waitUntil(handle.deadline);
+            long start = System.nanoTime();
+            long late = start - handle.deadline;
+            lateness.record(late);
+            ticks++;
+            if (late > LATE_NANOS) {
+                lateTicks++;
+            }
+            try {
+                handle.action.run();
+            } catch (RuntimeException e) {
+                System.err.println("Room tick error: " + e.getMessage());
+                e.printStackTrace();
+            }
+            long end = System.nanoTime();
+            busyNanos += end - start;
+            budgetUsedNanos += end - handle.deadline;
+            budgetNanos += handle.periodNanos;
+
+            // Fixed rate; ticks missed while far behind are skipped rather than bunched up
+            handle.deadline += handle.periodNanos;
+            if (handle.deadline < end - handle.periodNanos) {
+                long missed = (end - handle.deadline) / handle.periodNanos;
+                handle.deadline += missed * handle.periodNanos;
+            }
+            insert(handle);
+        }
+
+        // Coarse sleep, then spin through the last sub-millisecond
+        private void waitUntil(long deadline) {
+            long remaining = deadline - System.nanoTime();
+            while (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+                remaining = deadline - System.nanoTime();
+            }
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+        }
+
+        private void drainInbox() {
+            Handle handle;
+            while ((handle = inbox.poll()) != null) {
+                insert(handle);
+            }
+        }
+
+        private void insert(Handle handle) {
+            // Never place a task behind the cursor - it would wait a whole wheel round
+            long tick = Math.max(wheelTick(handle.deadline), cursor + 1);
+            wheel[(int) (tick & (WHEEL_SLOTS - 1))].add(handle);
+        }
+
+        private long wheelTick(long nanos) {
+            return Math.max(0, (nanos - origin) / RESOLUTION_NANOS);
+        }
+    }
+
+    public RoomScheduler(int threads) {
+        workers = new Worker[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+            registerMetrics(workers[i]);
+        }
+        for (Worker worker : workers) {
+            worker.thread.start();
+        }
+        rebalancer.scheduleAtFixedRate(this::sampleWorkers, STATS_INTERVAL_MS, STATS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Process-wide instance sized to the cores (-Dpong.scheduler.threads to override)
+    public static RoomScheduler shared() {
+        RoomScheduler scheduler = shared;
+        if (scheduler == null) {
+            synchronized (RoomScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    int threads = Integer.getInteger("pong.scheduler.threads", Runtime.getRuntime().availableProcessors());
+                    scheduler = new RoomScheduler(threads);
+                    shared = scheduler;
+                    // The JVM owns the shared instance; its users only cancel their own handles
+                    RoomScheduler owned = scheduler;
+                    Runtime.getRuntime().addShutdownHook(new Thread(owned::shutdown, "room-scheduler-shutdown"));
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    public Handle scheduleAtFixedRate(Runnable action, long initialDelay, long period, TimeUnit unit) {
+        Handle handle = new Handle(action, unit.toNanos(period), System.nanoTime() + unit.toNanos(initialDelay));
+        // Least loaded worker, round robin between equals
+        int start = Math.floorMod(nextWorker.getAndIncrement(), workers.length);
+        Worker best = workers[start];
+        for (int i = 1; i < workers.length; i++) {
+            Worker candidate = workers[(start + i) % workers.length];
+            if (candidate.taskCount.get() < best.taskCount.get()) {
+                best = candidate;
+            }
+        }
+        best.submit(handle);
+        return handle;
+    }
+
+    // Share of the tick budget in use on the most loaded worker over the last stats window:
+    // the larger of CPU utilization and (lateness + run time) / period. Above 1 rooms fall behind.
+    public double getLoad() {
+        double max = 0;
+        for (Worker worker : workers) {
+            max = Math.max(max, worker.load);
+        }
+        return max;
+    }
+
+    // Refreshes per-worker stats and moves one room from a worker that is falling behind to
+    // the least utilized one
+    private void sampleWorkers() {
+        Worker busiest = null;
+        Worker idlest = null;
+        for (Worker worker : workers) {
+            long busy = worker.busyNanos;
+            long late = worker.lateTicks;
+            long ticks = worker.ticks;
+            long budgetUsed = worker.budgetUsedNanos;
+            long budget = worker.budgetNanos;
+            worker.utilization = (busy - worker.lastBusyNanos) / (STATS_INTERVAL_MS * 1_000_000.0);
+            double budgetShare = budget > worker.lastBudgetNanos
+                    ? (budgetUsed - worker.lastBudgetUsedNanos) / (double) (budget - worker.lastBudgetNanos) : 0;
+            worker.load = Math.max(worker.utilization, budgetShare);
+            worker.lastBudgetUsedNanos = budgetUsed;
+            worker.lastBudgetNanos = budget;
+            long windowTicks = ticks - worker.lastTicks;
+            boolean behind = windowTicks > 0 && (late - worker.lastLateTicks) > windowTicks * BEHIND_LATE_SHARE;
+            worker.lastBusyNanos = busy;
+            worker.lastLateTicks = late;
+            worker.lastTicks = ticks;
+            worker.lastWindow = worker.lateness.drain();
+            worker.lateness.add(worker.lastWindow);
+
+            if (behind && (busiest == null || worker.utilization > busiest.utilization)) {
+                busiest = worker;
+            }
+            if (idlest == null || worker.utilization < idlest.utilization) {
+                idlest = worker;
+            }
+        }
+        if (++statsWindows % REBALANCE_EVERY != 0) {
+            return;
+        }
+        if (busiest != null && idlest != busiest && busiest.taskCount.get() > 1
+                && idlest.utilization < busiest.utilization) {
+            // The owning worker hands a room over the next time it runs one
+            busiest.donateTo = idlest;
+            Metrics.counter("scheduler.rebalanced").increment();
+        }
+    }
+
+    private void registerMetrics(Worker worker) {
+        String prefix = "scheduler.worker." + worker.index;
+        Metrics.gauge(prefix + ".lateness.p99.us", () -> worker.lastWindow.percentile(99) / 1000.0);
+        Metrics.gauge(prefix + ".lateness.max.us", () -> worker.lastWindow.max() / 1000.0);
+        Metrics.gauge(prefix + ".utilization", () -> worker.utilization);
+        Metrics.gauge(prefix + ".load", () -> worker.load);
+        Metrics.gauge(prefix + ".rooms", worker.taskCount::get);
+    }
+
+    // Clears the lateness histograms, e.g. after a warmup
+    public void resetStats() {
+        for (Worker worker : workers) {
+            worker.lateness.drain();
+        }
+    }
+
+    // p99 tick-start lateness per worker since start or the last reset
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Worker worker : workers) {
+            sb.append(String.format("worker %d: rooms=%d ticks=%d p50=%.1f us p99=%.1f us max=%.1f us util=%.2f%n",
+                    worker.index, worker.taskCount.get(), worker.lateness.getCount(),
+                    worker.lateness.percentile(50) / 1000.0, worker.lateness.percentile(99) / 1000.0,
+                    worker.lateness.max() / 1000.0, worker.utilization));
+        }
+        return sb.toString();
+    }
+
+    public void shutdown() {
+        synchronized (RoomScheduler.class) {
+            if (shared == this) {
+                shared = null;
+            }
+        }
+        running.set(false);
+        rebalancer.shutdownNow();
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package pong;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+// Heap and GC cost of hosting many matches: one GameState per room vs slots in a MatchArena.
+// Each configuration runs in a fresh JVM with the same heap settings. Rooms are created, the
+// retained heap (and off-heap) per room is measured after a full collection, then every room
+// is stepped continuously while the loop allocates short-lived garbage the way per-tick message
+// buffers do, and the collector's pauses are recorded. Ends with a timed full collection, which
+// has to trace everything the rooms keep alive.
+// Usage: java pong.RoomStateBenchmark [seconds] [rooms...]
+public class RoomStateBenchmark {
+    private static final String HEAP = "-Xmx2g";
+    private static final int GARBAGE_BYTES_PER_TICK = 64;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--child")) {
+            child(args[1], Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        List<Integer> roomCounts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            roomCounts.add(Integer.parseInt(args[i]));
+        }
+        if (roomCounts.isEmpty()) {
+            roomCounts.add(10_000);
+            roomCounts.add(100_000);
+        }
+        System.out.printf("%d s stepping per run, %s, G1%n", seconds, HEAP);
+        System.out.printf("%-8s %8s %12s %12s %10s %8s %12s %12s %12s%n", "model", "rooms", "heap B/room",
+                "off-heap B", "ns/tick", "GCs", "pause p50 ms", "pause max ms", "full GC ms");
+        for (int rooms : roomCounts) {
+            for (String model : new String[]{"objects", "arena"}) {
+                System.out.println(runChild(model, rooms, seconds));
+            }
+        }
+    }
+
+    private static String runChild(String model, int rooms, int seconds) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add(HEAP);
+        command.add("-XX:+UseG1GC");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RoomStateBenchmark.class.getName());
+        command.add("--child");
+        command.add(model);
+        command.add(String.valueOf(rooms));
+        command.add(String.valueOf(seconds));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        process.waitFor();
+        return line;
+    }
+
+    private static void child(String model, int rooms, int seconds) {
+        boolean arenaModel = model.equals("arena");
+        Histogram pauses = new Histogram();
+        AtomicLong pauseCount = new AtomicLong();
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) bean).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    // Concurrent cycles are not pauses
+                    if (!info.getGcName().contains("Concurrent")) {
+                        pauses.record(info.getGcInfo().getDuration() * 1_000_000L);
+                        pauseCount.incrementAndGet();
+                    }
+                }
+            }, null, null);
+        }
+
+        long heapBefore = usedHeapAfterGc();
+        long offHeapBefore = directBytes();
+        GameState[] states = null;
+        int[] handles = null;
+        MatchArena arena = null;
+        if (arenaModel) {
+            arena = new MatchArena();
+            handles = new int[rooms];
+            for (int i = 0; i < rooms; i++) {
+                handles[i] = arena.allocate(i);
+            }
+        } else {
+            states = new GameState[rooms];
+            for (int i = 0; i < rooms; i++) {
+                states[i] = new GameState();
+                states[i].resetGame();
+                states[i].seedRandom(i);
+            }
+        }
+        long heapPerRoom = (usedHeapAfterGc() - heapBefore) / rooms;
+        long offHeap = directBytes() - offHeapBefore;
+
+        pauses.drain();
+        pauseCount.set(0);
+        byte[][] recent = new byte[1024][];
+        long ticks = 0;
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < rooms; i++) {
+                // Paddles sweep up and down, out of phase between rooms
+                int left = ((ticks + i) & 64) == 0 ? 5 : -5;
+                int right = ((ticks + i * 7) & 32) == 0 ? 5 : -5;
+                if (arenaModel) {
+                    arena.step(handles[i], left, right);
+                } else {
+                    GameState state = states[i];
+                    state.tick++;
+                    state.updatePaddleLeft(left);
+                    state.updatePaddleRight(right);
+                    state.moveBall();
+                    state.checkBoundaries();
+                }
+                recent[i & 1023] = new byte[GARBAGE_BYTES_PER_TICK];
+            }
+            ticks++;
+        }
+        double nsPerTick = (System.nanoTime() - start) / (double) (ticks * rooms);
+        Histogram measured = pauses.drain();
+        long count = pauseCount.get();
+
+        long fullStart = System.nanoTime();
+        System.gc();
+        double fullGcMs = (System.nanoTime() - fullStart) / 1e6;
+        // The rooms have to be live through the full collection
+        Reference.reachabilityFence(states);
+        Reference.reachabilityFence(arena);
+
+        System.out.printf("%-8s %8d %12d %12d %10.1f %8d %12.2f %12.2f %12.2f%n", model, rooms, heapPerRoom,
+                offHeap, nsPerTick, count, measured.percentile(50) / 1e6,
+                measured.max() / 1e6, fullGcMs);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,200 @@
+package pong;
+
+// Snapshot pacing for one client, driven by the acks the client piggybacks on its inputs.
+// An ack names the newest snapshot tick the client had received. Matching it against the send log
+// gives a delivery-rate sample (bandwidth) and an ack delay; the delay's excess over the minimum
+// seen is time spent queued in socket buffers along the way. Queueing past the target cuts the
+// snapshot rate and coarsens deltas, a clear link wins both back step by step, and sends are
+// spaced to the measured bandwidth with a cap on unacked bytes so kernel buffers stay shallow.
+// Clients that never ack (older clients, tools) get every snapshot as before.
+public class SendPacer {
+    static final double MAX_RATE_HZ = 60;
+    static final double MIN_RATE_HZ = 10;
+    static final int MAX_DELTA_THRESHOLD = 4;
+
+    private static final long TARGET_QUEUE_NANOS = 20_000_000L;
+    private static final long ADJUST_INTERVAL_NANOS = 200_000_000L;
+    private static final double RATE_DECREASE = 0.7;
+    private static final double RATE_INCREASE_HZ = 5;
+    private static final double PACING_GAIN = 1.25;
+    // Lets a send through that is only early by scheduling jitter
+    private static final long SLACK_NANOS = 2_000_000L;
+    // Minimum RTT is tracked over ~10 s, the bandwidth maximum over ~2 s (two half windows each)
+    private static final long MIN_RTT_HALF_WINDOW_NANOS = 5_000_000_000L;
+    private static final long BANDWIDTH_HALF_WINDOW_NANOS = 1_000_000_000L;
+    // No ack for this long: the client stalled, fall back to the minimum rate without the in-flight cap
+    private static final long ACK_TIMEOUT_NANOS = 1_000_000_000L;
+    private static final long INFLIGHT_RECHECK_NANOS = 4_000_000L;
+    private static final int MIN_INFLIGHT_BYTES = 4 * PlayerProtocol.SNAPSHOT_SIZE;
+
+    // Ring of the last LOG_SIZE snapshots sent; bytes are running totals
+    private static final int LOG_SIZE = 128;
+    private final long[] logTick = new long[LOG_SIZE];
+    private final long[] logNanos = new long[LOG_SIZE];
+    private final long[] logBytes = new long[LOG_SIZE];
+    private long sends = 0;
+    private long bytesSent = 0;
+    private long lastSendNanos;
+    private int lastSendBytes;
+
+    private boolean acking = false;
+    private long lastAckIndex = -1;
+    private long lastAckNanos;
+    private long bytesAcked = 0;
+
+    private long minRttNanos = Long.MAX_VALUE;
+    private long previousMinRttNanos = Long.MAX_VALUE;
+    private long minRttWindowStart;
+    private double maxBandwidth = 0; // Bytes per second
+    private double previousMaxBandwidth = 0;
+    private long bandwidthWindowStart;
+    private double queueNanos = 0;
+
+    private double rateHz = MAX_RATE_HZ;
+    private int deltaThreshold = 0;
+    private long lastAdjustNanos;
+
+    // How long the next snapshot should wait, 0 if it can go now
+    public synchronized long delayNanos(long now) {
+        if (!acking || sends == 0) {
+            return 0;
+        }
+        if (now - lastAckNanos > ACK_TIMEOUT_NANOS) {
+            return Math.max(0, lastSendNanos + (long) (1e9 / MIN_RATE_HZ) - now);
+        }
+        double bandwidth = bandwidth();
+        long inflightCap = Math.max(MIN_INFLIGHT_BYTES, (long) (2 * bandwidth * minRtt() / 1e9));
+        if (bytesSent - bytesAcked > inflightCap) {
+            return INFLIGHT_RECHECK_NANOS;
+        }
+        long interval = rateHz >= MAX_RATE_HZ ? 0 : (long) (1e9 / rateHz) - SLACK_NANOS;
+        if (bandwidth > 0) {
+            interval = Math.max(interval, (long) (lastSendBytes * 1e9 / (PACING_GAIN * bandwidth)) - SLACK_NANOS);
+        }
+        return Math.max(0, lastSendNanos + interval - now);
+    }
+
+    public synchronized void onSent(long tick, int bytes, long now) {
+        int slot = (int) (sends % LOG_SIZE);
+        bytesSent += bytes;
+        logTick[slot] = tick;
+        logNanos[slot] = now;
+        logBytes[slot] = bytesSent;
+        sends++;
+        lastSendNanos = now;
+        lastSendBytes = bytes;
+    }
+
+    // Repeated acks of the same snapshot (the client sends inputs faster than it gets snapshots) are ignored
+    public synchronized void onAck(long tick, long now) {
+        if (tick <= 0) {
+            return;
+        }
+        long index = -1;
+        for (long i = sends - 1; i > lastAckIndex && i >= sends - LOG_SIZE && i >= 0; i--) {
+            if (logTick[(int) (i % LOG_SIZE)] == tick) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        int slot = (int) (index % LOG_SIZE);
+        long ackDelay = now - logNanos[slot];
+
+        if (now - minRttWindowStart > MIN_RTT_HALF_WINDOW_NANOS) {
+            previousMinRttNanos = minRttNanos;
+            minRttNanos = Long.MAX_VALUE;
+            minRttWindowStart = now;
+        }
+        minRttNanos = Math.min(minRttNanos, ackDelay);
+
+        if (acking && now > lastAckNanos) {
+            double sample = (logBytes[slot] - bytesAcked) * 1e9 / (now - lastAckNanos);
+            if (now - bandwidthWindowStart > BANDWIDTH_HALF_WINDOW_NANOS) {
+                previousMaxBandwidth = maxBandwidth;
+                maxBandwidth = 0;
+                bandwidthWindowStart = now;
+            }
+            maxBandwidth = Math.max(maxBandwidth, sample);
+        }
+        queueNanos += (ackDelay - minRtt() - queueNanos) / 8;
+
+        acking = true;
+        lastAckIndex = index;
+        lastAckNanos = now;
+        bytesAcked = logBytes[slot];
+        adjust(now);
+    }
+
+    // Multiplicative decrease while queues build, additive increase once they have drained
+    private void adjust(long now) {
+        if (now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+            return;
+        }
+        lastAdjustNanos = now;
+        if (queueNanos > TARGET_QUEUE_NANOS) {
+            rateHz = Math.max(MIN_RATE_HZ, rateHz * RATE_DECREASE);
+            deltaThreshold = Math.min(MAX_DELTA_THRESHOLD, deltaThreshold + 1);
+        } else if (queueNanos < TARGET_QUEUE_NANOS / 2) {
+            rateHz = Math.min(MAX_RATE_HZ, rateHz + RATE_INCREASE_HZ);
+            deltaThreshold = Math.max(0, deltaThreshold - 1);
+        }
+    }
+
+    private long minRtt() {
+        long min = Math.min(minRttNanos, previousMinRttNanos);
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    private double bandwidth() {
+        return Math.max(maxBandwidth, previousMaxBandwidth);
+    }
+
+    // The client decodes deltas once it acks; until then it may be a client that cannot
+    public synchronized boolean isAcking() {
+        return acking;
+    }
+
+    // Position changes up to this many pixels may be left out of a delta
+    public synchronized int getDeltaThreshold() {
+        return deltaThreshold;
+    }
+
+    public synchronized double getRateHz() {
+        return rateHz;
+    }
+
+    public synchronized double getBandwidthKbps() {
+        return bandwidth() * 8 / 1000;
+    }
+
+    public synchronized double getQueueDelayMs() {
+        return Math.max(0, queueNanos) / 1_000_000.0;
+    }
+
+    public synchronized double getMinRttMs() {
+        return minRtt() / 1_000_000.0;
+    }
+
+    public synchronized long getBytesInFlight() {
+        return bytesSent - bytesAcked;
+    }
+
+    public void registerMetrics(String prefix) {
+        Metrics.gauge(prefix + ".bandwidth.kbps", this::getBandwidthKbps);
+        Metrics.gauge(prefix + ".queue.ms", this::getQueueDelayMs);
+        Metrics.gauge(prefix + ".rtt.min.ms", this::getMinRttMs);
+        Metrics.gauge(prefix + ".rate.hz", this::getRateHz);
+        Metrics.gauge(prefix + ".delta.threshold", this::getDeltaThreshold);
+        Metrics.gauge(prefix + ".inflight.bytes", this::getBytesInFlight);
+    }
+
+    public static void removeMetrics(String prefix) {
+        for (String name : new String[]{".bandwidth.kbps", ".queue.ms", ".rtt.min.ms", ".rate.hz",
+                ".delta.threshold", ".inflight.bytes"}) {
+            Metrics.remove(prefix + name);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package pong;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// How connection I/O is threaded. Simulation ticks always stay on the platform-thread scheduler.
+public enum ServerIoMode {
+    // Cached platform threads read, the tick thread writes snapshots itself
+    POOLED,
+    // One virtual thread reads and one writes per connection (JDK 21+)
+    VIRTUAL;
+
+    public static ServerIoMode fromProperty() {
+        String value = System.getProperty("pong.io", "pooled");
+        return "virtual".equalsIgnoreCase(value.trim()) ? VIRTUAL : POOLED;
+    }
+
+    public ExecutorService newConnectionExecutor() {
+        return this == VIRTUAL ? Executors.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+    }
+}
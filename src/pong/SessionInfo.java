@@ -0,0 +1,15 @@
+package pong;
+
+import java.io.Serializable;
+
+// Server's answer to Hello. A full GameState keyframe follows when accepted.
+public class SessionInfo implements Serializable {
+    // 0 means the server refused the connection (slot reserved for someone else)
+    long sessionToken;
+    boolean resumed;
+
+    public SessionInfo(long sessionToken, boolean resumed) {
+        this.sessionToken = sessionToken;
+        this.resumed = resumed;
+    }
+}
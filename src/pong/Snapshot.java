@@ -0,0 +1,53 @@
+package pong;
+
+// Flat copy of the render fields of a GameState. Instances are pooled and refilled in place,
+// so receiving a snapshot allocates nothing.
+public final class Snapshot {
+    long tick;
+    int ballX;
+    int ballY;
+    int paddleLeftY;
+    int paddleRightY;
+    int scoreLeft;
+    int scoreRight;
+    boolean paused;
+    // Newest input sequence of the receiving player the server had applied at this tick
+    long appliedInput;
+
+    // Must be called after syncStateForSerialization() so the primitive fields are current
+    void copyFrom(GameState state) {
+        tick = state.tick;
+        ballX = state.ballX;
+        ballY = state.ballY;
+        paddleLeftY = state.paddleLeftY;
+        paddleRightY = state.paddleRightY;
+        scoreLeft = state.scoreLeft;
+        scoreRight = state.scoreRight;
+        paused = state.isPaused;
+        appliedInput = 0;
+    }
+
+    void copyFrom(Snapshot other) {
+        tick = other.tick;
+        ballX = other.ballX;
+        ballY = other.ballY;
+        paddleLeftY = other.paddleLeftY;
+        paddleRightY = other.paddleRightY;
+        scoreLeft = other.scoreLeft;
+        scoreRight = other.scoreRight;
+        paused = other.paused;
+        appliedInput = other.appliedInput;
+    }
+
+    // Writes the fields the client renders; the client never simulates
+    void applyTo(GameState state) {
+        state.tick = tick;
+        state.ballX = ballX;
+        state.ballY = ballY;
+        state.paddleLeftY = paddleLeftY;
+        state.paddleRightY = paddleRightY;
+        state.scoreLeft = scoreLeft;
+        state.scoreRight = scoreRight;
+        state.isPaused = paused;
+    }
+}
@@ -0,0 +1,35 @@
+package pong;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Triple buffer between one producer (network receiver) and one consumer (renderer).
+// The producer fills its back slot and swaps it into the middle; the consumer swaps a fresh
+// middle into the front. Neither side blocks or allocates, and stale snapshots are simply
+// overwritten.
+public final class SnapshotBuffer {
+    private static final int FRESH = 4; // Flag bit next to the middle slot index
+
+    private final Snapshot[] slots = {new Snapshot(), new Snapshot(), new Snapshot()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // Producer only
+    private int front = 2; // Consumer only
+
+    // Slot to decode the next snapshot into
+    Snapshot writeSlot() {
+        return slots[back];
+    }
+
+    // Hands the filled write slot to the consumer
+    void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    // Newest snapshot since the last call, or null if nothing new arrived
+    Snapshot poll() {
+        if ((middle.get() & FRESH) == 0) {
+            return null;
+        }
+        front = middle.getAndSet(front) & ~FRESH;
+        return slots[front];
+    }
+}
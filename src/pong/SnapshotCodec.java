@@ -0,0 +1,104 @@
+package pong;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// The binary snapshot encoding, shared by the spectator stream and the player protocol, and the
+// compact frame format of the spectator stream.
+// Frame: [int bodyLength][byte type][long sequence][body...]
+// Snapshot body: [int ballX][int ballY][int paddleLeftY][int paddleRightY][int scoreLeft]
+// [int scoreRight][byte paused][long tick][long appliedInput]. The render fields come first, so
+// spectators built for the shorter body read them and skip the rest.
+public final class SnapshotCodec {
+    static final byte TYPE_SNAPSHOT = 1;
+
+    static final int HEADER_SIZE = 4 + 1 + 8;
+    static final int SNAPSHOT_BODY_SIZE = 6 * 4 + 1 + 8 + 8;
+
+    // Upper bound for a sane frame - anything larger means a corrupt stream
+    static final int MAX_BODY_SIZE = 64 * 1024;
+
+    private SnapshotCodec() {
+    }
+
+    static ByteBuffer encodeHeader(byte type, long sequence, int bodyLength) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(bodyLength);
+        header.put(type);
+        header.putLong(sequence);
+        header.flip();
+        return header.asReadOnlyBuffer();
+    }
+
+    // Must be called after syncStateForSerialization() so the primitive fields are current
+    static ByteBuffer encodeSnapshot(GameState state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(SNAPSHOT_BODY_SIZE);
+        try {
+            writeSnapshot(new DataOutputStream(bytes), state);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Not thrown by an in-memory stream
+        }
+        return ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer();
+    }
+
+    // No applied input - keyframes, spectators and the local server's own state
+    static void writeSnapshot(DataOutput out, GameState state) throws IOException {
+        writeBody(out, state.ballX, state.ballY, state.paddleLeftY, state.paddleRightY, state.scoreLeft,
+                state.scoreRight, state.isPaused, state.tick, 0);
+    }
+
+    static void writeSnapshot(DataOutput out, Snapshot snapshot) throws IOException {
+        writeBody(out, snapshot.ballX, snapshot.ballY, snapshot.paddleLeftY, snapshot.paddleRightY, snapshot.scoreLeft,
+                snapshot.scoreRight, snapshot.paused, snapshot.tick, snapshot.appliedInput);
+    }
+
+    private static void writeBody(DataOutput out, int ballX, int ballY, int paddleLeftY, int paddleRightY,
+                                  int scoreLeft, int scoreRight, boolean paused, long tick, long appliedInput)
+            throws IOException {
+        out.writeInt(ballX);
+        out.writeInt(ballY);
+        out.writeInt(paddleLeftY);
+        out.writeInt(paddleRightY);
+        out.writeInt(scoreLeft);
+        out.writeInt(scoreRight);
+        out.writeByte(paused ? 1 : 0);
+        out.writeLong(tick);
+        out.writeLong(appliedInput);
+    }
+
+    static void readSnapshot(DataInput in, Snapshot target) throws IOException {
+        target.ballX = in.readInt();
+        target.ballY = in.readInt();
+        target.paddleLeftY = in.readInt();
+        target.paddleRightY = in.readInt();
+        target.scoreLeft = in.readInt();
+        target.scoreRight = in.readInt();
+        target.paused = in.readByte() != 0;
+        target.tick = in.readLong();
+        target.appliedInput = in.readLong();
+    }
+
+    // Reads the next snapshot frame into target, skipping other frame types; returns its sequence
+    static long readFrame(DataInputStream in, Snapshot target) throws IOException {
+        while (true) {
+            int bodyLength = in.readInt();
+            byte type = in.readByte();
+            long sequence = in.readLong();
+            if (bodyLength < 0 || bodyLength > MAX_BODY_SIZE) {
+                throw new IOException("Invalid frame length: " + bodyLength);
+            }
+            if (type != TYPE_SNAPSHOT || bodyLength < SNAPSHOT_BODY_SIZE) {
+                in.skipNBytes(bodyLength); // Unknown frame type - skip it
+                continue;
+            }
+            readSnapshot(in, target);
+            in.skipNBytes(bodyLength - SNAPSHOT_BODY_SIZE);
+            return sequence;
+        }
+    }
+}
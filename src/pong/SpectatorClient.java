@@ -0,0 +1,127 @@
+package pong;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Read-only client that renders a match from the spectator stream
+public class SpectatorClient {
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("pong.connectTimeoutMs", 3000);
+
+    private final String host;
+    private final int port;
+    private volatile Socket socket;
+    private volatile DataInputStream in;
+
+    private GamePanel gamePanel;
+
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Connects from the receiver thread, so creating a spectator never blocks the caller
+    public SpectatorClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    private boolean connect() {
+        Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            newSocket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+            socket = newSocket;
+            System.out.println("Watching match at " + host + ":" + port);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Spectator connection error: " + e.getMessage());
+            try {
+                newSocket.close();
+            } catch (IOException ignored) {
+            }
+            return false;
+        }
+    }
+
+    private void disconnect() {
+        in = null;
+        try {
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            System.err.println("Closing error: " + e.getMessage());
+        }
+        socket = null;
+    }
+
+    public void startWatching(GamePanel panel) {
+        this.gamePanel = panel;
+        running.set(true);
+
+        // Spectators cannot pause or restart the match
+        gamePanel.setOnPauseToggle(() -> { });
+        gamePanel.setOnRestart(() -> { });
+
+        CompletableFuture.runAsync(() -> {
+            System.out.println("Spectator receiver started");
+            Backoff backoff = new Backoff();
+            Snapshot frame = new Snapshot();
+            while (running.get()) {
+                DataInputStream currentIn = in;
+                if (currentIn == null) {
+                    gamePanel.setStatusMessage("Connecting to match at " + host + ":" + port + "...");
+                    if (connect()) {
+                        backoff.reset();
+                        gamePanel.setStatusMessage(null);
+                        continue;
+                    }
+                    long delayMs = backoff.nextDelayMs();
+                    gamePanel.setStatusMessage(String.format("No match at %s:%d - retry %d in %.1f s",
+                            host, port, backoff.getAttempts(), delayMs / 1000.0));
+                    try {
+                        Thread.sleep(delayMs);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    continue;
+                }
+                try {
+                    GameState snapshot = new GameState();
+                    SnapshotCodec.readFrame(currentIn, frame);
+                    frame.applyTo(snapshot);
+                    javax.swing.SwingUtilities.invokeLater(() -> {
+                        gamePanel.gameState = snapshot;
+                        gamePanel.repaint();
+                    });
+                } catch (EOFException e) {
+                    System.out.println("Match stream ended, waiting for the next one.");
+                    disconnect();
+                } catch (IOException e) {
+                    if (running.get()) {
+                        System.err.println("Spectator receive error: " + e.getMessage());
+                    }
+                    disconnect();
+                }
+            }
+        }, executorService);
+    }
+
+    public void close() {
+        running.set(false);
+        disconnect(); // Unblocks a pending read
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Spectator connection closed.");
+    }
+}
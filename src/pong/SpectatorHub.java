@@ -0,0 +1,176 @@
+package pong;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Streams snapshots of one match to any number of spectators.
+// Each snapshot is encoded once; every spectator gets read-only views of the same buffers.
+public class SpectatorHub {
+    // Cap on the rate divisor: a spectator that keeps falling behind is sent at most every 16th frame
+    private static final int MAX_RATE_DIVISOR = 16;
+    // Clean sends needed before a degraded spectator gets its rate doubled back
+    private static final int RECOVERY_SENDS = 120;
+
+    private final ServerSocketChannel serverChannel;
+    private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+
+    // Fan-out runs on its own thread so spectators can never stall the game loop
+    private final ExecutorService acceptExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService fanOutExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicReference<Frame> latestFrame = new AtomicReference<>();
+    private final AtomicBoolean fanOutScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private long sequence = 0;
+
+    private static final class Frame {
+        final long sequence;
+        final ByteBuffer header;
+        final ByteBuffer body;
+
+        Frame(long sequence, ByteBuffer header, ByteBuffer body) {
+            this.sequence = sequence;
+            this.header = header;
+            this.body = body;
+        }
+    }
+
+    private static final class Spectator {
+        final SocketChannel channel;
+        // Unsent remainder of the last frame, null when fully written
+        ByteBuffer[] pending;
+        int rateDivisor = 1;
+        int cleanSends = 0;
+        long skipped = 0;
+
+        Spectator(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public SpectatorHub(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        acceptExecutor.execute(this::acceptLoop);
+        System.out.println("Spectator hub started. Port: " + port);
+    }
+
+    private void acceptLoop() {
+        while (running.get()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                spectators.add(new Spectator(channel));
+                System.out.println("Spectator connected: " + channel.getRemoteAddress()
+                        + " (" + spectators.size() + " watching)");
+            } catch (IOException e) {
+                if (running.get()) {
+                    System.err.println("Spectator accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int getSpectatorCount() {
+        return spectators.size();
+    }
+
+    // Called from the game loop after the state has been synced
+    public void publish(GameState state) {
+        if (spectators.isEmpty()) {
+            return;
+        }
+        ByteBuffer body = SnapshotCodec.encodeSnapshot(state);
+        ByteBuffer header = SnapshotCodec.encodeHeader(SnapshotCodec.TYPE_SNAPSHOT, ++sequence, body.remaining());
+        latestFrame.set(new Frame(sequence, header, body));
+
+        // Coalesce: if a fan-out is already queued it will pick up the newest frame
+        if (fanOutScheduled.compareAndSet(false, true)) {
+            fanOutExecutor.execute(this::fanOut);
+        }
+    }
+
+    private void fanOut() {
+        fanOutScheduled.set(false);
+        Frame frame = latestFrame.get();
+        if (frame == null) {
+            return;
+        }
+
+        for (Spectator spectator : spectators) {
+            try {
+                // Finish the previous frame first; a spectator still behind skips this one
+                if (spectator.pending != null) {
+                    spectator.channel.write(spectator.pending);
+                    if (hasRemaining(spectator.pending)) {
+                        degrade(spectator);
+                        continue;
+                    }
+                    spectator.pending = null;
+                }
+
+                if (frame.sequence % spectator.rateDivisor != 0) {
+                    continue;
+                }
+
+                // Gathering write of the shared header and body
+                ByteBuffer[] buffers = {frame.header.duplicate(), frame.body.duplicate()};
+                spectator.channel.write(buffers);
+                if (hasRemaining(buffers)) {
+                    spectator.pending = buffers;
+                } else if (spectator.rateDivisor > 1 && ++spectator.cleanSends >= RECOVERY_SENDS) {
+                    spectator.rateDivisor /= 2;
+                    spectator.cleanSends = 0;
+                }
+            } catch (IOException e) {
+                removeSpectator(spectator);
+            }
+        }
+    }
+
+    private void degrade(Spectator spectator) {
+        spectator.skipped++;
+        spectator.cleanSends = 0;
+        if (spectator.rateDivisor < MAX_RATE_DIVISOR) {
+            spectator.rateDivisor *= 2;
+        }
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        return buffers[buffers.length - 1].hasRemaining();
+    }
+
+    private void removeSpectator(Spectator spectator) {
+        if (spectators.remove(spectator)) {
+            System.out.println("Spectator disconnected (skipped " + spectator.skipped + " frames)");
+        }
+        try {
+            spectator.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public void close() {
+        running.set(false);
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Spectator hub closing error: " + e.getMessage());
+        }
+        acceptExecutor.shutdownNow();
+        fanOutExecutor.shutdownNow();
+        for (Spectator spectator : spectators) {
+            removeSpectator(spectator);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pong;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tick-start lateness of many 60 Hz rooms: ScheduledThreadPoolExecutor vs RoomScheduler.
+// Each room burns a little CPU per tick, like a physics step plus serialization.
+// Usage: java pong.TickJitterBenchmark [rooms] [seconds] [workMicros]
+public class TickJitterBenchmark {
+    private static final long PERIOD_NANOS = 16_000_000L;
+
+    public static void main(String[] args) throws InterruptedException {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long workNanos = (args.length > 2 ? Long.parseLong(args[2]) : 20) * 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d rooms, %d s, %d us work per tick, %d threads%n", rooms, seconds, workNanos / 1000, threads);
+
+        runExecutor(rooms, seconds, workNanos, threads);
+        runScheduler(rooms, seconds, workNanos, threads);
+    }
+
+    private static void runExecutor(int rooms, int seconds, long workNanos, int threads) throws InterruptedException {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(threads);
+        Histogram lateness = new Histogram();
+        List<ScheduledFuture<?>> futures = new ArrayList<>();
+        long warmupEnd = System.nanoTime() + 2_000_000_000L;
+        for (int i = 0; i < rooms; i++) {
+            long first = System.nanoTime() + (i % 16) * 1_000_000L;
+            AtomicLong count = new AtomicLong();
+            futures.add(executor.scheduleAtFixedRate(() -> {
+                long now = System.nanoTime();
+                long expected = first + count.getAndIncrement() * PERIOD_NANOS;
+                if (now > warmupEnd) {
+                    lateness.record(now - expected);
+                }
+                burn(workNanos);
+            }, first - System.nanoTime(), PERIOD_NANOS, TimeUnit.NANOSECONDS));
+        }
+        Thread.sleep(2000 + seconds * 1000L);
+        futures.forEach(f -> f.cancel(false));
+        executor.shutdownNow();
+        System.out.printf("ScheduledThreadPoolExecutor: ticks=%d p50=%.1f us p99=%.1f us p99.9=%.1f us max=%.1f us%n",
+                lateness.getCount(), lateness.percentile(50) / 1000.0, lateness.percentile(99) / 1000.0,
+                lateness.percentile(99.9) / 1000.0, lateness.max() / 1000.0);
+    }
+
+    private static void runScheduler(int rooms, int seconds, long workNanos, int threads) throws InterruptedException {
+        RoomScheduler scheduler = new RoomScheduler(threads);
+        List<RoomScheduler.Handle> handles = new ArrayList<>();
+        for (int i = 0; i < rooms; i++) {
+            handles.add(scheduler.scheduleAtFixedRate(() -> burn(workNanos), i % 16, 16, TimeUnit.MILLISECONDS));
+        }
+        // The scheduler records lateness itself; drop the warmup before measuring
+        Thread.sleep(2000);
+        scheduler.resetStats();
+        Thread.sleep(seconds * 1000L);
+        System.out.print("RoomScheduler:\n" + scheduler.report());
+        handles.forEach(RoomScheduler.Handle::cancel);
+        scheduler.shutdown();
+    }
+
+    private static void burn(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package pong;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Bot tournaments for AI and balance changes, simulated headless at accelerated time.
+// Entrants are AiPaddleController bots cycling through the difficulties. Each tournament shuffles
+// them into a single-elimination bracket (byes when the field is not a power of two). Matches are
+// stepped the way Room steps them, but back to back instead of on a 60 Hz timer, and end at
+// POINTS or after the match length. A level match goes to sudden death - the next point wins,
+// and the ball speeds up every 10 s so that reaction and paddle speed tell - for up to another
+// match length; any still level after that are settled by a coin from the match seed and left
+// out of the standings. All tournaments advance round by round together, and a round's matches
+// - across tournaments, so the final of one bracket does not leave the other cores idle - are
+// split over a ForkJoinPool.
+// Every seed derives from the tournament number and bracket position, so the results do not
+// depend on the thread count: each pool size in the sweep must produce the same results
+// checksum. Results of the full-size run go to <dataDir>/tournaments/<startMillis>-results.csv,
+// the sweep's timings to <startMillis>-timing.csv.
+// Usage: java pong.TournamentRunner [entrants] [tournaments] [matchSeconds]
+public class TournamentRunner {
+    static final int POINTS = 11;
+    private static final int TICKS_PER_SECOND = 60;
+    // In sudden death the ball gains a pixel per tick on both axes this often
+    private static final int OVERTIME_SPEEDUP_TICKS = 10 * TICKS_PER_SECOND;
+
+    static final class Entrant {
+        final String name;
+        final AiDifficulty difficulty;
+        final long seed;
+
+        Entrant(String name, AiDifficulty difficulty, long seed) {
+            this.name = name;
+            this.difficulty = difficulty;
+            this.seed = seed;
+        }
+    }
+
+    static final class Match {
+        final int tournament;
+        final int round;
+        final int index;
+        final Entrant left;
+        final Entrant right;
+        final long seed;
+        int scoreLeft;
+        int scoreRight;
+        long ticks;
+        boolean overtime;
+        boolean coin; // Still level after overtime
+        Entrant winner;
+        long wallNanos;
+
+        Match(int tournament, int round, int index, Entrant left, Entrant right, long seed) {
+            this.tournament = tournament;
+            this.round = round;
+            this.index = index;
+            this.left = left;
+            this.right = right;
+            this.seed = seed;
+        }
+    }
+
+    // Splits a round's matches in halves until one is left, so idle workers steal whole matches
+    @SuppressWarnings("serial") // Never serialized
+    private static final class RoundTask extends RecursiveAction {
+        private final Match[] matches;
+        private final int from;
+        private final int to;
+        private final long maxTicks;
+
+        RoundTask(Match[] matches, int from, int to, long maxTicks) {
+            this.matches = matches;
+            this.from = from;
+            this.to = to;
+            this.maxTicks = maxTicks;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                play(matches[from], maxTicks);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RoundTask(matches, from, mid, maxTicks), new RoundTask(matches, mid, to, maxTicks));
+        }
+    }
+
+    static final class Result {
+        final List<Match> matches = new ArrayList<>();
+        final List<Entrant> champions = new ArrayList<>();
+        long wallNanos;
+        long ticks;
+
+        // Order-sensitive hash of every score and winner; equal runs give equal checksums
+        long checksum() {
+            long hash = 17;
+            for (Match match : matches) {
+                hash = hash * 31 + match.scoreLeft;
+                hash = hash * 31 + match.scoreRight;
+                hash = hash * 31 + match.ticks;
+                hash = hash * 31 + match.winner.name.hashCode();
+            }
+            return hash;
+        }
+    }
+
+    private final List<Entrant> entrants;
+    private final int tournaments;
+    private final long maxTicks;
+
+    public TournamentRunner(List<Entrant> entrants, int tournaments, long maxTicks) {
+        this.entrants = entrants;
+        this.tournaments = tournaments;
+        this.maxTicks = maxTicks;
+    }
+
+    static List<Entrant> defaultEntrants(int count) {
+        AiDifficulty[] difficulties = AiDifficulty.values();
+        List<Entrant> entrants = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AiDifficulty difficulty = difficulties[i % difficulties.length];
+            entrants.add(new Entrant(difficulty.name().toLowerCase() + "-" + (i / difficulties.length + 1),
+                    difficulty, mix(0x5EED, i)));
+        }
+        return entrants;
+    }
+
+    public Result run(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Result result = new Result();
+            // Per tournament: who is still in, in bracket order; null is a bye
+            List<List<Entrant>> brackets = new ArrayList<>();
+            for (int t = 0; t < tournaments; t++) {
+                brackets.add(seedBracket(t));
+            }
+            long start = System.nanoTime();
+            for (int round = 1; brackets.get(0).size() > 1; round++) {
+                List<Match> roundMatches = new ArrayList<>();
+                for (int t = 0; t < tournaments; t++) {
+                    List<Entrant> bracket = brackets.get(t);
+                    for (int i = 0; i < bracket.size(); i += 2) {
+                        Entrant a = bracket.get(i);
+                        Entrant b = bracket.get(i + 1);
+                        if (a != null && b != null) {
+                            long seed = mix(mix(t, round), i);
+                            boolean swap = (seed & 1) != 0; // Sides by coin; the serve favours one of them
+                            roundMatches.add(new Match(t, round, i / 2, swap ? b : a, swap ? a : b, seed));
+                        }
+                    }
+                }
+                Match[] matches = roundMatches.toArray(new Match[0]);
+                if (matches.length > 0) {
+                    pool.invoke(new RoundTask(matches, 0, matches.length, maxTicks));
+                }
+                int next = 0;
+                for (int t = 0; t < tournaments; t++) {
+                    List<Entrant> bracket = brackets.get(t);
+                    List<Entrant> winners = new ArrayList<>();
+                    for (int i = 0; i < bracket.size(); i += 2) {
+                        Entrant a = bracket.get(i);
+                        Entrant b = bracket.get(i + 1);
+                        if (a == null || b == null) {
+                            winners.add(a != null ? a : b);
+                        } else {
+                            winners.add(matches[next++].winner);
+                        }
+                    }
+                    brackets.set(t, winners);
+                }
+                for (Match match : matches) {
+                    result.matches.add(match);
+                    result.ticks += match.ticks;
+                }
+            }
+            result.wallNanos = System.nanoTime() - start;
+            for (List<Entrant> bracket : brackets) {
+                result.champions.add(bracket.get(0));
+            }
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Entrants shuffled by the tournament's seed, padded with byes to a power of two. Byes are
+    // spread one per pair from the end, so no round pairs two of them.
+    private List<Entrant> seedBracket(int tournament) {
+        List<Entrant> shuffled = new ArrayList<>(entrants);
+        SplittableRandom random = new SplittableRandom(mix(tournament, 0xB7AC));
+        for (int i = shuffled.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Entrant swap = shuffled.get(i);
+            shuffled.set(i, shuffled.get(j));
+            shuffled.set(j, swap);
+        }
+        int size = Integer.highestOneBit(Math.max(1, shuffled.size() - 1)) << 1;
+        if (shuffled.size() == 1) {
+            size = 1;
+        }
+        int byes = size - shuffled.size();
+        List<Entrant> bracket = new ArrayList<>();
+        int next = 0;
+        for (int pair = 0; pair < size / 2; pair++) {
+            bracket.add(shuffled.get(next++));
+            bracket.add(pair >= size / 2 - byes ? null : shuffled.get(next++));
+        }
+        if (size == 1) {
+            bracket.add(shuffled.get(0));
+        }
+        return bracket;
+    }
+
+    static void play(Match match, long maxTicks) {
+        long start = System.nanoTime();
+        GameState state = new GameState();
+        state.resetGame();
+        state.seedRandom(match.seed);
+        AiPaddleController left = new AiPaddleController(true, match.left.difficulty, mix(match.left.seed, match.seed));
+        AiPaddleController right = new AiPaddleController(false, match.right.difficulty, mix(match.right.seed, match.seed));
+        while (state.tick < maxTicks && state.scoreLeft < POINTS && state.scoreRight < POINTS) {
+            step(state, left, right);
+        }
+        if (state.scoreLeft == state.scoreRight) {
+            // Sudden death from where the match stands, the ball speeding up until a bot misses
+            match.overtime = true;
+            int level = state.scoreLeft;
+            long overtimeStart = state.tick;
+            while (state.tick < 2 * maxTicks && state.scoreLeft == level && state.scoreRight == level) {
+                if ((state.tick - overtimeStart) % OVERTIME_SPEEDUP_TICKS == OVERTIME_SPEEDUP_TICKS - 1) {
+                    state.ballVelocityX += Integer.signum(state.ballVelocityX);
+                    state.ballVelocityY += Integer.signum(state.ballVelocityY);
+                }
+                step(state, left, right);
+            }
+        }
+        match.scoreLeft = state.scoreLeft;
+        match.scoreRight = state.scoreRight;
+        match.ticks = state.tick;
+        if (state.scoreLeft != state.scoreRight) {
+            match.winner = state.scoreLeft > state.scoreRight ? match.left : match.right;
+        } else {
+            match.coin = true;
+            match.winner = (mix(match.seed, 0xC01) & 1) == 0 ? match.left : match.right;
+        }
+        match.wallNanos = System.nanoTime() - start;
+    }
+
+    private static void step(GameState state, AiPaddleController left, AiPaddleController right) {
+        state.tick++;
+        state.updatePaddleLeft(left.nextInput(state).moveY);
+        state.updatePaddleRight(right.nextInput(state).moveY);
+        state.moveBall();
+        state.checkBoundaries();
+    }
+
+    // SplitMix64 finalizer over two values; stable across runs and thread counts
+    static long mix(long a, long b) {
+        long z = a * 0x9E3779B97F4A7C15L + b;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static void writeResults(Path path, Result result) throws IOException {
+        Files.createDirectories(path.getParent());
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            out.write("tournament,round,match,left,leftDifficulty,right,rightDifficulty,scoreLeft,scoreRight,ticks,decidedBy,winner,wallMicros\n");
+            for (Match match : result.matches) {
+                out.write(match.tournament + "," + match.round + "," + match.index + ","
+                        + match.left.name + "," + match.left.difficulty + ","
+                        + match.right.name + "," + match.right.difficulty + ","
+                        + match.scoreLeft + "," + match.scoreRight + "," + match.ticks + ","
+                        + (match.coin ? "coin" : match.overtime ? "overtime" : "score") + "," + match.winner.name + "," + match.wallNanos / 1000 + "\n");
+            }
+        }
+    }
+
+    // Matches won per difficulty, from the matches the bots decided, and titles
+    private static void printStandings(Result result) {
+        int count = AiDifficulty.values().length;
+        long[] played = new long[count];
+        long[] won = new long[count];
+        long[] titles = new long[count];
+        long overtime = 0;
+        long coins = 0;
+        long mirrorCoins = 0;
+        boolean[] coinTitle = new boolean[result.champions.size()];
+        for (Match match : result.matches) {
+            if (match.overtime) {
+                overtime++;
+            }
+            if (match.coin) {
+                coins++;
+                if (match.left.difficulty == match.right.difficulty) {
+                    mirrorCoins++;
+                } else if (match.winner == result.champions.get(match.tournament)) {
+                    coinTitle[match.tournament] = true;
+                }
+                continue;
+            }
+            played[match.left.difficulty.ordinal()]++;
+            played[match.right.difficulty.ordinal()]++;
+            won[match.winner.difficulty.ordinal()]++;
+        }
+        int coinTitles = 0;
+        for (int t = 0; t < coinTitle.length; t++) {
+            titles[result.champions.get(t).difficulty.ordinal()]++;
+            coinTitles += coinTitle[t] ? 1 : 0;
+        }
+        System.out.printf("%-8s %8s %8s %8s %8s%n", "bots", "decided", "won", "win %", "titles");
+        for (AiDifficulty difficulty : AiDifficulty.values()) {
+            int i = difficulty.ordinal();
+            System.out.printf("%-8s %8d %8d %8.1f %8d%n", difficulty.name().toLowerCase(), played[i], won[i],
+                    played[i] > 0 ? 100.0 * won[i] / played[i] : 0, titles[i]);
+        }
+        System.out.printf("%d matches, %d to sudden death; %d still level after it settled by coin and left out of"
+                        + " the win %% (%d between bots of the same difficulty)%n",
+                result.matches.size(), overtime, coins, mirrorCoins);
+        System.out.printf("%d of %d titles were won through a coin against another difficulty%n",
+                coinTitles, coinTitle.length);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int entrantCount = args.length > 0 ? Integer.parseInt(args[0]) : 48;
+        int tournaments = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int matchSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 120;
+        int cores = Runtime.getRuntime().availableProcessors();
+        TournamentRunner runner = new TournamentRunner(defaultEntrants(entrantCount), tournaments,
+                (long) matchSeconds * TICKS_PER_SECOND);
+        System.out.printf("%d tournaments of %d bots, matches to %d points or %d s of game time, %d cores%n",
+                tournaments, entrantCount, POINTS, matchSeconds, cores);
+
+        runner.run(cores); // Warmup
+
+        // Pool sizes 1, 2, 4, ... and the core count
+        List<Integer> sweep = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            sweep.add(threads);
+        }
+        sweep.add(cores);
+
+        long startMillis = System.currentTimeMillis();
+        StringBuilder timing = new StringBuilder("threads,matches,wallMillis,matchesPerSecond,matchesPerSecondPerCore,speedup,efficiency,gameSecondsPerSecond,checksum\n");
+        System.out.printf("%8s %9s %10s %11s %15s %9s %11s %14s%n", "threads", "matches", "wall ms", "matches/s",
+                "matches/s/core", "speedup", "efficiency", "x real time");
+        double single = 0;
+        long expectedChecksum = 0;
+        Result last = null;
+        for (int threads : sweep) {
+            Result result = runner.run(threads);
+            double seconds = result.wallNanos / 1e9;
+            double perSecond = result.matches.size() / seconds;
+            if (threads == 1) {
+                single = perSecond;
+                expectedChecksum = result.checksum();
+            }
+            double speedup = perSecond / single;
+            double realTime = result.ticks / (double) TICKS_PER_SECOND / seconds;
+            System.out.printf("%8d %9d %10.0f %11.1f %15.1f %9.2f %10.0f%% %14.0f%s%n", threads, result.matches.size(),
+                    seconds * 1000, perSecond, perSecond / threads, speedup, 100 * speedup / threads, realTime,
+                    result.checksum() == expectedChecksum ? "" : "  RESULTS DIFFER FROM 1 THREAD");
+            timing.append(threads).append(',').append(result.matches.size()).append(',')
+                    .append(String.format("%.1f,%.2f,%.2f,%.3f,%.3f,%.0f,", seconds * 1000, perSecond, perSecond / threads,
+                            speedup, speedup / threads, realTime))
+                    .append(result.checksum()).append('\n');
+            last = result;
+        }
+
+        Histogram matchNanos = new Histogram();
+        for (Match match : last.matches) {
+            matchNanos.record(match.wallNanos);
+        }
+        System.out.printf("per match: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", matchNanos.percentile(50) / 1e6,
+                matchNanos.percentile(99) / 1e6, matchNanos.max() / 1e6);
+        printStandings(last);
+
+        Path dir = Path.of(System.getProperty("pong.dataDir", "pong-data"), "tournaments");
+        Path results = dir.resolve(startMillis + "-results.csv");
+        writeResults(results, last);
+        Files.writeString(dir.resolve(startMillis + "-timing.csv"), timing);
+        System.out.println("Results written to " + results);
+    }
+}
@@ -0,0 +1,161 @@
+package pong;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Records the packet timing of real connections, for replay by NetcodeHarness.
+// Forwards bytes untouched between clients and a server and notes when each chunk arrived from
+// either side. Run next to the client it captures the downlink as the client sees it; next to
+// the server, the uplink. The round trip is taken from the TCP connect to the server.
+// Each connection is written to <dataDir>/traces/<startMillis>-<n>.trace when it closes.
+// Usage: java pong.TraceProxy <listenPort> <serverHost:port>
+public class TraceProxy {
+    private static final int CONNECT_TIMEOUT_MS = 3000;
+
+    private final int listenPort;
+    private final String serverHost;
+    private final int serverPort;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger connections = new AtomicInteger();
+    // Closed on shutdown so that every capture in progress is saved
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+
+    public TraceProxy(int listenPort, String serverHost, int serverPort) {
+        this.listenPort = listenPort;
+        this.serverHost = serverHost;
+        this.serverPort = serverPort;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(listenPort);
+        System.out.println("Trace proxy on port " + listenPort + " -> " + serverHost + ":" + serverPort);
+        // A platform thread: the virtual relay threads alone would not keep the JVM alive
+        new Thread(this::acceptLoop, "trace-proxy-accept").start();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                executor.execute(() -> capture(client, connections.incrementAndGet()));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Trace proxy accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void capture(Socket client, int n) {
+        long startMillis = System.currentTimeMillis();
+        Socket upstream = new Socket();
+        openSockets.add(client);
+        openSockets.add(upstream);
+        NetTrace trace;
+        long startNanos;
+        try {
+            long connectStart = System.nanoTime();
+            upstream.connect(new InetSocketAddress(serverHost, serverPort), CONNECT_TIMEOUT_MS);
+            startNanos = System.nanoTime();
+            trace = new NetTrace((startNanos - connectStart) / 1000);
+            client.setTcpNoDelay(true);
+            upstream.setTcpNoDelay(true);
+        } catch (IOException e) {
+            System.err.println("Trace proxy cannot reach " + serverHost + ":" + serverPort + ": " + e.getMessage());
+            closeQuietly(client);
+            closeQuietly(upstream);
+            openSockets.remove(client);
+            openSockets.remove(upstream);
+            return;
+        }
+        System.out.printf("Capturing connection %d from %s (connect %.1f ms)%n", n,
+                client.getRemoteSocketAddress(), trace.rttMicros / 1000.0);
+
+        CountDownLatch done = new CountDownLatch(2);
+        executor.execute(() -> relay(client, upstream, trace, NetTrace.UP, startNanos, done));
+        relay(upstream, client, trace, NetTrace.DOWN, startNanos, done);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        openSockets.remove(client);
+        openSockets.remove(upstream);
+
+        Path path = Path.of(System.getProperty("pong.dataDir", "pong-data"), "traces", startMillis + "-" + n + ".trace");
+        try {
+            trace.save(path);
+            System.out.printf("Saved %s: %.1f s, %d chunks up, %d down%n", path, trace.getDurationMicros() / 1e6,
+                    trace.getCount(NetTrace.UP), trace.getCount(NetTrace.DOWN));
+        } catch (IOException e) {
+            System.err.println("Trace not saved: " + path + ": " + e.getMessage());
+        }
+    }
+
+    // Copies as it reads; the timestamp is taken when a read returns, before the write
+    private static void relay(Socket from, Socket to, NetTrace trace, int direction, long startNanos,
+                              CountDownLatch done) {
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                trace.record(direction, (System.nanoTime() - startNanos) / 1000);
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // Either side closed
+        } finally {
+            closeQuietly(from);
+            closeQuietly(to);
+            done.countDown();
+        }
+    }
+
+    public void close() {
+        closeQuietly(serverSocket);
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !args[1].contains(":")) {
+            System.err.println("Usage: java pong.TraceProxy <listenPort> <serverHost:port>");
+            System.exit(1);
+        }
+        String[] server = args[1].split(":");
+        TraceProxy proxy = new TraceProxy(Integer.parseInt(args[0]), server[0], Integer.parseInt(server[1]));
+        proxy.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(proxy::close));
+    }
+}